@@ -3,13 +3,16 @@ package com.quiz.agent;
 import com.quiz.dto.QuizCreateRequest;
 import com.quiz.entity.Quiz;
 import com.quiz.entity.Course;
+import com.quiz.service.PdfTextExtractionService;
 import com.quiz.service.QuizService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,6 +24,10 @@ public class PdfQuizAgent {
 
     private final QuizGenerationAgent quizGenerationAgent;
     private final QuizService quizService;
+    private final PdfTextExtractionService pdfTextExtractionService;
+
+    @Value("${agent.pdf.max-prompt-chars:10000}")
+    private int maxPromptChars;
 
     public List<Quiz> generateQuizzesFromPdf(MultipartFile pdfFile, Course course, String difficulty, int numberOfQuestions) {
         try {
@@ -62,21 +69,14 @@ public class PdfQuizAgent {
     }
 
     private String extractTextFromPdf(MultipartFile pdfFile) throws IOException {
-        // For MVP demo, we'll simulate PDF text extraction
-        // In a real implementation, you would use libraries like Apache PDFBox or iText
-        
         if (pdfFile.getOriginalFilename() != null && pdfFile.getOriginalFilename().endsWith(".txt")) {
             // If it's a text file, read directly
             return new String(pdfFile.getBytes(), StandardCharsets.UTF_8);
         }
         
-        // Simulate PDF text extraction with sample content
-        return "This is simulated PDF content for demonstration purposes. " +
-               "In a real implementation, this would contain the actual extracted text from the PDF file. " +
-               "The content would include educational material such as definitions, concepts, examples, and explanations " +
-               "that can be used to generate meaningful quiz questions. " +
-               "For example, if this were a computer science PDF, it might contain information about algorithms, " +
-               "data structures, programming concepts, and software engineering principles.";
+        try (InputStream in = pdfFile.getInputStream()) {
+            return pdfTextExtractionService.extractText(in, maxPromptChars);
+        }
     }
 
     private List<Quiz> parseQuizJsonToEntities(String quizJson, Course course) {
@@ -0,0 +1,75 @@
+package com.quiz.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/* * * AI Agent 专用线程池
+ * OpenAI 调用是最长 150s 的阻塞 IO，不能占用 ForkJoinPool.commonPool()。
+ * 顶层Task池由 AgentJobWorker 按空闲线程数从 agent_jobs 领取Task后投递；子Task池满时由调用线程执行，避免父子Task互相等待 */
+@Configuration
+@Slf4j
+public class AgentExecutorConfig {
+
+    public static final String AGENT_TASK_EXECUTOR = "agentTaskExecutor";
+    public static final String AGENT_SUBTASK_EXECUTOR = "agentSubtaskExecutor";
+
+    @Bean(name = AGENT_TASK_EXECUTOR)
+    public ThreadPoolTaskExecutor agentTaskExecutor(
+            @Value("${agent.executor.core-size:4}") int coreSize,
+            @Value("${agent.executor.max-size:4}") int maxSize,
+            @Value("${agent.executor.queue-capacity:20}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("agent-");
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        // The worker only claims as many jobs as there are threads; reject anything beyond that
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        registerGauges(meterRegistry, "agent.executor", executor);
+        log.info("Agent task executor initialized: core={}, max={}, queue={}", coreSize, maxSize, queueCapacity);
+        return executor;
+    }
+
+    @Bean(name = AGENT_SUBTASK_EXECUTOR)
+    public ThreadPoolTaskExecutor agentSubtaskExecutor(
+            @Value("${agent.subtask-executor.size:8}") int size,
+            @Value("${agent.subtask-executor.queue-capacity:16}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("agent-sub-");
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(queueCapacity);
+        // Parent tasks wait on their sub-tasks, so never reject: run inline when saturated
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        registerGauges(meterRegistry, "agent.subtask.executor", executor);
+        return executor;
+    }
+
+    private void registerGauges(MeterRegistry registry, String prefix, ThreadPoolTaskExecutor executor) {
+        Gauge.builder(prefix + ".queue.depth", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("Tasks waiting for an agent worker")
+                .register(registry);
+        Gauge.builder(prefix + ".active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Agent tasks currently running")
+                .register(registry);
+        Gauge.builder(prefix + ".pool.size", executor, ThreadPoolTaskExecutor::getPoolSize)
+                .register(registry);
+        Gauge.builder(prefix + ".queue.remaining", executor, e -> e.getThreadPoolExecutor().getQueue().remainingCapacity())
+                .register(registry);
+    }
+}
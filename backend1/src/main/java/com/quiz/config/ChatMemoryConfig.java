@@ -0,0 +1,56 @@
+package com.quiz.config;
+
+import com.quiz.repository.ChatMemoryRecordRepository;
+import com.quiz.service.BoundedChatMemoryStore;
+import com.quiz.service.JpaChatMemoryStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+/* * * Chatbot 会话记忆Storage
+ * memory（默认）：进程内有界Storage，会话数上限 + 空闲 TTL + 全局字符预算，任何一项超限都按 LRU 淘汰；
+ * jpa：存入 chat_memories 表，多实例共享会话，本地只保留一个短 TTL 的小读缓存 */
+@Configuration
+@Slf4j
+public class ChatMemoryConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "chatbot.memory.store", havingValue = "memory", matchIfMissing = true)
+    public BoundedChatMemoryStore inMemoryChatMemoryStore(
+            @Value("${chatbot.memory.max-sessions:10000}") int maxSessions,
+            @Value("${chatbot.memory.idle-ttl-minutes:30}") long idleTtlMinutes,
+            @Value("${chatbot.memory.max-total-chars:50000000}") long maxTotalChars,
+            MeterRegistry meterRegistry) {
+        log.info("Chat memory store: in-memory, maxSessions={}, idleTtl={}m, maxTotalChars={}",
+                maxSessions, idleTtlMinutes, maxTotalChars);
+        return new BoundedChatMemoryStore(maxSessions, Duration.ofMinutes(idleTtlMinutes), maxTotalChars,
+                meterRegistry, "chatbot.memory");
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "chatbot.memory.store", havingValue = "jpa")
+    public JpaChatMemoryStore jpaChatMemoryStore(
+            ChatMemoryRecordRepository repository,
+            PlatformTransactionManager transactionManager,
+            @Value("${chatbot.memory.jpa.cache-size:1000}") int cacheSize,
+            @Value("${chatbot.memory.jpa.cache-ttl-seconds:5}") long cacheTtlSeconds,
+            @Value("${chatbot.memory.jpa.cache-max-chars:5000000}") long cacheMaxChars,
+            @Value("${chatbot.memory.jpa.retention-days:7}") long retentionDays,
+            @Value("${chatbot.memory.jpa.max-flush-attempts:5}") int maxFlushAttempts,
+            MeterRegistry meterRegistry) {
+        // Keep the cache TTL shorter than the gap between two user turns: with no sticky
+        // sessions the next turn may land on another node and must see this node's writes
+        BoundedChatMemoryStore readCache = new BoundedChatMemoryStore(cacheSize, Duration.ofSeconds(cacheTtlSeconds),
+                cacheMaxChars, meterRegistry, "chatbot.memory.cache");
+        log.info("Chat memory store: jpa, cacheSize={}, cacheTtl={}s, retention={}d", cacheSize, cacheTtlSeconds, retentionDays);
+        return new JpaChatMemoryStore(repository, new TransactionTemplate(transactionManager), readCache,
+                Duration.ofDays(retentionDays), maxFlushAttempts, meterRegistry);
+    }
+}
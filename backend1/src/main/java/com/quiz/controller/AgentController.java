@@ -3,9 +3,13 @@ package com.quiz.controller;
 import com.quiz.dto.AgentProcessRequest;
 import com.quiz.dto.AgentProcessResult;
 import com.quiz.dto.ProcessingStatus;
+import com.quiz.service.OpenAiFileRegistry;
 import com.quiz.service.PdfQuizAgentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -22,6 +26,7 @@ import java.util.Map;
 public class AgentController {
 
     private final PdfQuizAgentService pdfQuizAgentService;
+    private final OpenAiFileRegistry openAiFileRegistry;
 
     /* * * 触发AIProcessCoursePDF，自动生成测验
      * @param courseId CourseID
@@ -89,6 +94,15 @@ public class AgentController {
                 "courseId", courseId
             ));
             
+        } catch (TaskRejectedException e) {
+            log.warn("AI processing queue full, rejecting course {}", courseId);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of(
+                        "success", false,
+                        "message", "AI处理队列已满，请稍后重试",
+                        "courseId", courseId
+                    ));
         } catch (Exception e) {
             log.error("Error starting async AI processing for course {}: {}", courseId, e.getMessage(), e);
             return ResponseEntity.status(500).body(Map.of(
@@ -150,6 +164,22 @@ public class AgentController {
         }
     }
 
+    /**
+     * Get OpenAI file upload cache statistics (hit rate, bytes uploaded and saved)
+     * @return cache statistics
+     */
+    @GetMapping("/openai-files/stats")
+    public ResponseEntity<Map<String, Object>> getOpenAiFileStats() {
+        try {
+            return ResponseEntity.ok(openAiFileRegistry.getStats());
+        } catch (Exception e) {
+            log.error("Error getting OpenAI file stats: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).body(Map.of(
+                "error", "获取文件缓存统计失败: " + e.getMessage()
+            ));
+        }
+    }
+
     /**
      * Get AI Agent configuration information
      * @return configuration information
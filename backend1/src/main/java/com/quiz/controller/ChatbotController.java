@@ -2,12 +2,18 @@ package com.quiz.controller;
 
 import com.quiz.dto.ChatbotRequest;
 import com.quiz.dto.ChatbotResponse;
+import com.quiz.service.ChatResponseCache;
 import com.quiz.service.ChatbotService;
+import com.quiz.service.ToolResultCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -19,6 +25,8 @@ import java.util.Map;
 public class ChatbotController {
 
     private final ChatbotService chatbotService;
+    private final ChatResponseCache chatResponseCache;
+    private final ToolResultCache toolResultCache;
 
     /* * * Send聊天Message并GetAIReply */
     @PostMapping("/chat")
@@ -37,6 +45,56 @@ public class ChatbotController {
         }
     }
 
+    @Value("${chatbot.stream.timeout-ms:120000}")
+    private long streamTimeoutMs;
+
+    /* * * 流式聊天：以 SSE 推送 token / tool / done / error 事件，请求线程立即释放 */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessage(@RequestBody ChatbotRequest request) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        try {
+            log.info("Received streaming chatbot message: {}", request.getMessage());
+            String sessionId = chatbotService.streamMessage(request, new ChatbotService.ChatStreamListener() {
+                @Override
+                public void onToken(String token) {
+                    send(emitter, "token", token);
+                }
+
+                @Override
+                public void onToolCall(String toolName) {
+                    send(emitter, "tool", Map.of("name", toolName));
+                }
+
+                @Override
+                public void onComplete(ChatbotResponse response) {
+                    send(emitter, "done", response);
+                    emitter.complete();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    send(emitter, "error", Map.of("message", "抱歉，我遇到了一些问题，请稍后再试。"));
+                    emitter.complete();
+                }
+            });
+            log.debug("Streaming reply started for session {}", sessionId);
+        } catch (Exception e) {
+            log.error("Error starting streaming chatbot reply", e);
+            send(emitter, "error", Map.of("message", "抱歉，我遇到了一些问题，请稍后再试。"));
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // Client went away or the emitter timed out; the model keeps streaming into the session memory
+            log.debug("Dropping SSE event {}: {}", event, e.getMessage());
+        }
+    }
+
     /* * * Get可用的ToolList */
     @GetMapping("/tools")
     public ResponseEntity<List<String>> getAvailableTools() {
@@ -61,6 +119,18 @@ public class ChatbotController {
         }
     }
 
+    /* * * 回复缓存统计：命中率、条目数与失效次数 */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getResponseCacheStats() {
+        return ResponseEntity.ok(chatResponseCache.getStats());
+    }
+
+    /* * * Tool结果缓存统计：按Tool的本轮命中 / 跨轮命中 / 未命中次数 */
+    @GetMapping("/cache/tools/stats")
+    public ResponseEntity<Map<String, Map<String, Long>>> getToolCacheStats() {
+        return ResponseEntity.ok(toolResultCache.getStats());
+    }
+
     /* * * 健康CheckAPI */
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> healthCheck() {
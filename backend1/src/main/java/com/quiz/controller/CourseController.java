@@ -4,14 +4,19 @@ import com.quiz.dto.CourseCreateRequest;
 import com.quiz.dto.CourseSummaryDTO;
 import com.quiz.entity.Course;
 import com.quiz.service.CourseService;
+import com.quiz.storage.HandbookBlobStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +28,7 @@ import java.util.Map;
 public class CourseController {
 
     private final CourseService courseService;
+    private final HandbookBlobStore handbookBlobStore;
 
     @GetMapping
     public ResponseEntity<List<Course>> getAllCourses() {
@@ -73,6 +79,20 @@ public class CourseController {
         }
     }
 
+    // New: Replace the PDF handbook of an existing course
+    @PutMapping(path = "/{id}/handbook", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Course> replaceCourseHandbook(
+            @PathVariable("id") Long id,
+            @RequestParam("handbookFile") MultipartFile handbookFile) {
+        try {
+            Course course = courseService.replaceCourseHandbook(id, handbookFile);
+            return ResponseEntity.ok(course);
+        } catch (Exception e) {
+            log.error("Error replacing course handbook", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<Course> updateCourse(@PathVariable Map<String, String> pathVars, @RequestBody CourseCreateRequest request) {
         try {
@@ -114,8 +134,10 @@ public class CourseController {
         return ResponseEntity.ok(courses);
     }
 
+    /* * * Download课程手册
+     * 支持 Range（PDF 阅读器按页懒加载）与 ETag/If-None-Match（内容 hash），重复查看只返回 304 */
     @GetMapping("/{id}/handbook")
-    public ResponseEntity<byte[]> downloadCourseHandbook(@PathVariable Map<String, String> pathVars) {
+    public ResponseEntity<Resource> downloadCourseHandbook(@PathVariable Map<String, String> pathVars) {
         try {
             Long id = Long.valueOf(pathVars.get("id"));
             log.info("Attempting to download handbook for course id: {}", id);
@@ -125,23 +147,23 @@ public class CourseController {
             
             log.info("Found course: {}, handbook file name: {}", course.getTitle(), course.getHandbookFileName());
             
-            if (course.getHandbookFilePath() == null || course.getHandbookFilePath().length == 0) {
+            if (!course.hasHandbook() || !handbookBlobStore.exists(course.getHandbookHash())) {
                 log.warn("No handbook file found for course id: {}", id);
                 return ResponseEntity.notFound().build();
             }
 
-            log.info("Handbook file size: {} bytes", course.getHandbookFilePath().length);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentLength(course.getHandbookFilePath().length);
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, 
-                "attachment; filename=\"" + (course.getHandbookFileName() != null ? course.getHandbookFileName() : "handbook.pdf") + "\"");
-            
-            log.info("Successfully returning handbook file for course id: {} with {} bytes", id, course.getHandbookFilePath().length);
+            // Content-addressed: the hash is a strong validator. Spring answers
+            // If-None-Match with 304 and slices Range requests into 206 regions.
+            // Content-Length is left to the converter because it differs per range.
+            String fileName = course.getHandbookFileName() != null ? course.getHandbookFileName() : "handbook.pdf";
             return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(course.getHandbookFilePath());
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .eTag("\"" + course.getHandbookHash() + "\"")
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            ContentDisposition.attachment().filename(fileName, StandardCharsets.UTF_8).build().toString())
+                    .body(handbookBlobStore.openResource(course.getHandbookHash()));
         } catch (Exception e) {
             log.error("Error downloading course handbook", e);
             return ResponseEntity.internalServerError().build();
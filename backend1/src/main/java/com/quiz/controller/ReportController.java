@@ -1,11 +1,16 @@
 package com.quiz.controller;
 
+import com.quiz.service.ReportCache;
 import com.quiz.service.ReportService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 @RestController
@@ -16,6 +21,7 @@ import java.util.Map;
 public class ReportController {
 
     private final ReportService reportService;
+    private final ReportCache reportCache;
 
     /**
      * Get organization compliance report data
@@ -23,7 +29,7 @@ public class ReportController {
     @GetMapping("/organization")
     public ResponseEntity<Map<String, Object>> getOrganizationReport() {
         try {
-            Map<String, Object> reportData = reportService.getOrganizationReportData();
+            Map<String, Object> reportData = reportCache.get(ReportCache.ORGANIZATION, reportService::getOrganizationReportData);
             return ResponseEntity.ok(reportData);
         } catch (Exception e) {
             log.error("Error fetching organization report", e);
@@ -37,7 +43,7 @@ public class ReportController {
     @GetMapping("/departments")
     public ResponseEntity<Map<String, Object>> getDepartmentStats() {
         try {
-            Map<String, Object> departmentStats = reportService.getDepartmentStats();
+            Map<String, Object> departmentStats = reportCache.get(ReportCache.DEPARTMENTS, reportService::getDepartmentStats);
             return ResponseEntity.ok(departmentStats);
         } catch (Exception e) {
             log.error("Error fetching department stats", e);
@@ -46,13 +52,19 @@ public class ReportController {
     }
 
     /**
-     * Get employee report details
+     * Get employee report details, one keyset page at a time
      */
     @GetMapping("/employees")
     public ResponseEntity<Map<String, Object>> getEmployeeReports(
-            @RequestParam(value = "department", required = false) String department) {
+            @RequestParam(value = "department", required = false) String department,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "sort", defaultValue = "id") String sort,
+            @RequestParam(value = "order", defaultValue = "asc") String order,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "${report.employees.page-size:100}") int limit) {
         try {
-            Map<String, Object> employeeReports = reportService.getEmployeeReports(department);
+            Map<String, Object> employeeReports = reportService.getEmployeeReportPage(
+                    department, status, sort, "desc".equalsIgnoreCase(order), cursor, limit);
             return ResponseEntity.ok(employeeReports);
         } catch (Exception e) {
             log.error("Error fetching employee reports", e);
@@ -64,7 +76,7 @@ public class ReportController {
     @GetMapping("/compliance-categories")
     public ResponseEntity<Map<String, Object>> getComplianceCategories() {
         try {
-            Map<String, Object> complianceCategories = reportService.getComplianceCategories();
+            Map<String, Object> complianceCategories = reportCache.get(ReportCache.COMPLIANCE_CATEGORIES, reportService::getComplianceCategories);
             return ResponseEntity.ok(complianceCategories);
         } catch (Exception e) {
             log.error("Error fetching compliance categories", e);
@@ -72,11 +84,38 @@ public class ReportController {
         }
     }
 
+    /**
+     * Export employee report details as CSV or NDJSON, streamed row by row
+     */
+    @GetMapping("/employees/export")
+    public ResponseEntity<StreamingResponseBody> exportEmployeeReports(
+            @RequestParam(value = "department", required = false) String department,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "sort", defaultValue = "id") String sort,
+            @RequestParam(value = "order", defaultValue = "asc") String order,
+            @RequestParam(value = "format", defaultValue = "csv") String format) {
+        try {
+            StreamingResponseBody body = reportService.exportEmployeeReports(
+                    department, status, sort, "desc".equalsIgnoreCase(order), format);
+            boolean csv = format.equals("csv");
+            return ResponseEntity.ok()
+                    .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8) : MediaType.parseMediaType("application/x-ndjson"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"employee-reports." + (csv ? "csv" : "ndjson") + "\"")
+                    .body(body);
+        } catch (Exception e) {
+            log.error("Error exporting employee reports", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /* * * GetMonth度ComplianceTrend */
     @GetMapping("/monthly-trend")
-    public ResponseEntity<Map<String, Object>> getMonthlyTrend() {
+    public ResponseEntity<Map<String, Object>> getMonthlyTrend(
+            @RequestParam(value = "months", defaultValue = "${report.monthly-trend.months:6}") int months) {
         try {
-            Map<String, Object> monthlyTrend = reportService.getMonthlyTrend();
+            Map<String, Object> monthlyTrend = reportCache.get(ReportCache.MONTHLY_TREND + ":" + months,
+                    () -> reportService.getMonthlyTrend(months));
             return ResponseEntity.ok(monthlyTrend);
         } catch (Exception e) {
             log.error("Error fetching monthly trend", e);
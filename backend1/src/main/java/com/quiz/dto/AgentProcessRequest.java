@@ -46,4 +46,7 @@ public class AgentProcessRequest {
     
     /* * * 是否启用Description生成 */
     private Boolean enableDescriptionGeneration = false;
+    
+    /* * * Quiz生成方式：auto（手册较长时分段生成）、single（单次调用）、sections（强制分段） */
+    private String generationMode = "auto";
 }
\ No newline at end of file
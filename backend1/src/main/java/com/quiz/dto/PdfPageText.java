@@ -0,0 +1,25 @@
+package com.quiz.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/* * * PDF 单页提取Result */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PdfPageText {
+
+    /** 1-based page number */
+    private int pageNumber;
+
+    private String text;
+
+    /* * * 是否因单页字符预算被截断 */
+    private boolean truncated;
+
+    /* * * 该页提取耗时（毫秒） */
+    private long extractionMillis;
+}
@@ -0,0 +1,69 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/* * * AI ProcessTask（持久化队列）
+ * Status: PENDING -> IN_PROGRESS -> COMPLETED / FAILED；worker 通过 heartbeat_at 续约，
+ * 心跳超时的 IN_PROGRESS Task在重启或巡检时重新排队 */
+@Entity
+@Table(name = "agent_jobs",
+       indexes = {
+           @Index(name = "idx_agent_jobs_status_created", columnList = "status, created_at"),
+           @Index(name = "idx_agent_jobs_updated", columnList = "updated_at")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgentJob {
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "course_id", nullable = false)
+    private Long courseId;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    private Integer progress = 0;
+
+    @Column(length = 1000)
+    private String message;
+
+    @Column(name = "request_payload", columnDefinition = "TEXT", nullable = false)
+    private String requestPayload;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    private Integer attempts = 0;
+
+    @Column(name = "worker_id", length = 100)
+    private String workerId;
+
+    @Column(name = "completed_quizzes")
+    private Integer completedQuizzes = 0;
+
+    @Column(name = "total_quizzes")
+    private Integer totalQuizzes;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
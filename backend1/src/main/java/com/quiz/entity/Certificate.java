@@ -21,7 +21,7 @@ public class Certificate {
 
     @OneToOne(fetch = FetchType.EAGER)
     @JoinColumn(name = "course_id", nullable = false, unique = true)
-    @JsonIgnoreProperties({"quizzes", "handbookFilePath", "teacher"})
+    @JsonIgnoreProperties({"quizzes", "teacher"})
     private Course course;
 
     @Column(name = "certificate_name", nullable = false, length = 200)
@@ -0,0 +1,33 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/* * * Chatbot 会话记忆（持久化）
+ * 每个会话一行，messages_json 为 LangChain4j 消息窗口的 JSON 序列化结果；多实例部署时各节点共享 */
+@Entity
+@Table(name = "chat_memories",
+       indexes = {
+           @Index(name = "idx_chat_memories_updated", columnList = "updated_at")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMemoryRecord {
+    @Id
+    @Column(name = "session_key", length = 200)
+    private String sessionKey;
+
+    @Column(name = "messages_json", columnDefinition = "TEXT", nullable = false)
+    private String messagesJson;
+
+    @Column(name = "message_count")
+    private Integer messageCount = 0;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt = LocalDateTime.now();
+}
@@ -0,0 +1,22 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/* * * 部门Compliance汇总（预聚合）
+ * 每个部门一行：至少通过一门Course的用户数；未分配部门的用户记在空串下 */
+@Entity
+@Table(name = "compliance_departments")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ComplianceDepartment {
+    @Id
+    @Column(name = "department", length = 100)
+    private String department;
+
+    @Column(name = "completed_users", nullable = false)
+    private Integer completedUsers = 0;
+}
@@ -0,0 +1,33 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/* * * 部门×Course通过人数（预聚合） */
+@Entity
+@Table(name = "compliance_department_courses",
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_compliance_department_course", columnNames = {"department", "course_id"})
+       },
+       indexes = {
+           @Index(name = "idx_compliance_department_courses_course", columnList = "course_id")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ComplianceDepartmentCourse {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "department", length = 100, nullable = false)
+    private String department;
+
+    @Column(name = "course_id", nullable = false)
+    private Long courseId;
+
+    @Column(name = "passed_users", nullable = false)
+    private Integer passedUsers = 0;
+}
@@ -0,0 +1,28 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/* * * 月度通过桶（预聚合）
+ * 按 completedAt 所在月份（yyyy-MM）统计完成次数、通过次数与当月通过的去重用户数 */
+@Entity
+@Table(name = "compliance_months")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ComplianceMonth {
+    @Id
+    @Column(name = "month_key", length = 7)
+    private String month;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "passed_attempts", nullable = false)
+    private Integer passedAttempts = 0;
+
+    @Column(name = "passed_users", nullable = false)
+    private Integer passedUsers = 0;
+}
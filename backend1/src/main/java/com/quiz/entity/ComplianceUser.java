@@ -0,0 +1,53 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/* * * 用户Compliance汇总（预聚合）
+ * 每个用户一行，随测验Commit增量维护；department 为计入部门统计时使用的部门（未分配为空串） */
+@Entity
+@Table(name = "compliance_users",
+       indexes = {
+           @Index(name = "idx_compliance_users_department", columnList = "department")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ComplianceUser {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "department", length = 100, nullable = false)
+    private String department = "";
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0; // Completed attempts
+
+    @Column(name = "passed_attempts", nullable = false)
+    private Integer passedAttempts = 0;
+
+    @Column(name = "passed_percentage_sum", nullable = false)
+    private Double passedPercentageSum = 0.0; // Sum of percentages over passed attempts
+
+    @Column(name = "passed_courses", nullable = false)
+    private Integer passedCourses = 0; // Courses with at least one passed attempt
+
+    @Column(name = "last_completed_at")
+    private LocalDateTime lastCompletedAt;
+
+    @Column(name = "last_passed_at")
+    private LocalDateTime lastPassedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    public ComplianceUser(Long userId, String department) {
+        this.userId = userId;
+        this.department = department;
+    }
+}
@@ -0,0 +1,53 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/* * * 用户×Course通过状态（预聚合）
+ * 每个用户每门Course一行，随测验Commit增量维护 */
+@Entity
+@Table(name = "compliance_user_courses",
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_compliance_user_course", columnNames = {"user_id", "course_id"})
+       },
+       indexes = {
+           @Index(name = "idx_compliance_user_courses_course", columnList = "course_id")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ComplianceUserCourse {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "course_id", nullable = false)
+    private Long courseId;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "passed_attempts", nullable = false)
+    private Integer passedAttempts = 0;
+
+    @Column(name = "passed_percentage_sum", nullable = false)
+    private Double passedPercentageSum = 0.0;
+
+    @Column(name = "first_passed_at")
+    private LocalDateTime firstPassedAt;
+
+    @Column(name = "last_completed_at")
+    private LocalDateTime lastCompletedAt;
+
+    public ComplianceUserCourse(Long userId, Long courseId) {
+        this.userId = userId;
+        this.courseId = courseId;
+    }
+}
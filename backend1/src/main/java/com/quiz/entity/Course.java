@@ -38,18 +38,14 @@ public class Course {
     @Column(name = "handbook_file_name")
     private String handbookFileName;
 
-    @Column(name = "handbook_file_path")
-    @com.fasterxml.jackson.annotation.JsonIgnore
-    private byte[] handbookFilePath;
+    // PDF 本体存放在 HandbookBlobStore，此处只保存内容 SHA-256
+    @Column(name = "handbook_hash", length = 64)
+    private String handbookHash;
 
-    // Add a method to get Base64 encoded content
     @Transient
     @com.fasterxml.jackson.annotation.JsonIgnore
-    public String getHandbookContent() {
-        if (handbookFilePath != null) {
-            return java.util.Base64.getEncoder().encodeToString(handbookFilePath);
-        }
-        return null;
+    public boolean hasHandbook() {
+        return handbookHash != null && handbookFileSize != null && handbookFileSize > 0;
     }
 
     @Column(name = "handbook_file_size")
@@ -0,0 +1,44 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/* * * Handbook 提取文本缓存
+ * 以 PDF 内容 hash 为主Key，同一份手册只Parse一次 */
+@Entity
+@Table(name = "handbook_texts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HandbookText {
+    @Id
+    @Column(name = "handbook_hash", length = 64)
+    private String handbookHash;
+
+    @Column(name = "content", columnDefinition = "TEXT")
+    private String content;
+
+    // Comma-separated start offset of each page within content
+    @Column(name = "page_offsets", columnDefinition = "TEXT")
+    private String pageOffsets;
+
+    @Column(name = "page_count")
+    private Integer pageCount;
+
+    @Column(name = "char_count")
+    private Integer charCount;
+
+    // True when the handbook exceeded handbook.text.max-chars and trailing pages were dropped
+    @Column(name = "truncated")
+    private Boolean truncated = false;
+
+    @Column(name = "extraction_millis")
+    private Long extractionMillis;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
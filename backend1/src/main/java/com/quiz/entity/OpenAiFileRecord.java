@@ -0,0 +1,40 @@
+package com.quiz.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/* * * 已Upload到 OpenAI 的手册File
+ * 以 (handbook hash, base URL) 为Key，同一份 PDF 在同一 OpenAI 端点只Upload一次 */
+@Entity
+@Table(name = "openai_file_records",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"handbook_hash", "base_url"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OpenAiFileRecord {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "handbook_hash", nullable = false, length = 64)
+    private String handbookHash;
+
+    @Column(name = "base_url", nullable = false)
+    private String baseUrl;
+
+    @Column(name = "file_id", nullable = false)
+    private String fileId;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    @Column(name = "uploaded_at")
+    private LocalDateTime uploadedAt = LocalDateTime.now();
+
+    @Column(name = "last_validated_at")
+    private LocalDateTime lastValidatedAt = LocalDateTime.now();
+}
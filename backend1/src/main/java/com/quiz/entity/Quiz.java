@@ -10,7 +10,8 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "quizzes")
+@Table(name = "quizzes",
+       indexes = @Index(name = "idx_quizzes_generation_task", columnList = "generation_task_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,7 +23,7 @@ public class Quiz {
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "course_id", nullable = false)
-    @JsonIgnoreProperties({"quizzes", "teacher", "handbookFilePath", "handbookContent"})
+    @JsonIgnoreProperties({"quizzes", "teacher"})
     private Course course;
 
     @Column(nullable = false, length = 200)
@@ -50,6 +51,10 @@ public class Quiz {
     @Column(name = "is_active")
     private Boolean isActive = true;
 
+    // Agent task that generated this quiz; lets a retried task find what an earlier attempt left behind
+    @Column(name = "generation_task_id", length = 36)
+    private String generationTaskId;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
 
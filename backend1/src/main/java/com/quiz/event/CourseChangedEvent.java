@@ -0,0 +1,18 @@
+package com.quiz.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/* * * Course变更事件
+ * CourseService 在Create、Update、启停、替换手册与Delete后发布；依赖Course数据的缓存据此失效 */
+@Getter
+@AllArgsConstructor
+@ToString
+public class CourseChangedEvent {
+
+    public enum Type { CREATED, UPDATED, HANDBOOK_REPLACED, DEACTIVATED, ACTIVATED, DELETED }
+
+    private final Long courseId;
+    private final Type type;
+}
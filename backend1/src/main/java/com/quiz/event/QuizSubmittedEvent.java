@@ -0,0 +1,19 @@
+package com.quiz.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/* * * 测验Commit事件
+ * QuizAttemptService 在评分并保存 attempt 后发布；合规报表等依赖作答数据的缓存据此失效 */
+@Getter
+@AllArgsConstructor
+@ToString
+public class QuizSubmittedEvent {
+
+    private final Long attemptId;
+    private final Long userId;
+    private final Long quizId;
+    private final Long courseId;
+    private final boolean passed;
+}
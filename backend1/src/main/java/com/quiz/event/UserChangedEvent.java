@@ -0,0 +1,18 @@
+package com.quiz.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/* * * 用户变更事件
+ * UserService 在Create用户、调整部门与Delete用户后发布；依赖人员总数或部门归属的Report据此失效 */
+@Getter
+@AllArgsConstructor
+@ToString
+public class UserChangedEvent {
+
+    public enum Type { CREATED, DEPARTMENT_CHANGED, DELETED }
+
+    private final Long userId;
+    private final Type type;
+}
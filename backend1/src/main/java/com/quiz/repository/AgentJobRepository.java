@@ -0,0 +1,65 @@
+package com.quiz.repository;
+
+import com.quiz.entity.AgentJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AgentJobRepository extends JpaRepository<AgentJob, String> {
+
+    /**
+     * Lock the oldest pending jobs; rows already locked by another worker are skipped
+     * so several nodes can poll concurrently. Must run inside a transaction.
+     */
+    @Query(value = "SELECT * FROM agent_jobs WHERE status = 'PENDING' ORDER BY created_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<AgentJob> lockPendingJobs(@Param("limit") int limit);
+
+    long countByStatus(String status);
+
+    @Modifying
+    @Query("UPDATE AgentJob j SET j.status = :status, j.progress = :progress, j.message = :message, " +
+           "j.updatedAt = :now, j.heartbeatAt = :now WHERE j.id = :id")
+    int updateProgress(@Param("id") String id,
+                       @Param("status") String status,
+                       @Param("progress") Integer progress,
+                       @Param("message") String message,
+                       @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE AgentJob j SET j.completedQuizzes = :completed, j.updatedAt = :now, j.heartbeatAt = :now WHERE j.id = :id")
+    int updateCompletedQuizzes(@Param("id") String id,
+                               @Param("completed") int completed,
+                               @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE AgentJob j SET j.heartbeatAt = :now WHERE j.id IN :ids AND j.status = 'IN_PROGRESS'")
+    int heartbeat(@Param("ids") Collection<String> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE AgentJob j SET j.status = 'PENDING', j.workerId = null, j.progress = 0, " +
+           "j.message = 'Re-queued after worker stopped responding', j.updatedAt = :now " +
+           "WHERE j.status = 'IN_PROGRESS' AND j.heartbeatAt < :cutoff AND j.attempts < :maxAttempts")
+    int requeueStalled(@Param("cutoff") LocalDateTime cutoff,
+                       @Param("maxAttempts") int maxAttempts,
+                       @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE AgentJob j SET j.status = 'FAILED', j.errorMessage = 'Worker stopped responding too many times', " +
+           "j.message = 'Processing failed: retry limit reached', j.updatedAt = :now, j.finishedAt = :now " +
+           "WHERE j.status = 'IN_PROGRESS' AND j.heartbeatAt < :cutoff AND j.attempts >= :maxAttempts")
+    int failStalled(@Param("cutoff") LocalDateTime cutoff,
+                    @Param("maxAttempts") int maxAttempts,
+                    @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM AgentJob j WHERE j.status IN ('COMPLETED', 'FAILED') AND j.updatedAt < :cutoff")
+    int deleteFinishedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,30 @@
+package com.quiz.repository;
+
+import com.quiz.entity.ChatMemoryRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ChatMemoryRecordRepository extends JpaRepository<ChatMemoryRecord, String> {
+
+    @Modifying
+    @Query("UPDATE ChatMemoryRecord r SET r.messagesJson = :json, r.messageCount = :count, r.updatedAt = :now " +
+           "WHERE r.sessionKey = :key")
+    int updateMessages(@Param("key") String key,
+                       @Param("json") String json,
+                       @Param("count") int count,
+                       @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM ChatMemoryRecord r WHERE r.sessionKey = :key")
+    int deleteBySessionKey(@Param("key") String key);
+
+    @Modifying
+    @Query("DELETE FROM ChatMemoryRecord r WHERE r.updatedAt < :cutoff")
+    int deleteUpdatedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,27 @@
+package com.quiz.repository;
+
+import com.quiz.entity.ComplianceDepartmentCourse;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ComplianceDepartmentCourseRepository extends JpaRepository<ComplianceDepartmentCourse, Long> {
+
+    boolean existsByDepartmentAndCourseId(String department, Long courseId);
+
+    @Modifying
+    @Query("UPDATE ComplianceDepartmentCourse d SET d.passedUsers = d.passedUsers + :delta " +
+           "WHERE d.department = :department AND d.courseId = :courseId")
+    int addPassedUsers(@Param("department") String department,
+                       @Param("courseId") Long courseId,
+                       @Param("delta") int delta);
+
+    // courseId, passed users across all departments
+    @Query("SELECT d.courseId, SUM(d.passedUsers) FROM ComplianceDepartmentCourse d GROUP BY d.courseId")
+    List<Object[]> sumPassedUsersByCourse();
+}
@@ -0,0 +1,19 @@
+package com.quiz.repository;
+
+import com.quiz.entity.ComplianceDepartment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ComplianceDepartmentRepository extends JpaRepository<ComplianceDepartment, String> {
+
+    @Modifying
+    @Query("UPDATE ComplianceDepartment d SET d.completedUsers = d.completedUsers + :delta WHERE d.department = :department")
+    int addCompletedUsers(@Param("department") String department, @Param("delta") int delta);
+
+    @Query("SELECT COALESCE(SUM(d.completedUsers), 0) FROM ComplianceDepartment d")
+    Long sumCompletedUsers();
+}
@@ -0,0 +1,21 @@
+package com.quiz.repository;
+
+import com.quiz.entity.ComplianceMonth;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ComplianceMonthRepository extends JpaRepository<ComplianceMonth, String> {
+
+    @Modifying
+    @Query("UPDATE ComplianceMonth m SET m.attempts = m.attempts + :attempts, " +
+           "m.passedAttempts = m.passedAttempts + :passedAttempts, m.passedUsers = m.passedUsers + :passedUsers " +
+           "WHERE m.month = :month")
+    int addCounts(@Param("month") String month,
+                  @Param("attempts") int attempts,
+                  @Param("passedAttempts") int passedAttempts,
+                  @Param("passedUsers") int passedUsers);
+}
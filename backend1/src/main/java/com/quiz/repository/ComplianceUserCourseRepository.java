@@ -0,0 +1,19 @@
+package com.quiz.repository;
+
+import com.quiz.entity.ComplianceUserCourse;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ComplianceUserCourseRepository extends JpaRepository<ComplianceUserCourse, Long> {
+
+    Optional<ComplianceUserCourse> findByUserIdAndCourseId(Long userId, Long courseId);
+
+    @Query("SELECT c.courseId FROM ComplianceUserCourse c WHERE c.userId = :userId AND c.passedAttempts > 0")
+    List<Long> findPassedCourseIdsByUserId(@Param("userId") Long userId);
+}
@@ -0,0 +1,19 @@
+package com.quiz.repository;
+
+import com.quiz.entity.ComplianceUser;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ComplianceUserRepository extends JpaRepository<ComplianceUser, Long>, ComplianceUserRepositoryCustom {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT cu FROM ComplianceUser cu WHERE cu.userId = :userId")
+    Optional<ComplianceUser> findByIdForUpdate(@Param("userId") Long userId);
+}
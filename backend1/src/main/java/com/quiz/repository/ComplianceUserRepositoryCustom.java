@@ -0,0 +1,17 @@
+package com.quiz.repository;
+
+import java.util.List;
+
+public interface ComplianceUserRepositoryCustom {
+
+    /**
+     * One keyset page of employee report rows: id, fullName, username, department,
+     * passedAttempts, passedPercentageSum, lastCompletedAt. Filtering, ordering and the
+     * "after" bound are all evaluated in the database; ties are broken by user id.
+     *
+     * @param status     "completed", "pending" or null for both
+     * @param afterValue sort value of the last row of the previous page, or null for the first page
+     */
+    List<Object[]> findEmployeeReportPage(String department, String status, EmployeeReportSort sort,
+                                          boolean descending, Object afterValue, Long afterId, int limit);
+}
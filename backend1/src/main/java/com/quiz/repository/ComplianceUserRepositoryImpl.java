@@ -0,0 +1,60 @@
+package com.quiz.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.util.List;
+
+public class ComplianceUserRepositoryImpl implements ComplianceUserRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Object[]> findEmployeeReportPage(String department, String status, EmployeeReportSort sort,
+                                                 boolean descending, Object afterValue, Long afterId, int limit) {
+        String expression = sort.getExpression();
+        String direction = descending ? "DESC" : "ASC";
+        String comparison = descending ? "<" : ">";
+
+        StringBuilder jpql = new StringBuilder(
+                "SELECT u.id, u.fullName, u.username, u.department, cu.passedAttempts, " +
+                "cu.passedPercentageSum, cu.lastCompletedAt " +
+                "FROM User u LEFT JOIN ComplianceUser cu ON cu.userId = u.id WHERE 1 = 1");
+        if (department != null) {
+            jpql.append(" AND u.department = :department");
+        }
+        if ("completed".equals(status)) {
+            jpql.append(" AND cu.passedAttempts > 0");
+        } else if ("pending".equals(status)) {
+            jpql.append(" AND (cu.passedAttempts IS NULL OR cu.passedAttempts = 0)");
+        }
+        if (afterId != null) {
+            if (sort == EmployeeReportSort.ID) {
+                jpql.append(" AND u.id ").append(comparison).append(" :afterId");
+            } else {
+                jpql.append(" AND (").append(expression).append(' ').append(comparison).append(" :afterValue")
+                        .append(" OR (").append(expression).append(" = :afterValue AND u.id ")
+                        .append(comparison).append(" :afterId))");
+            }
+        }
+        jpql.append(" ORDER BY ");
+        if (sort != EmployeeReportSort.ID) {
+            jpql.append(expression).append(' ').append(direction).append(", ");
+        }
+        jpql.append("u.id ").append(direction);
+
+        TypedQuery<Object[]> query = entityManager.createQuery(jpql.toString(), Object[].class);
+        if (department != null) {
+            query.setParameter("department", department);
+        }
+        if (afterId != null) {
+            query.setParameter("afterId", afterId);
+            if (sort != EmployeeReportSort.ID) {
+                query.setParameter("afterValue", afterValue);
+            }
+        }
+        return query.setMaxResults(limit).getResultList();
+    }
+}
@@ -17,6 +17,8 @@ public interface CourseRepository extends JpaRepository<Course, Long> {
     List<Course> findByTeacherAndIsActiveTrue(User teacher);
     
     List<Course> findByIsActiveTrue();
+
+    boolean existsByHandbookHash(String handbookHash);
     
     @Query("SELECT c FROM Course c WHERE c.title LIKE %:title% AND c.isActive = true")
     List<Course> findByTitleContainingAndIsActiveTrue(@Param("title") String title);
@@ -31,6 +33,9 @@ public interface CourseRepository extends JpaRepository<Course, Long> {
     @Query("SELECT new com.quiz.dto.CourseSummaryDTO(c.id, c.title, c.description, c.isActive, c.teacher.id, c.teacher.fullName, c.handbookFileName, c.department, c.createdAt) FROM Course c WHERE c.isActive = true")
     List<com.quiz.dto.CourseSummaryDTO> findActiveCourseSummaries();
 
+    @Query("SELECT new com.quiz.dto.CourseSummaryDTO(c.id, c.title, c.description, c.isActive, c.teacher.id, c.teacher.fullName, c.handbookFileName, c.department, c.createdAt) FROM Course c WHERE c.id = :id")
+    java.util.Optional<com.quiz.dto.CourseSummaryDTO> findCourseSummaryById(@Param("id") Long id);
+
     @Query("SELECT new com.quiz.dto.CourseSummaryDTO(c.id, c.title, c.description, c.isActive, c.teacher.id, c.teacher.fullName, c.handbookFileName, c.department, c.createdAt) FROM Course c WHERE c.teacher.id = :teacherId AND c.isActive = true")
     List<com.quiz.dto.CourseSummaryDTO> findCourseSummariesByTeacherId(@Param("teacherId") Long teacherId);
 
@@ -0,0 +1,39 @@
+package com.quiz.repository;
+
+/* * * 员工Report排序Key
+ * expression 为 JPQL 排序表达式（u = User，cu = ComplianceUser），空值已合并为固定值，便于 keyset 比较 */
+public enum EmployeeReportSort {
+    ID("id", "u.id"),
+    NAME("name", "COALESCE(u.fullName, u.username)"),
+    DEPARTMENT("department", "COALESCE(u.department, '')"),
+    SCORE("score", "CASE WHEN cu.passedAttempts > 0 THEN cu.passedPercentageSum / cu.passedAttempts ELSE -1.0 END"),
+    SUBMIT_DATE("submitDate", "COALESCE(cu.lastCompletedAt, {ts '1970-01-01 00:00:00'})");
+
+    private final String key;
+    private final String expression;
+
+    EmployeeReportSort(String key, String expression) {
+        this.key = key;
+        this.expression = expression;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public static EmployeeReportSort fromKey(String key) {
+        if (key == null || key.isBlank()) {
+            return ID;
+        }
+        for (EmployeeReportSort sort : values()) {
+            if (sort.key.equalsIgnoreCase(key)) {
+                return sort;
+            }
+        }
+        throw new RuntimeException("Invalid sort. Must be one of: id, name, department, score, submitDate");
+    }
+}
@@ -0,0 +1,238 @@
+package com.quiz.repository;
+
+import com.quiz.entity.Question;
+import com.quiz.entity.QuestionOption;
+import com.quiz.entity.Quiz;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/* * * AI 生成测验的批量写入
+ * Quiz/Question/QuestionOption 使用 IDENTITY 主键，Hibernate 无法批量插入；
+ * 这里每张表一次 JDBC batch 并取回自增 ID，1000 行的生成结果只需 3 次往返 */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class GeneratedQuizJdbcRepository {
+
+    private static final String INSERT_QUIZ =
+            "INSERT INTO quizzes (course_id, title, description, time_limit_minutes, total_points, passing_score, " +
+            "max_attempts, is_active, generation_task_id, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_QUESTION =
+            "INSERT INTO questions (quiz_id, question_text, type, points, order_index, explanation, is_active, " +
+            "created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_OPTION =
+            "INSERT INTO question_options (question_id, option_text, is_correct, order_index, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insert the quizzes together with their questions and options and write the
+     * generated ids back into the entities. Each quiz must reference a persisted course.
+     */
+    @Transactional
+    public void insertAll(List<Quiz> quizzes) {
+        if (quizzes.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        List<Long> quizIds = batchInsert(INSERT_QUIZ, quizzes, (ps, quiz) -> {
+            ps.setLong(1, quiz.getCourse().getId());
+            ps.setString(2, quiz.getTitle());
+            ps.setString(3, quiz.getDescription());
+            setInteger(ps, 4, quiz.getTimeLimitMinutes());
+            setInteger(ps, 5, quiz.getTotalPoints());
+            setInteger(ps, 6, quiz.getPassingScore());
+            setInteger(ps, 7, quiz.getMaxAttempts());
+            ps.setBoolean(8, Boolean.TRUE.equals(quiz.getIsActive()));
+            ps.setString(9, quiz.getGenerationTaskId());
+            ps.setTimestamp(10, Timestamp.valueOf(quiz.getCreatedAt()));
+            ps.setTimestamp(11, Timestamp.valueOf(quiz.getUpdatedAt()));
+        });
+        List<Question> questions = new ArrayList<>();
+        for (int i = 0; i < quizzes.size(); i++) {
+            Quiz quiz = quizzes.get(i);
+            quiz.setId(quizIds.get(i));
+            if (quiz.getQuestions() != null) {
+                questions.addAll(quiz.getQuestions());
+            }
+        }
+
+        List<Long> questionIds = batchInsert(INSERT_QUESTION, questions, (ps, question) -> {
+            ps.setLong(1, question.getQuiz().getId());
+            ps.setString(2, question.getQuestionText());
+            ps.setString(3, question.getType().name());
+            setInteger(ps, 4, question.getPoints());
+            setInteger(ps, 5, question.getOrderIndex());
+            ps.setString(6, question.getExplanation());
+            ps.setBoolean(7, Boolean.TRUE.equals(question.getIsActive()));
+            ps.setTimestamp(8, Timestamp.valueOf(question.getCreatedAt()));
+            ps.setTimestamp(9, Timestamp.valueOf(question.getUpdatedAt()));
+        });
+        List<QuestionOption> options = new ArrayList<>();
+        for (int i = 0; i < questions.size(); i++) {
+            Question question = questions.get(i);
+            question.setId(questionIds.get(i));
+            if (question.getOptions() != null) {
+                options.addAll(question.getOptions());
+            }
+        }
+
+        List<Long> optionIds = batchInsert(INSERT_OPTION, options, (ps, option) -> {
+            ps.setLong(1, option.getQuestion().getId());
+            ps.setString(2, option.getOptionText());
+            ps.setBoolean(3, Boolean.TRUE.equals(option.getIsCorrect()));
+            setInteger(ps, 4, option.getOrderIndex());
+            ps.setTimestamp(5, Timestamp.valueOf(option.getCreatedAt()));
+            ps.setTimestamp(6, Timestamp.valueOf(option.getUpdatedAt()));
+        });
+        for (int i = 0; i < options.size(); i++) {
+            options.get(i).setId(optionIds.get(i));
+        }
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        int rows = quizzes.size() + questions.size() + options.size();
+        log.info("Batch inserted generated quizzes: quizzes={}, questions={}, options={}, rows={}, ms={}, rowsPerSec={}",
+                quizzes.size(), questions.size(), options.size(), rows, elapsedMs, rows * 1000L / elapsedMs);
+    }
+
+    /**
+     * Delete the active quizzes of a course with their questions and options in three
+     * set-based statements instead of loading and cascading entity by entity.
+     */
+    @Transactional
+    public int deleteActiveByCourseId(Long courseId) {
+        int options = jdbcTemplate.update(
+                "DELETE FROM question_options WHERE question_id IN (" +
+                "SELECT qu.id FROM questions qu JOIN quizzes q ON qu.quiz_id = q.id WHERE q.course_id = ? AND q.is_active = true)",
+                courseId);
+        int questions = jdbcTemplate.update(
+                "DELETE FROM questions WHERE quiz_id IN (SELECT id FROM quizzes WHERE course_id = ? AND is_active = true)",
+                courseId);
+        int quizzes = jdbcTemplate.update(
+                "DELETE FROM quizzes WHERE course_id = ? AND is_active = true",
+                courseId);
+        log.info("Bulk deleted existing quizzes for course {}: quizzes={}, questions={}, options={}",
+                courseId, quizzes, questions, options);
+        return quizzes;
+    }
+
+    /**
+     * Activate previously inserted inactive quizzes, optionally replacing the course's active
+     * ones, in one transaction so readers see either the old set or the complete new one.
+     */
+    @Transactional
+    public void activateStaged(Long courseId, List<Long> stagedQuizIds, boolean replaceExisting) {
+        if (stagedQuizIds.isEmpty()) {
+            return;
+        }
+        if (replaceExisting) {
+            deleteActiveByCourseId(courseId);
+        }
+        jdbcTemplate.batchUpdate("UPDATE quizzes SET is_active = true WHERE id = ?", stagedQuizIds, stagedQuizIds.size(),
+                (ps, id) -> ps.setLong(1, id));
+        log.info("Activated {} staged quizzes for course {}", stagedQuizIds.size(), courseId);
+    }
+
+    /**
+     * Delete quizzes by id together with their questions and options (e.g. staged quizzes of a failed run).
+     */
+    @Transactional
+    public void deleteByIds(List<Long> quizIds) {
+        if (quizIds.isEmpty()) {
+            return;
+        }
+        int batch = quizIds.size();
+        jdbcTemplate.batchUpdate(
+                "DELETE FROM question_options WHERE question_id IN (SELECT id FROM questions WHERE quiz_id = ?)",
+                quizIds, batch, (ps, id) -> ps.setLong(1, id));
+        jdbcTemplate.batchUpdate("DELETE FROM questions WHERE quiz_id = ?", quizIds, batch, (ps, id) -> ps.setLong(1, id));
+        jdbcTemplate.batchUpdate("DELETE FROM quizzes WHERE id = ?", quizIds, batch, (ps, id) -> ps.setLong(1, id));
+        log.info("Deleted {} quizzes by id", quizIds.size());
+    }
+
+    /**
+     * Delete the inactive quizzes an agent task staged but never activated, e.g. when the
+     * worker running it died mid-generation and the task is being retried.
+     */
+    @Transactional
+    public int deleteStagedByTaskId(String taskId) {
+        int options = jdbcTemplate.update(
+                "DELETE FROM question_options WHERE question_id IN (" +
+                "SELECT qu.id FROM questions qu JOIN quizzes q ON qu.quiz_id = q.id WHERE q.generation_task_id = ? AND q.is_active = false)",
+                taskId);
+        int questions = jdbcTemplate.update(
+                "DELETE FROM questions WHERE quiz_id IN (SELECT id FROM quizzes WHERE generation_task_id = ? AND is_active = false)",
+                taskId);
+        int quizzes = jdbcTemplate.update(
+                "DELETE FROM quizzes WHERE generation_task_id = ? AND is_active = false",
+                taskId);
+        if (quizzes > 0) {
+            log.info("Deleted quizzes staged by earlier attempt of task {}: quizzes={}, questions={}, options={}",
+                    taskId, quizzes, questions, options);
+        }
+        return quizzes;
+    }
+
+    @FunctionalInterface
+    private interface RowBinder<T> {
+        void bind(PreparedStatement ps, T row) throws SQLException;
+    }
+
+    private <T> List<Long> batchInsert(String sql, List<T> rows, RowBinder<T> binder) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(sql, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        binder.bind(ps, rows.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != rows.size()) {
+            throw new IllegalStateException("Expected " + rows.size() + " generated keys but got " + keys.size());
+        }
+        List<Long> ids = new ArrayList<>(keys.size());
+        for (Map<String, Object> key : keys) {
+            Object id = key.containsKey("id") ? key.get("id") : key.values().iterator().next();
+            ids.add(((Number) id).longValue());
+        }
+        return ids;
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+}
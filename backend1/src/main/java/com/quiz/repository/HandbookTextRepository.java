@@ -0,0 +1,9 @@
+package com.quiz.repository;
+
+import com.quiz.entity.HandbookText;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface HandbookTextRepository extends JpaRepository<HandbookText, String> {
+}
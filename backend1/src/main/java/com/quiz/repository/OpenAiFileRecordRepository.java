@@ -0,0 +1,22 @@
+package com.quiz.repository;
+
+import com.quiz.entity.OpenAiFileRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface OpenAiFileRecordRepository extends JpaRepository<OpenAiFileRecord, Long> {
+
+    Optional<OpenAiFileRecord> findByHandbookHashAndBaseUrl(String handbookHash, String baseUrl);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OpenAiFileRecord r WHERE r.handbookHash = :handbookHash")
+    void deleteByHandbookHash(@Param("handbookHash") String handbookHash);
+}
@@ -45,6 +45,50 @@ public interface QuizAttemptRepository extends JpaRepository<QuizAttempt, Long>
     @Query("SELECT DISTINCT qa.quiz.id FROM QuizAttempt qa WHERE qa.user.id = :userId AND qa.quiz.course.id = :courseId AND qa.isPassed = true")
     List<Long> findPassedQuizIdsByUserIdAndCourseId(@Param("userId") Long userId, @Param("courseId") Long courseId);
     
+    @Query("SELECT CASE WHEN COUNT(qa) > 0 THEN true ELSE false END FROM QuizAttempt qa WHERE qa.completedAt IS NOT NULL")
+    boolean existsCompleted();
+
+    // userId, courseId, attempts, passed attempts, passed percentage sum, first passed at, last passed at, last completed at
+    @Query("SELECT qa.user.id, qa.quiz.course.id, COUNT(qa), " +
+           "SUM(CASE WHEN qa.isPassed = true THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN qa.isPassed = true THEN qa.percentage ELSE 0 END), " +
+           "MIN(CASE WHEN qa.isPassed = true THEN qa.completedAt END), " +
+           "MAX(CASE WHEN qa.isPassed = true THEN qa.completedAt END), " +
+           "MAX(qa.completedAt) " +
+           "FROM QuizAttempt qa WHERE qa.completedAt IS NOT NULL " +
+           "GROUP BY qa.user.id, qa.quiz.course.id")
+    List<Object[]> aggregateCompletedByUserAndCourse();
+
+    // year, month, attempts, passed attempts, distinct passing users (by completedAt)
+    @Query("SELECT YEAR(qa.completedAt), MONTH(qa.completedAt), COUNT(qa), " +
+           "SUM(CASE WHEN qa.isPassed = true THEN 1 ELSE 0 END), " +
+           "COUNT(DISTINCT CASE WHEN qa.isPassed = true THEN qa.user.id END) " +
+           "FROM QuizAttempt qa WHERE qa.completedAt IS NOT NULL " +
+           "GROUP BY YEAR(qa.completedAt), MONTH(qa.completedAt)")
+    List<Object[]> aggregateCompletedByMonth();
+
+    // Report aggregates computed in the database. Paths go through explicit joins and select
+    // scalars only, so no User/Quiz/Course proxies are initialized per attempt.
+
+    @Query("SELECT COUNT(DISTINCT u.id) FROM QuizAttempt qa JOIN qa.user u WHERE qa.isPassed = true")
+    long countDistinctPassedUsers();
+
+    // department, distinct users with a passed attempt
+    @Query("SELECT u.department, COUNT(DISTINCT u.id) FROM QuizAttempt qa JOIN qa.user u " +
+           "WHERE qa.isPassed = true GROUP BY u.department")
+    List<Object[]> countDistinctPassedUsersByDepartment();
+
+    // courseId, distinct users with a passed attempt
+    @Query("SELECT q.course.id, COUNT(DISTINCT qa.user.id) FROM QuizAttempt qa JOIN qa.quiz q " +
+           "WHERE qa.isPassed = true GROUP BY q.course.id")
+    List<Object[]> countDistinctPassedUsersByCourse();
+
+    // userId, passed attempts, average percentage over passed attempts, latest completion
+    @Query("SELECT qa.user.id, SUM(CASE WHEN qa.isPassed = true THEN 1 ELSE 0 END), " +
+           "AVG(CASE WHEN qa.isPassed = true THEN qa.percentage END), MAX(qa.completedAt) " +
+           "FROM QuizAttempt qa GROUP BY qa.user.id")
+    List<Object[]> aggregateByUser();
+
     // New: Delete all quiz submissions by course ID (will cascade delete student answers)
     @Modifying
     @Transactional
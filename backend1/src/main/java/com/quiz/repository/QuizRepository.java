@@ -43,4 +43,10 @@ public interface QuizRepository extends JpaRepository<Quiz, Long> {
     
     @Query("SELECT COUNT(q) FROM Quiz q WHERE q.course.id = :courseId AND q.isActive = true")
     Long countActiveByCourseId(@Param("courseId") Long courseId);
+
+    // id, title, description, createdAt and question count of the active quizzes an agent task generated
+    @Query("SELECT q.id, q.title, q.description, q.createdAt, COUNT(qu) FROM Quiz q LEFT JOIN q.questions qu " +
+           "WHERE q.generationTaskId = :taskId AND q.isActive = true " +
+           "GROUP BY q.id, q.title, q.description, q.createdAt ORDER BY q.id")
+    List<Object[]> findActiveSummariesByGenerationTaskId(@Param("taskId") String taskId);
 }
\ No newline at end of file
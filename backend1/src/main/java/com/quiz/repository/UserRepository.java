@@ -2,8 +2,10 @@ package com.quiz.repository;
 
 import com.quiz.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +14,12 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+
+    // department, user count
+    @Query("SELECT u.department, COUNT(u) FROM User u GROUP BY u.department")
+    List<Object[]> countByDepartment();
+
+    // id, department
+    @Query("SELECT u.id, u.department FROM User u")
+    List<Object[]> findAllDepartments();
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package com.quiz.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quiz.dto.AgentProcessRequest;
+import com.quiz.dto.AgentProcessResult;
+import com.quiz.dto.ProcessingStatus;
+import com.quiz.entity.AgentJob;
+import com.quiz.repository.AgentJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/* * * AI ProcessTask持久化队列
+ * Task与进度写入 agent_jobs，进程重启后未完成的Task可被重新领取；
+ * 进度Update使用独立事务，避免被Course处理的长事务挡住而对Query不可见 */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AgentJobService {
+
+    public static final String PENDING = "PENDING";
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private final AgentJobRepository agentJobRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${agent.jobs.max-pending:100}")
+    private long maxPending;
+
+    @Value("${agent.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${agent.jobs.stall-timeout-seconds:180}")
+    private long stallTimeoutSeconds;
+
+    @Value("${agent.jobs.retention-hours:72}")
+    private long retentionHours;
+
+    /**
+     * Persist a new PENDING job. Throws TaskRejectedException when the backlog is full
+     * so the controller can answer 429 as before.
+     */
+    @Transactional
+    public void enqueue(AgentProcessRequest request, String taskId) {
+        long pending = agentJobRepository.countByStatus(PENDING);
+        if (pending >= maxPending) {
+            log.warn("Agent job backlog full ({} pending), rejecting task {} for course {}",
+                    pending, taskId, request.getCourseId());
+            throw new TaskRejectedException("Agent job backlog full: " + pending + " pending");
+        }
+        AgentJob job = newJob(request, taskId);
+        job.setStatus(PENDING);
+        job.setMessage("Task created, waiting to start");
+        agentJobRepository.save(job);
+        log.info("Agent job queued: taskId={}, courseId={}", taskId, request.getCourseId());
+    }
+
+    /** Record a job that is processed synchronously by the calling thread. */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void registerRunning(AgentProcessRequest request, String taskId, String workerId) {
+        AgentJob job = newJob(request, taskId);
+        LocalDateTime now = LocalDateTime.now();
+        job.setStatus(IN_PROGRESS);
+        job.setMessage("Processing synchronously");
+        job.setAttempts(1);
+        job.setWorkerId(workerId);
+        job.setStartedAt(now);
+        job.setHeartbeatAt(now);
+        agentJobRepository.save(job);
+    }
+
+    /**
+     * Claim up to limit pending jobs for this worker. The row locks taken by
+     * FOR UPDATE SKIP LOCKED are held until the status flip commits.
+     */
+    @Transactional
+    public List<AgentJob> claim(int limit, String workerId) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<AgentJob> jobs = agentJobRepository.lockPendingJobs(limit);
+        LocalDateTime now = LocalDateTime.now();
+        for (AgentJob job : jobs) {
+            job.setStatus(IN_PROGRESS);
+            job.setAttempts(job.getAttempts() == null ? 1 : job.getAttempts() + 1);
+            job.setWorkerId(workerId);
+            job.setMessage("Claimed by worker");
+            job.setStartedAt(now);
+            job.setHeartbeatAt(now);
+            job.setUpdatedAt(now);
+        }
+        return agentJobRepository.saveAll(jobs);
+    }
+
+    public AgentProcessRequest readRequest(AgentJob job) {
+        try {
+            return objectMapper.readValue(job.getRequestPayload(), AgentProcessRequest.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("无法解析任务请求: " + job.getId(), e);
+        }
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void updateProgress(String taskId, String status, Integer progress, String message) {
+        int updated = agentJobRepository.updateProgress(taskId, status, progress, truncate(message), LocalDateTime.now());
+        if (updated == 0) {
+            log.debug("Progress update for unknown agent job {}", taskId);
+        }
+    }
+
+    /** Called each time a generated quiz has been persisted. */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void updateCompletedQuizzes(String taskId, int completed) {
+        agentJobRepository.updateCompletedQuizzes(taskId, completed, LocalDateTime.now());
+    }
+
+    /** Record the final outcome once the processing transaction has committed. */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void finish(String taskId, AgentProcessResult result) {
+        agentJobRepository.findById(taskId).ifPresent(job -> {
+            LocalDateTime now = LocalDateTime.now();
+            boolean success = result != null && "SUCCESS".equals(result.getStatus());
+            job.setStatus(success ? COMPLETED : FAILED);
+            job.setProgress(success ? 100 : job.getProgress());
+            if (success) {
+                job.setMessage("Processing completed");
+                job.setCompletedQuizzes(result.getGeneratedQuizzes() != null ? result.getGeneratedQuizzes().size() : 0);
+            } else {
+                String error = result != null ? result.getErrorMessage() : "Unknown error";
+                job.setMessage(truncate("Processing failed: " + error));
+                job.setErrorMessage(error);
+            }
+            job.setUpdatedAt(now);
+            job.setFinishedAt(now);
+            agentJobRepository.save(job);
+        });
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void fail(String taskId, String error) {
+        AgentProcessResult result = AgentProcessResult.builder().status("FAILED").errorMessage(error).build();
+        finish(taskId, result);
+    }
+
+    @Transactional
+    public void heartbeat(Collection<String> taskIds) {
+        if (!taskIds.isEmpty()) {
+            agentJobRepository.heartbeat(taskIds, LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Re-queue IN_PROGRESS jobs whose worker stopped heart-beating (crash or restart);
+     * jobs that already used all attempts are marked FAILED instead.
+     */
+    @Transactional
+    public int recoverStalledJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoff = now.minusSeconds(stallTimeoutSeconds);
+        int failed = agentJobRepository.failStalled(cutoff, maxAttempts, now);
+        int requeued = agentJobRepository.requeueStalled(cutoff, maxAttempts, now);
+        if (failed > 0 || requeued > 0) {
+            log.warn("Recovered stalled agent jobs: requeued={}, failed={}", requeued, failed);
+        }
+        return requeued;
+    }
+
+    @Transactional
+    public int purgeFinishedJobs() {
+        int deleted = agentJobRepository.deleteFinishedBefore(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            log.info("Purged {} finished agent jobs older than {}h", deleted, retentionHours);
+        }
+        return deleted;
+    }
+
+    public ProcessingStatus getStatus(String taskId) {
+        return agentJobRepository.findById(taskId).map(this::toStatus).orElse(null);
+    }
+
+    private ProcessingStatus toStatus(AgentJob job) {
+        return ProcessingStatus.builder()
+                .taskId(job.getId())
+                .status(job.getStatus())
+                .progress(job.getProgress())
+                .message(job.getMessage())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .errorMessage(job.getErrorMessage())
+                .courseId(job.getCourseId())
+                .completedQuizzes(job.getCompletedQuizzes())
+                .totalQuizzes(job.getTotalQuizzes())
+                .build();
+    }
+
+    private AgentJob newJob(AgentProcessRequest request, String taskId) {
+        AgentJob job = new AgentJob();
+        job.setId(taskId);
+        job.setCourseId(request.getCourseId());
+        job.setTotalQuizzes(Boolean.TRUE.equals(request.getEnableQuizGeneration()) ? request.getQuizCount() : 0);
+        try {
+            job.setRequestPayload(objectMapper.writeValueAsString(request));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("无法序列化任务请求", e);
+        }
+        return job;
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
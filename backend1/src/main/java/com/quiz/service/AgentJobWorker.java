@@ -0,0 +1,134 @@
+package com.quiz.service;
+
+import com.quiz.dto.AgentProcessRequest;
+import com.quiz.dto.AgentProcessResult;
+import com.quiz.entity.AgentJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* * * AI ProcessTask worker
+ * 定时从 agent_jobs 领取 PENDING Task（SKIP LOCKED，多实例安全），交给 agentTaskExecutor 执行；
+ * 运行中的Task定期写心跳，启动时与巡检时将心跳超时的Task重新排队，并按保留期清理已结束的Task */
+@Component
+@Slf4j
+public class AgentJobWorker {
+
+    private final AgentJobService agentJobService;
+    private final PdfQuizAgentService pdfQuizAgentService;
+    private final ThreadPoolTaskExecutor agentTaskExecutor;
+
+    private final String workerId;
+
+    private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready;
+
+    public AgentJobWorker(AgentJobService agentJobService,
+                          PdfQuizAgentService pdfQuizAgentService,
+                          ThreadPoolTaskExecutor agentTaskExecutor) {
+        this.agentJobService = agentJobService;
+        this.pdfQuizAgentService = pdfQuizAgentService;
+        this.agentTaskExecutor = agentTaskExecutor;
+        this.workerId = resolveHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            agentJobService.recoverStalledJobs();
+        } catch (Exception e) {
+            log.warn("Agent job recovery on startup failed: {}", e.getMessage());
+        }
+        ready = true;
+        log.info("Agent job worker {} started", workerId);
+    }
+
+    @Scheduled(fixedDelayString = "${agent.jobs.poll-interval-ms:2000}")
+    public void poll() {
+        if (!ready) {
+            return;
+        }
+        int capacity = agentTaskExecutor.getMaxPoolSize() - runningJobs.size();
+        if (capacity <= 0) {
+            return;
+        }
+        List<AgentJob> jobs;
+        try {
+            jobs = agentJobService.claim(capacity, workerId);
+        } catch (Exception e) {
+            log.warn("Failed to claim agent jobs: {}", e.getMessage());
+            return;
+        }
+        for (AgentJob job : jobs) {
+            runningJobs.add(job.getId());
+            try {
+                agentTaskExecutor.execute(() -> run(job));
+            } catch (RuntimeException e) {
+                // Leave the job IN_PROGRESS; stall recovery re-queues it once the heartbeat expires
+                runningJobs.remove(job.getId());
+                log.warn("Could not start agent job {}: {}", job.getId(), e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${agent.jobs.heartbeat-interval-ms:30000}")
+    public void heartbeat() {
+        try {
+            agentJobService.heartbeat(Set.copyOf(runningJobs));
+        } catch (Exception e) {
+            log.warn("Agent job heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${agent.jobs.recovery-interval-ms:60000}", initialDelayString = "${agent.jobs.recovery-interval-ms:60000}")
+    public void recover() {
+        try {
+            agentJobService.recoverStalledJobs();
+        } catch (Exception e) {
+            log.warn("Agent job recovery failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${agent.jobs.purge-interval-ms:3600000}", initialDelayString = "${agent.jobs.purge-interval-ms:3600000}")
+    public void purge() {
+        try {
+            agentJobService.purgeFinishedJobs();
+        } catch (Exception e) {
+            log.warn("Agent job purge failed: {}", e.getMessage());
+        }
+    }
+
+    private void run(AgentJob job) {
+        String taskId = job.getId();
+        try {
+            AgentProcessRequest request = agentJobService.readRequest(job);
+            log.info("Agent job {} started on {} (attempt {})", taskId, workerId, job.getAttempts());
+            AgentProcessResult result = pdfQuizAgentService.processCourseWithTaskId(request, taskId);
+            // processCourseWithTaskId commits each write itself; its results are committed by now
+            agentJobService.finish(taskId, result);
+        } catch (Exception e) {
+            log.error("Agent job {} failed: {}", taskId, e.getMessage(), e);
+            agentJobService.fail(taskId, e.getMessage());
+        } finally {
+            runningJobs.remove(taskId);
+        }
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "agent";
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.quiz.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* * * 有界的会话记忆Storage
+ * 按最近访问顺序维护（LRU），同时受会话数上限、空闲 TTL 与全局字符预算（近似堆占用）约束；
+ * 超限时从最久未访问的会话开始淘汰，并通过 Micrometer 暴露会话数、命中与淘汰指标 */
+@Slf4j
+public class BoundedChatMemoryStore implements ChatMemoryStore {
+
+    // Rough per-message overhead (object headers, list slot, type) on top of the text itself
+    private static final int MESSAGE_OVERHEAD_CHARS = 64;
+
+    private final int maxSessions;
+    private final long idleTtlMillis;
+    private final long maxTotalChars;
+
+    private final LinkedHashMap<String, Entry> sessions = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalChars;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter sizeEvictions;
+    private final Counter ttlEvictions;
+    private final Counter budgetEvictions;
+
+    public BoundedChatMemoryStore(int maxSessions, Duration idleTtl, long maxTotalChars,
+                                  MeterRegistry meterRegistry, String metricPrefix) {
+        this.maxSessions = maxSessions;
+        this.idleTtlMillis = idleTtl.toMillis();
+        this.maxTotalChars = maxTotalChars;
+        this.hitCounter = meterRegistry.counter(metricPrefix + ".lookups", "result", "hit");
+        this.missCounter = meterRegistry.counter(metricPrefix + ".lookups", "result", "miss");
+        this.sizeEvictions = meterRegistry.counter(metricPrefix + ".evictions", "reason", "size");
+        this.ttlEvictions = meterRegistry.counter(metricPrefix + ".evictions", "reason", "ttl");
+        this.budgetEvictions = meterRegistry.counter(metricPrefix + ".evictions", "reason", "budget");
+        Gauge.builder(metricPrefix + ".sessions", this, BoundedChatMemoryStore::sessionCount)
+                .description("Chat sessions currently held in memory")
+                .register(meterRegistry);
+        Gauge.builder(metricPrefix + ".chars", this, BoundedChatMemoryStore::totalChars)
+                .description("Estimated characters held across all chat sessions")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        String key = String.valueOf(memoryId);
+        synchronized (this) {
+            Entry entry = sessions.get(key);
+            if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+                if (entry != null) {
+                    remove(key);
+                    ttlEvictions.increment();
+                }
+                missCounter.increment();
+                return new ArrayList<>();
+            }
+            hitCounter.increment();
+            entry.lastAccess = System.currentTimeMillis();
+            return new ArrayList<>(entry.messages);
+        }
+    }
+
+    /** Cached messages or null, without counting a miss; used by stores layered on top of this one. */
+    public List<ChatMessage> peek(Object memoryId) {
+        String key = String.valueOf(memoryId);
+        synchronized (this) {
+            Entry entry = sessions.get(key);
+            if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+                return null;
+            }
+            hitCounter.increment();
+            entry.lastAccess = System.currentTimeMillis();
+            return new ArrayList<>(entry.messages);
+        }
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        String key = String.valueOf(memoryId);
+        List<ChatMessage> copy = new ArrayList<>(messages);
+        long chars = estimateChars(copy);
+        synchronized (this) {
+            Entry previous = sessions.put(key, new Entry(copy, chars, System.currentTimeMillis()));
+            if (previous != null) {
+                totalChars -= previous.chars;
+            }
+            totalChars += chars;
+            enforceLimits(key);
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        synchronized (this) {
+            remove(String.valueOf(memoryId));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chatbot.memory.sweep-interval-ms:60000}")
+    public void evictIdleSessions() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        synchronized (this) {
+            // Access order: the eldest entries come first, so stop at the first live one
+            Iterator<Map.Entry<String, Entry>> it = sessions.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                if (!isExpired(e.getValue(), now)) {
+                    break;
+                }
+                totalChars -= e.getValue().chars;
+                it.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            ttlEvictions.increment(evicted);
+            log.debug("Evicted {} idle chat sessions", evicted);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessionCount());
+        stats.put("maxSessions", maxSessions);
+        stats.put("estimatedChars", totalChars());
+        stats.put("maxTotalChars", maxTotalChars);
+        stats.put("idleTtlSeconds", idleTtlMillis / 1000);
+        stats.put("hits", (long) hitCounter.count());
+        stats.put("misses", (long) missCounter.count());
+        stats.put("evictionsSize", (long) sizeEvictions.count());
+        stats.put("evictionsTtl", (long) ttlEvictions.count());
+        stats.put("evictionsBudget", (long) budgetEvictions.count());
+        return stats;
+    }
+
+    private void enforceLimits(String justWritten) {
+        Iterator<Map.Entry<String, Entry>> it = sessions.entrySet().iterator();
+        while ((sessions.size() > maxSessions || totalChars > maxTotalChars) && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(justWritten)) {
+                // Never drop the session being written; a single oversized session just exceeds the budget
+                continue;
+            }
+            boolean overSize = sessions.size() > maxSessions;
+            totalChars -= eldest.getValue().chars;
+            it.remove();
+            (overSize ? sizeEvictions : budgetEvictions).increment();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = sessions.remove(key);
+        if (removed != null) {
+            totalChars -= removed.chars;
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.lastAccess > idleTtlMillis;
+    }
+
+    private synchronized int sessionCount() {
+        return sessions.size();
+    }
+
+    private synchronized long totalChars() {
+        return totalChars;
+    }
+
+    static long estimateChars(List<ChatMessage> messages) {
+        long chars = 0;
+        for (ChatMessage message : messages) {
+            chars += MESSAGE_OVERHEAD_CHARS;
+            if (message instanceof AiMessage ai && ai.hasToolExecutionRequests()) {
+                chars += ai.toolExecutionRequests().stream()
+                        .mapToLong(r -> (r.name() != null ? r.name().length() : 0) + (r.arguments() != null ? r.arguments().length() : 0))
+                        .sum();
+            }
+            chars += textLength(message);
+        }
+        return chars;
+    }
+
+    // ChatMessage.text() is deprecated; read the text from each concrete message type instead
+    private static long textLength(ChatMessage message) {
+        String text = null;
+        if (message instanceof UserMessage user) {
+            long chars = 0;
+            for (Content content : user.contents()) {
+                if (content instanceof TextContent textContent && textContent.text() != null) {
+                    chars += textContent.text().length();
+                }
+            }
+            return chars;
+        } else if (message instanceof AiMessage ai) {
+            text = ai.text();
+        } else if (message instanceof SystemMessage system) {
+            text = system.text();
+        } else if (message instanceof ToolExecutionResultMessage toolResult) {
+            text = toolResult.text();
+        }
+        return text != null ? text.length() : 0;
+    }
+
+    private static class Entry {
+        final List<ChatMessage> messages;
+        final long chars;
+        long lastAccess;
+
+        Entry(List<ChatMessage> messages, long chars, long lastAccess) {
+            this.messages = messages;
+            this.chars = chars;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.quiz.service;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/* * * 单次Chatbot调用的上下文
+ * 作为 @MemoryId 传给 ChatAssistant，LangChain4j 再通过 @ToolMemoryId 交给Tool方法；
+ * 不依赖线程，Tool无论在请求线程、重试还是流式回调线程上执行，都归属到发起它的会话与用户 */
+public class ChatInvocation {
+
+    @Getter
+    private final String sessionKey;
+
+    @Getter
+    private final Long userId;
+
+    private final List<String> toolCalls = new CopyOnWriteArrayList<>();
+    private final Consumer<String> toolCallListener;
+    // Tool results already computed in this turn, see ToolResultCache
+    private final Map<String, Object> toolResults = new ConcurrentHashMap<>();
+
+    public ChatInvocation(String sessionKey, Long userId) {
+        this(sessionKey, userId, null);
+    }
+
+    public ChatInvocation(String sessionKey, Long userId, Consumer<String> toolCallListener) {
+        this.sessionKey = sessionKey;
+        this.userId = userId;
+        this.toolCallListener = toolCallListener;
+    }
+
+    public void recordToolCall(String toolName) {
+        toolCalls.add(toolName);
+        if (toolCallListener != null) {
+            toolCallListener.accept(toolName);
+        }
+    }
+
+    public List<String> getToolCalls() {
+        return List.copyOf(toolCalls);
+    }
+
+    /** Forget the tools of a failed attempt before it is retried. */
+    public void clearToolCalls() {
+        toolCalls.clear();
+    }
+
+    Object getToolResult(String key) {
+        return toolResults.get(key);
+    }
+
+    void putToolResult(String key, Object value) {
+        toolResults.put(key, value);
+    }
+
+    // LangChain4j logs the memory id; show the session rather than the object
+    @Override
+    public String toString() {
+        return sessionKey;
+    }
+}
@@ -0,0 +1,303 @@
+package com.quiz.service;
+
+import com.quiz.event.CourseChangedEvent;
+import com.quiz.event.QuizSubmittedEvent;
+import com.quiz.event.UserChangedEvent;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/* * * Chatbot 回复缓存
+ * 以规范化后的问题文本为键，记录回答及其使用过的Tool（作用域）；用过个人Tool的回答不缓存。
+ * 可选：配置了 EmbeddingModel Bean 且相似度阈值 > 0 时，精确未命中再按向量余弦相似度查找。
+ * 条目有 TTL；Course变更时淘汰所有依赖Tool数据的条目，测验Commit时淘汰用过报表Tool的条目，纯模型知识的回答保留 */
+@Service
+@Slf4j
+public class ChatResponseCache {
+
+    /** Tools whose output depends on who is asking; answers that used them are never shared. */
+    public static final Set<String> PERSONAL_TOOLS = Set.of(
+            "getCurrentUserId",
+            "getUserCertificates",
+            "getUserCertificatesSummary",
+            "getUserProgress");
+
+    private static final Pattern PUNCTUATION = Pattern.compile("[\\p{Punct}\\p{IsPunctuation}，。？！、；：“”‘’（）《》【】…·～]+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final double similarityThreshold;
+    private final EmbeddingModel embeddingModel;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final Counter hits;
+    private final Counter similarHits;
+    private final Counter misses;
+    private final Counter bypasses;
+    private final Counter invalidations;
+
+    public ChatResponseCache(@Value("${chatbot.response-cache.enabled:true}") boolean enabled,
+                             @Value("${chatbot.response-cache.ttl-minutes:30}") long ttlMinutes,
+                             @Value("${chatbot.response-cache.max-entries:2000}") int maxEntries,
+                             @Value("${chatbot.response-cache.similarity-threshold:0.92}") double similarityThreshold,
+                             ObjectProvider<EmbeddingModel> embeddingModel,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlMillis = Duration.ofMinutes(ttlMinutes).toMillis();
+        this.maxEntries = maxEntries;
+        this.similarityThreshold = similarityThreshold;
+        this.embeddingModel = similarityThreshold > 0 ? embeddingModel.getIfAvailable() : null;
+        this.hits = meterRegistry.counter("chatbot.response-cache.lookups", "result", "hit");
+        this.similarHits = meterRegistry.counter("chatbot.response-cache.lookups", "result", "similar");
+        this.misses = meterRegistry.counter("chatbot.response-cache.lookups", "result", "miss");
+        this.bypasses = meterRegistry.counter("chatbot.response-cache.lookups", "result", "bypass");
+        this.invalidations = meterRegistry.counter("chatbot.response-cache.invalidations");
+        Gauge.builder("chatbot.response-cache.size", this, ChatResponseCache::size)
+                .register(meterRegistry);
+        Gauge.builder("chatbot.response-cache.hit-ratio", this, ChatResponseCache::hitRatio)
+                .register(meterRegistry);
+        log.info("Chat response cache: enabled={}, ttl={}m, maxEntries={}, similarity={}",
+                enabled, ttlMinutes, maxEntries, this.embeddingModel != null ? similarityThreshold : "off");
+    }
+
+    public static class CachedReply {
+        private final String message;
+        private final List<String> toolsUsed;
+
+        CachedReply(String message, List<String> toolsUsed) {
+            this.message = message;
+            this.toolsUsed = toolsUsed;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public List<String> getToolsUsed() {
+            return toolsUsed;
+        }
+    }
+
+    public Optional<CachedReply> lookup(String question) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = normalize(question);
+        if (key.isEmpty()) {
+            bypasses.increment();
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && !isExpired(entry, now)) {
+                hits.increment();
+                return Optional.of(entry.reply);
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        if (embeddingModel != null) {
+            Optional<CachedReply> similar = findSimilar(key, now);
+            if (similar.isPresent()) {
+                similarHits.increment();
+                return similar;
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /** Count a question that could not use the cache, e.g. a follow-up in an ongoing conversation. */
+    public void recordBypass() {
+        if (enabled) {
+            bypasses.increment();
+        }
+    }
+
+    public void store(String question, String answer, Collection<String> toolsUsed) {
+        if (!enabled || answer == null || answer.isBlank()) {
+            return;
+        }
+        if (toolsUsed.stream().anyMatch(PERSONAL_TOOLS::contains)) {
+            return;
+        }
+        String key = normalize(question);
+        if (key.isEmpty()) {
+            return;
+        }
+        float[] vector = embeddingModel != null ? embed(key) : null;
+        Entry entry = new Entry(new CachedReply(answer, List.copyOf(toolsUsed)), vector, System.currentTimeMillis());
+        synchronized (this) {
+            entries.put(key, entry);
+            Iterator<String> eldest = entries.keySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Course, quiz and handbook tools return course data and the compliance reports are
+     * broken down by course, so a course change drops all answers built from tool output;
+     * answers the model gave from its own knowledge stay valid.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        invalidate(entry -> !entry.reply.toolsUsed.isEmpty(), event);
+    }
+
+    /** A submission changes the compliance figures; drop answers built from the report tools. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuizSubmitted(QuizSubmittedEvent event) {
+        invalidate(ChatResponseCache::usesReportTools, event);
+    }
+
+    /** New, moved or deleted users change head counts and department figures the same way. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidate(ChatResponseCache::usesReportTools, event);
+    }
+
+    @Scheduled(fixedDelayString = "${chatbot.response-cache.sweep-interval-ms:300000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            entries.values().removeIf(entry -> isExpired(entry, now));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", size());
+        stats.put("hits", (long) hits.count());
+        stats.put("similarHits", (long) similarHits.count());
+        stats.put("misses", (long) misses.count());
+        stats.put("bypasses", (long) bypasses.count());
+        stats.put("hitRatio", hitRatio());
+        stats.put("invalidations", (long) invalidations.count());
+        stats.put("similaritySearch", embeddingModel != null);
+        return stats;
+    }
+
+    static String normalize(String question) {
+        if (question == null) {
+            return "";
+        }
+        String text = PUNCTUATION.matcher(question.toLowerCase()).replaceAll(" ");
+        return WHITESPACE.matcher(text).replaceAll(" ").trim();
+    }
+
+    private Optional<CachedReply> findSimilar(String key, long now) {
+        float[] query = embed(key);
+        if (query == null) {
+            return Optional.empty();
+        }
+        CachedReply best = null;
+        double bestScore = similarityThreshold;
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                if (entry.vector == null || isExpired(entry, now)) {
+                    continue;
+                }
+                double score = cosine(query, entry.vector);
+                if (score >= bestScore) {
+                    bestScore = score;
+                    best = entry.reply;
+                }
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private float[] embed(String text) {
+        try {
+            Embedding embedding = embeddingModel.embed(text).content();
+            return embedding.vector();
+        } catch (Exception e) {
+            log.warn("Failed to embed chatbot question for similarity lookup: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+    }
+
+    private static boolean usesReportTools(Entry entry) {
+        return entry.reply.toolsUsed.stream().anyMatch(ToolResultCache.REPORT_TOOLS::contains);
+    }
+
+    private void invalidate(Predicate<Entry> stale, Object event) {
+        int removed;
+        synchronized (this) {
+            int before = entries.size();
+            entries.values().removeIf(stale);
+            removed = before - entries.size();
+        }
+        if (removed > 0) {
+            invalidations.increment(removed);
+            log.info("Invalidated {} cached chatbot replies after {}", removed, event);
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdAt > ttlMillis;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        double served = hits.count() + similarHits.count();
+        double total = served + misses.count() + bypasses.count();
+        return total == 0 ? 0 : served / total;
+    }
+
+    private static class Entry {
+        final CachedReply reply;
+        final float[] vector;
+        final long createdAt;
+
+        Entry(CachedReply reply, float[] vector, long createdAt) {
+            this.reply = reply;
+            this.vector = vector;
+            this.createdAt = createdAt;
+        }
+    }
+}
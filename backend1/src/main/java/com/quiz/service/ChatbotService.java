@@ -10,14 +10,24 @@ import com.quiz.dto.QuizSummaryDto;
 import com.quiz.service.QuestionService;
 import com.quiz.service.QuizService;
 import com.quiz.service.PdfQuizAgentService;
+import com.quiz.storage.HandbookBlobStore;
 import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolMemoryId;
 import dev.langchain4j.exception.IllegalConfigurationException;
 import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.service.AiServiceContext;
 import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.TokenStream;
 import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -35,87 +45,194 @@ public class ChatbotService {
 
     private final CourseService courseService;
     private final ReportService reportService;
+    private final ReportCache reportCache;
     private final CertificateService certificateService;
     private final QuestionService questionService;
     private final QuizService quizService;
     private final PdfQuizAgentService pdfQuizAgentService;
     private final UserService userService;
     private final ObjectMapper objectMapper;
+    private final HandbookBlobStore handbookBlobStore;
+    private final HandbookTextService handbookTextService;
+    private final HandbookPassageIndex handbookPassageIndex;
+    private final OpenAiFileRegistry openAiFileRegistry;
+    private final OpenAiHttpClient openAiHttpClient;
+    private final ChatResponseCache responseCache;
+    private final ToolResultCache toolResultCache;
+    private final CourseSearchIndex courseSearchIndex;
+
+    // Session memories live in a bounded store (LRU + idle TTL); see ChatMemoryConfig
+    private final ChatMemoryStore chatMemoryStore;
+
+    private void recordToolCall(ChatInvocation invocation, String toolName) {
+        invocation.recordToolCall(toolName);
+        log.info("Tool invoked: {} (session {})", toolName, invocation.getSessionKey());
+    }
 
-    // TODO: Translate - In-memory store for chat memories per session
-    private final Map<String, ChatMemory> memoryStore = new java.util.concurrent.ConcurrentHashMap<>();
+    private volatile ChatAssistant chatAssistant;
 
-    // Per-request tool call tracking for frontend display
-    private final ThreadLocal<List<String>> toolCallsContext = ThreadLocal.withInitial(java.util.ArrayList::new);
-    
-    // Per-request user context for AI tools
-    private final ThreadLocal<Long> currentUserContext = new ThreadLocal<>();
+    @Value("${chatbot.stream.max-concurrent:64}")
+    private int streamMaxConcurrent;
 
-    private void recordToolCall(String toolName) {
-        try {
-            List<String> calls = toolCallsContext.get();
-            calls.add(toolName);
-            log.info("Tool invoked: {}", toolName);
-        } catch (Exception e) {
-            log.warn("Failed to record tool call: {}", toolName, e);
+    @Value("${chatbot.memory.max-messages:10}")
+    private int memoryMaxMessages;
+
+    @Value("${chatbot.report.max-employees:50}")
+    private int reportMaxEmployees;
+
+    /**
+     * Resolve the memory key for a request: the client's session id, else a per-user key,
+     * else a fresh anonymous key so sessionless callers never share one conversation window.
+     */
+    private String resolveSessionKey(ChatbotRequest request) {
+        if (request.getSessionId() != null && !request.getSessionId().isBlank()) {
+            return request.getSessionId();
+        }
+        if (request.getUserId() != null) {
+            return "user-" + request.getUserId();
         }
+        return "anon-" + UUID.randomUUID();
     }
 
-    private ChatMemory getOrCreateMemory(String sessionId) {
-        String key = (sessionId == null || sessionId.isBlank()) ? "default" : sessionId;
-        return memoryStore.computeIfAbsent(key, k -> MessageWindowChatMemory.withMaxMessages(10));
+    private ChatMemory getOrCreateMemory(String sessionKey) {
+        // Thin view over the store; messages are loaded from and written back to chatMemoryStore
+        return MessageWindowChatMemory.builder()
+                .id(sessionKey)
+                .maxMessages(memoryMaxMessages)
+                .chatMemoryStore(chatMemoryStore)
+                .build();
     }
 
     /**
-     * Clean up memory when tool call errors occur to prevent state pollution
+     * The chat model and assistant proxy are built once and shared by all sessions;
+     * each call picks its session window through the ChatMemoryProvider.
+     */
+    private ChatAssistant getAssistant() {
+        ChatAssistant current = chatAssistant;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (chatAssistant == null) {
+                log.info("Building OpenAI chat model {} at {}", openaiModel, openaiBaseUrl);
+                AiServices<ChatAssistant> builder = AiServices.builder(ChatAssistant.class)
+                        .chatLanguageModel(createChatModel())
+                        .streamingChatLanguageModel(createStreamingModel())
+                        .tools(this)
+                        .chatMemoryProvider(this::provideMemory);
+                chatAssistant = builder.build();
+                disableMemoryRetention(builder);
+                log.info("AI assistant created with tools registered");
+            }
+            return chatAssistant;
+        }
+    }
+
+    // Package-private so tests can drive the real assistant with a stub model
+    ChatLanguageModel createChatModel() {
+        return OpenAiChatModel.builder()
+                .apiKey(openaiApiKey)
+                .baseUrl(openaiBaseUrl)
+                .modelName(openaiModel)
+                .temperature(0.7)
+                .maxTokens(1000)
+                .timeout(java.time.Duration.ofSeconds(60))
+                .logRequests(true)
+                .logResponses(true)
+                .maxRetries(1)
+                .build();
+    }
+
+    StreamingChatLanguageModel createStreamingModel() {
+        OpenAiStreamingChatModel streamingModel = OpenAiStreamingChatModel.builder()
+                .apiKey(openaiApiKey)
+                .baseUrl(openaiBaseUrl)
+                .modelName(openaiModel)
+                .temperature(0.7)
+                .maxTokens(1000)
+                .timeout(java.time.Duration.ofSeconds(60))
+                .build();
+        widenStreamingDispatcher(streamingModel, streamMaxConcurrent);
+        return streamingModel;
+    }
+
+    /**
+     * The two hooks below reach into langchain4j internals (checked against 0.27.1). Exercise
+     * them on throwaway instances at startup so an upgrade that breaks them stops the
+     * application instead of leaking one retained memory per chat request.
+     */
+    @PostConstruct
+    void verifyLangChain4jHooks() {
+        widenStreamingDispatcher(OpenAiStreamingChatModel.builder().apiKey("startup-check").build(), streamMaxConcurrent);
+        disableMemoryRetention(AiServices.builder(ChatAssistant.class));
+    }
+
+    private ChatMemory provideMemory(Object memoryId) {
+        String sessionKey = memoryId instanceof ChatInvocation invocation
+                ? invocation.getSessionKey()
+                : String.valueOf(memoryId);
+        return getOrCreateMemory(sessionKey);
+    }
+
+    /**
+     * Streaming requests are enqueued on the OkHttp dispatcher of the model's own client,
+     * which allows only 5 concurrent calls per host by default. The builder does not expose
+     * the client, so raise the limits on it directly.
      */
-    private void cleanupMemoryOnToolError(String sessionId) {
+    static void widenStreamingDispatcher(OpenAiStreamingChatModel model, int maxConcurrent) {
         try {
-            String key = (sessionId == null || sessionId.isBlank()) ? "default" : sessionId;
-            ChatMemory memory = memoryStore.get(key);
-            
-            if (memory != null) {
-                log.info("Cleaning up corrupted memory for session: {}", key);
-                
-                // Clear the entire memory to prevent tool call state corruption
-                memoryStore.remove(key);
-                log.info("Memory cleared for session: {}", key);
-                
-                // Clear any tool call context that might be lingering
-                try {
-                    toolCallsContext.remove();
-                    log.debug("Tool call context cleared");
-                } catch (Exception e) {
-                    log.warn("Failed to clear tool call context: {}", e.getMessage());
-                }
-                
-                // Create a fresh memory with smaller window to avoid future issues
-                try {
-                    ChatMemory cleanMemory = MessageWindowChatMemory.withMaxMessages(5);
-                    memoryStore.put(key, cleanMemory);
-                    log.info("Fresh memory created with reduced size (5 messages) for session: {}", key);
-                } catch (Exception e) {
-                    log.warn("Failed to create clean memory for session {}: {}", key, e.getMessage());
+            java.lang.reflect.Field clientField = OpenAiStreamingChatModel.class.getDeclaredField("client");
+            clientField.setAccessible(true);
+            Object client = clientField.get(model);
+            java.lang.reflect.Field httpField = client.getClass().getDeclaredField("okHttpClient");
+            httpField.setAccessible(true);
+            Dispatcher dispatcher = ((OkHttpClient) httpField.get(client)).dispatcher();
+            dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxConcurrent));
+            dispatcher.setMaxRequestsPerHost(maxConcurrent);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Could not raise streaming dispatcher limits; unsupported langchain4j version?", e);
+        }
+    }
+
+    /**
+     * AiServices keeps every ChatMemory it obtains from the provider in a map keyed by
+     * memory id and never evicts it. Our memories are thin views over chatMemoryStore,
+     * so swap that map for one that does not retain anything.
+     */
+    static void disableMemoryRetention(AiServices<?> builder) {
+        try {
+            java.lang.reflect.Field contextField = AiServices.class.getDeclaredField("context");
+            contextField.setAccessible(true);
+            AiServiceContext context = (AiServiceContext) contextField.get(builder);
+            context.chatMemories = new AbstractMap<>() {
+                @Override
+                public ChatMemory put(Object key, ChatMemory value) {
+                    return null;
                 }
-            } else {
-                log.debug("No memory found for session: {}", key);
-                // Still clear tool call context even if no memory exists
-                try {
-                    toolCallsContext.remove();
-                    log.debug("Tool call context cleared (no memory case)");
-                } catch (Exception e) {
-                    log.warn("Failed to clear tool call context: {}", e.getMessage());
+
+                @Override
+                public Set<Entry<Object, ChatMemory>> entrySet() {
+                    return Collections.emptySet();
                 }
-            }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Could not disable AiServices memory retention; unsupported langchain4j version?", e);
+        }
+    }
+
+    /**
+     * Clean up memory when tool call errors occur to prevent state pollution
+     */
+    private void cleanupMemoryOnToolError(ChatInvocation invocation) {
+        try {
+            // Drop the whole window so a dangling tool call cannot poison the retry
+            chatMemoryStore.deleteMessages(invocation.getSessionKey());
+            log.info("Memory cleared for session: {}", invocation.getSessionKey());
         } catch (Exception e) {
-            log.error("Error during memory cleanup for session {}: {}", sessionId, e.getMessage());
-            // If cleanup fails, try to at least clear the tool context
-            try {
-                toolCallsContext.remove();
-            } catch (Exception ex) {
-                log.error("Failed to clear tool call context during error recovery", ex);
-            }
+            log.error("Error during memory cleanup for session {}: {}", invocation.getSessionKey(), e.getMessage());
         }
+        // Tools recorded by the failed attempt are discarded along with the window
+        invocation.clearToolCalls();
     }
 
     @Value("${langchain4j.openai.api-key:}")
@@ -127,17 +244,9 @@ public class ChatbotService {
     @Value("${langchain4j.openai.base-url:https://api.openai.com/v1}")
     private String openaiBaseUrl;
 
-    // Add OkHttp client for OpenAI API calls
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(java.time.Duration.ofSeconds(30))
-            .readTimeout(java.time.Duration.ofSeconds(120))
-            .writeTimeout(java.time.Duration.ofSeconds(120))
-            .callTimeout(java.time.Duration.ofSeconds(150))
-            .build();
-
     /* * * AIHelperAPI，Used forGenerateIntelligentReply */
     public interface ChatAssistant {
-        @SystemMessage("""
+        String SYSTEM_PROMPT = """
             You are an AI Learning Assistant for an educational platform. Your role is to help users with:
             
             1. Course Information: Provide details about available courses, learning materials, and handbooks
@@ -172,13 +281,14 @@ public class ChatbotService {
             - getUserCertificates: Get user certificates (requires userId)
             - getUserCertificatesSummary: Get user certificate summary and recommendations (requires userId)
             - getUserProgress: Get user learning progress for summary analysis and personalized recommendations (requires userId)
+            - searchCourseHandbook: Search a course handbook for the passages relevant to a question (courseId, question) - returns only the top passages with page numbers
             - getCourseHandbookText: **RARELY USED** - Read course PDF handbook text (courseId) - USE ONLY when user explicitly requests handbook reading with specific trigger phrases
             - getCourseHandbookWithOpenAI: **RARELY USED** - Get course handbook content using OpenAI file processing (courseId) - USE ONLY when user explicitly requests handbook reading with specific trigger phrases
             - findCourseAndGetHandbook: **RARELY USED** - Find course by keywords and get handbook content (keywords) - USE ONLY when user explicitly requests handbook reading with specific trigger phrases
             - getQuizSummariesByCourse: List quizzes for a course (courseId)
             - getQuizQuestionsWithAnswers: Get quiz questions and correct answers (quizId)
             - getDepartmentComplianceStats: Department-level compliance stats
-            - getEmployeeComplianceReports: Employee completion by department (department or "all")
+            - getEmployeeComplianceReports: Employee completion by department and status (department or "all", status "completed"/"pending"/"all"); returns a bounded list
             - getComplianceCategoriesOverview: Completion by course category
 
             IMPORTANT - User Context:
@@ -240,8 +350,8 @@ public class ChatbotService {
             IMPORTANT: Questions about course content, concepts, or topics WITHOUT these explicit phrases should ALWAYS use the PRIMARY STRATEGY.
             
             When handbook reading is explicitly requested:
-            1. Use findCourseAndGetHandbook(keywords) for keyword-based search
-            2. Or use getCourseHandbookWithOpenAI(courseId) if courseId is known
+            1. For a specific question, use searchCourseHandbook(courseId, question) and answer from the returned passages, citing page numbers (get courseId from getAllCoursesSummary)
+            2. Only for a full overview of a handbook, use findCourseAndGetHandbook(keywords) or getCourseHandbookWithOpenAI(courseId)
             3. Provide detailed responses based on actual PDF content
             
             REMEMBER: 
@@ -252,7 +362,7 @@ public class ChatbotService {
             Data formatting:
             - When listing courses, use summary data only (id, title, description, department, teacher).
             - Do NOT include handbook binary/base64 or large PDF content.
-            - For handbook Q&A, call getCourseHandbookText and cite sections; avoid dumping long text.
+            - For handbook Q&A, call searchCourseHandbook and cite page numbers; avoid dumping long text.
             - For quizzes: use getQuizSummariesByCourse to list, getQuizQuestionsWithAnswers for details.
             - When summarizing compliance or certificates, present totals and key metrics clearly.
             - For personal certificates or progress, NEVER ask for 'userId'; ALWAYS call getCurrentUserId() first.
@@ -343,8 +453,13 @@ public class ChatbotService {
             3. 继续参与相关课程以维持合规"
 
             When users ask about courses, compliance, certificates, or progress, use the appropriate tools to provide accurate information.
-            """)
-        String chat(@UserMessage String message);
+            """;
+
+        @SystemMessage(SYSTEM_PROMPT)
+        String chat(@MemoryId ChatInvocation invocation, @UserMessage String message);
+
+        @SystemMessage(SYSTEM_PROMPT)
+        TokenStream chatStream(@MemoryId ChatInvocation invocation, @UserMessage String message);
     }
 
     // ==================== TOOL DEFINITIONS ====================
@@ -363,10 +478,10 @@ public class ChatbotService {
     }
 
     @Tool("Get current logged-in user ID")
-    public Long getCurrentUserId() {
+    public Long getCurrentUserId(@ToolMemoryId ChatInvocation invocation) {
         try {
-            recordToolCall("getCurrentUserId");
-            Long userId = currentUserContext.get();
+            recordToolCall(invocation, "getCurrentUserId");
+            Long userId = invocation.getUserId();
             if (userId != null) {
                 log.info("Retrieved current user ID: {}", userId);
                 return userId;
@@ -381,11 +496,12 @@ public class ChatbotService {
     }
 
     @Tool("PRIMARY TOOL: Get summarized list of active courses with descriptions. Use this as the main tool for answering course-related questions by combining course information with AI knowledge.")
-    public List<CourseSummaryDTO> getAllCoursesSummary() {
+    public List<CourseSummaryDTO> getAllCoursesSummary(@ToolMemoryId ChatInvocation invocation) {
         try {
             log.info("Tool called: getAllCoursesSummary");
-            recordToolCall("getAllCoursesSummary");
-            List<CourseSummaryDTO> summaries = courseService.getCourseSummaries();
+            recordToolCall(invocation, "getAllCoursesSummary");
+            List<CourseSummaryDTO> summaries = toolResultCache.get(invocation, "getAllCoursesSummary", null,
+                    courseService::getCourseSummaries);
             log.info("Retrieved {} course summaries", summaries.size());
             return summaries;
         } catch (Exception e) {
@@ -395,11 +511,12 @@ public class ChatbotService {
     }
 
     @Tool("Get organization compliance report data")
-    public Map<String, Object> getComplianceReport() {
+    public Map<String, Object> getComplianceReport(@ToolMemoryId ChatInvocation invocation) {
         try {
             log.info("Tool called: getComplianceReport");
-            recordToolCall("getComplianceReport");
-            Map<String, Object> report = reportService.getOrganizationReportData();
+            recordToolCall(invocation, "getComplianceReport");
+            Map<String, Object> report = toolResultCache.get(invocation, "getComplianceReport", null,
+                    () -> reportCache.get(ReportCache.ORGANIZATION, reportService::getOrganizationReportData));
             log.info("Retrieved compliance report with {} entries", report.size());
             return report;
         } catch (Exception e) {
@@ -409,15 +526,16 @@ public class ChatbotService {
     }
 
     @Tool("Get user certificates by user ID")
-    public List<UserCertificate> getUserCertificates(Long userId) {
+    public List<UserCertificate> getUserCertificates(@ToolMemoryId ChatInvocation invocation, Long userId) {
         try {
             log.info("Tool called: getUserCertificates for userId: {}", userId);
-            recordToolCall("getUserCertificates");
+            recordToolCall(invocation, "getUserCertificates");
             if (userId == null) {
                 log.warn("UserId is null, cannot retrieve certificates");
                 return Collections.emptyList();
             }
-            List<UserCertificate> certificates = certificateService.getUserCertificates(userId);
+            List<UserCertificate> certificates = toolResultCache.get(invocation, "getUserCertificates", userId,
+                    () -> certificateService.getUserCertificates(userId));
             log.info("Retrieved {} certificates for user {}", certificates.size(), userId);
             return certificates;
         } catch (Exception e) {
@@ -427,10 +545,10 @@ public class ChatbotService {
     }
 
     @Tool("Get user certificate summary and personalized recommendations (requires userId). Prefer this for personal certificate queries.")
-    public Map<String, Object> getUserCertificatesSummary(Long userId) {
+    public Map<String, Object> getUserCertificatesSummary(@ToolMemoryId ChatInvocation invocation, Long userId) {
         try {
             log.info("Tool called: getUserCertificatesSummary for userId: {}", userId);
-            recordToolCall("getUserCertificatesSummary");
+            recordToolCall(invocation, "getUserCertificatesSummary");
             if (userId == null) {
                 log.warn("UserId is null, cannot summarize certificates");
                 return Map.of("error", "User ID is required");
@@ -500,17 +618,18 @@ public class ChatbotService {
     }
 
     @Tool("Get user learning progress and provide summary-focused analysis with personalized recommendations. Returns comprehensive progress data that should be analyzed to give strategic insights rather than detailed course listings.")
-    public Map<String, Object> getUserProgress(Long userId) {
+    public Map<String, Object> getUserProgress(@ToolMemoryId ChatInvocation invocation, Long userId) {
         try {
             log.info("Tool called: getUserProgress for userId: {}", userId);
-            recordToolCall("getUserProgress");
+            recordToolCall(invocation, "getUserProgress");
             if (userId == null) {
                 log.warn("UserId is null, cannot retrieve progress");
                 return Map.of("error", "User ID is required");
             }
             
             // 调用UserService获取完整的学习进度数据
-            Map<String, Object> progress = userService.getUserLearningProgress(userId);
+            Map<String, Object> progress = toolResultCache.get(invocation, "getUserProgress", userId,
+                    () -> userService.getUserLearningProgress(userId));
             log.info("Retrieved progress data for user {}", userId);
             return progress;
         } catch (Exception e) {
@@ -520,10 +639,10 @@ public class ChatbotService {
     }
 
     @Tool("HANDBOOK READING ONLY: Read course handbook text by course ID. Use ONLY when user explicitly requests detailed handbook reading (e.g., '请仔细阅读handbook', '详细阅读手册内容'). For general course questions, use getAllCoursesSummary instead.")
-    public Map<String, Object> getCourseHandbookText(Long courseId) {
+    public Map<String, Object> getCourseHandbookText(@ToolMemoryId ChatInvocation invocation, Long courseId) {
         try {
             log.info("Tool called: getCourseHandbookText for courseId: {}", courseId);
-            recordToolCall("getCourseHandbookText");
+            recordToolCall(invocation, "getCourseHandbookText");
             if (courseId == null) {
                 return Map.of("error", "courseId is required");
             }
@@ -533,7 +652,7 @@ public class ChatbotService {
             }
             Course course = courseOpt.get();
 
-            boolean hasPdf = course.getHandbookFilePath() != null && course.getHandbookFileSize() != null && course.getHandbookFileSize() > 0;
+            boolean hasPdf = course.hasHandbook();
             Map<String, Object> result = new HashMap<>();
             result.put("courseId", course.getId());
             result.put("title", course.getTitle());
@@ -545,7 +664,7 @@ public class ChatbotService {
 
             if (hasPdf) {
                 // Extract text using agent service (lightweight stub implementation)
-                String text = safeExtractPdfText(course.getHandbookFilePath());
+                String text = safeExtractPdfText(course.getHandbookHash());
                 if (text != null) {
                     int maxLen = Math.min(text.length(), 10000);
                     result.put("textPreview", text.substring(0, maxLen));
@@ -563,15 +682,64 @@ public class ChatbotService {
         }
     }
 
+    @Tool("HANDBOOK Q&A: Search a course handbook for the passages most relevant to a question and return only those, with page numbers. Prefer this over getCourseHandbookWithOpenAI and getCourseHandbookText when answering a specific question from the handbook.")
+    public Map<String, Object> searchCourseHandbook(@ToolMemoryId ChatInvocation invocation, Long courseId, String question) {
+        try {
+            log.info("Tool called: searchCourseHandbook for courseId: {}", courseId);
+            recordToolCall(invocation, "searchCourseHandbook");
+            if (courseId == null || question == null || question.isBlank()) {
+                return Map.of("error", "courseId and question are required");
+            }
+            return toolResultCache.get(invocation, "searchCourseHandbook", courseId + ":" + question.trim(),
+                    () -> searchHandbookPassages(courseId, question));
+        } catch (Exception e) {
+            log.error("Error in searchCourseHandbook for courseId: {}", courseId, e);
+            return Map.of("error", "failed to search course handbook", "courseId", courseId);
+        }
+    }
+
+    private Map<String, Object> searchHandbookPassages(Long courseId, String question) {
+        Optional<Course> courseOpt = courseService.getCourseById(courseId);
+        if (courseOpt.isEmpty()) {
+            return Map.of("error", "course not found", "courseId", courseId);
+        }
+        Course course = courseOpt.get();
+        Map<String, Object> result = new HashMap<>();
+        result.put("courseId", course.getId());
+        result.put("title", course.getTitle());
+        result.put("handbookFileName", course.getHandbookFileName());
+        if (!course.hasHandbook()) {
+            result.put("warning", "No PDF handbook available for this course");
+            return result;
+        }
+        try {
+            List<HandbookPassageIndex.Passage> passages = handbookPassageIndex.search(course.getHandbookHash(), question);
+            result.put("retrieval", handbookPassageIndex.isHybrid() ? "bm25+embedding" : "bm25");
+            result.put("passages", passages.stream().map(p -> Map.of(
+                    "page", p.getPage(),
+                    "score", Math.round(p.getScore() * 1000) / 1000.0,
+                    "text", p.getText()
+            )).toList());
+            if (passages.isEmpty()) {
+                result.put("warning", "No handbook passages matched the question; try other keywords");
+            }
+        } catch (Exception e) {
+            log.warn("Handbook passage search failed for course {}", courseId, e);
+            result.put("error", "failed to search handbook text");
+        }
+        return result;
+    }
+
     @Tool("Get quiz summaries for a course by ID (no question details). Use this to list quizzes available for a course.")
-    public List<QuizSummaryDto> getQuizSummariesByCourse(Long courseId) {
+    public List<QuizSummaryDto> getQuizSummariesByCourse(@ToolMemoryId ChatInvocation invocation, Long courseId) {
         try {
             log.info("Tool called: getQuizSummariesByCourse for courseId: {}", courseId);
-            recordToolCall("getQuizSummariesByCourse");
+            recordToolCall(invocation, "getQuizSummariesByCourse");
             if (courseId == null) {
                 return java.util.Collections.emptyList();
             }
-            return quizService.getQuizSummaryDtosByCourse(courseId);
+            return toolResultCache.get(invocation, "getQuizSummariesByCourse", courseId,
+                    () -> quizService.getQuizSummaryDtosByCourse(courseId));
         } catch (Exception e) {
             log.error("Error in getQuizSummariesByCourse for courseId: {}", courseId, e);
             return java.util.Collections.emptyList();
@@ -579,14 +747,15 @@ public class ChatbotService {
     }
 
     @Tool("Get detailed quiz questions with options and correct answers by quiz ID. Use when the user asks for quiz questions and answers.")
-    public List<QuestionDto> getQuizQuestionsWithAnswers(Long quizId) {
+    public List<QuestionDto> getQuizQuestionsWithAnswers(@ToolMemoryId ChatInvocation invocation, Long quizId) {
         try {
             log.info("Tool called: getQuizQuestionsWithAnswers for quizId: {}", quizId);
-            recordToolCall("getQuizQuestionsWithAnswers");
+            recordToolCall(invocation, "getQuizQuestionsWithAnswers");
             if (quizId == null) {
                 return java.util.Collections.emptyList();
             }
-            return questionService.getQuestionDtosByQuiz(quizId);
+            return toolResultCache.get(invocation, "getQuizQuestionsWithAnswers", quizId,
+                    () -> questionService.getQuestionDtosByQuiz(quizId));
         } catch (Exception e) {
             log.error("Error in getQuizQuestionsWithAnswers for quizId: {}", quizId, e);
             return java.util.Collections.emptyList();
@@ -594,24 +763,36 @@ public class ChatbotService {
     }
 
     @Tool("Get department-level compliance statistics (totals, completed, pending, rates) across all departments.")
-    public Map<String, Object> getDepartmentComplianceStats() {
+    public Map<String, Object> getDepartmentComplianceStats(@ToolMemoryId ChatInvocation invocation) {
         try {
             log.info("Tool called: getDepartmentComplianceStats");
-            recordToolCall("getDepartmentComplianceStats");
-            return reportService.getDepartmentStats();
+            recordToolCall(invocation, "getDepartmentComplianceStats");
+            return toolResultCache.get(invocation, "getDepartmentComplianceStats", null,
+                    () -> reportCache.get(ReportCache.DEPARTMENTS, reportService::getDepartmentStats));
         } catch (Exception e) {
             log.error("Error in getDepartmentComplianceStats", e);
             return java.util.Collections.emptyMap();
         }
     }
 
-    @Tool("Get employee compliance reports. Pass a department name or 'all' to retrieve all employees.")
-    public Map<String, Object> getEmployeeComplianceReports(String department) {
+    @Tool("Get employee compliance reports, at most a bounded number of employees per call. Pass a department name or 'all', and a status of 'completed', 'pending' or 'all'.")
+    public Map<String, Object> getEmployeeComplianceReports(@ToolMemoryId ChatInvocation invocation, String department, String status) {
         try {
-            log.info("Tool called: getEmployeeComplianceReports for department: {}", department);
-            recordToolCall("getEmployeeComplianceReports");
+            log.info("Tool called: getEmployeeComplianceReports for department: {}, status: {}", department, status);
+            recordToolCall(invocation, "getEmployeeComplianceReports");
             String filter = (department == null || department.isBlank()) ? "all" : department;
-            return reportService.getEmployeeReports(filter);
+            String statusFilter = (status == null || status.isBlank()) ? "all" : status;
+            return toolResultCache.get(invocation, "getEmployeeComplianceReports", filter + ":" + statusFilter, () -> {
+                // First page only: keeps the tool result small whatever the organization size
+                Map<String, Object> page = new HashMap<>(reportService.getEmployeeReportPage(
+                        filter, statusFilter, "name", false, null, reportMaxEmployees));
+                page.remove("nextCursor");
+                if (Boolean.TRUE.equals(page.get("hasMore"))) {
+                    page.put("note", "Only the first " + reportMaxEmployees
+                            + " employees are listed; use getDepartmentComplianceStats for totals or narrow by department/status");
+                }
+                return page;
+            });
         } catch (Exception e) {
             log.error("Error in getEmployeeComplianceReports for department: {}", department, e);
             return java.util.Collections.emptyMap();
@@ -619,11 +800,12 @@ public class ChatbotService {
     }
 
     @Tool("Get compliance categories overview showing completion rates per course category.")
-    public Map<String, Object> getComplianceCategoriesOverview() {
+    public Map<String, Object> getComplianceCategoriesOverview(@ToolMemoryId ChatInvocation invocation) {
         try {
             log.info("Tool called: getComplianceCategoriesOverview");
-            recordToolCall("getComplianceCategoriesOverview");
-            return reportService.getComplianceCategories();
+            recordToolCall(invocation, "getComplianceCategoriesOverview");
+            return toolResultCache.get(invocation, "getComplianceCategoriesOverview", null,
+                    () -> reportCache.get(ReportCache.COMPLIANCE_CATEGORIES, reportService::getComplianceCategories));
         } catch (Exception e) {
             log.error("Error in getComplianceCategoriesOverview", e);
             return java.util.Collections.emptyMap();
@@ -631,23 +813,17 @@ public class ChatbotService {
     }
 
     @Tool("HANDBOOK READING ONLY: Find course by keywords and get handbook content using OpenAI file processing. Use ONLY when user explicitly requests detailed handbook reading (e.g., '请仔细阅读handbook', '根据手册具体内容回答'). For general course questions, use getAllCoursesSummary instead.")
-    public Map<String, Object> findCourseAndGetHandbook(String keywords) {
+    public Map<String, Object> findCourseAndGetHandbook(@ToolMemoryId ChatInvocation invocation, String keywords) {
         try {
             log.info("Tool called: findCourseAndGetHandbook with keywords: {}", keywords);
-            recordToolCall("findCourseAndGetHandbook");
+            recordToolCall(invocation, "findCourseAndGetHandbook");
             
             if (keywords == null || keywords.trim().isEmpty()) {
                 return Map.of("error", "keywords are required");
             }
             
-            // Get all courses summary
-            List<CourseSummaryDTO> allCourses = courseService.getCourseSummaries();
-            if (allCourses.isEmpty()) {
-                return Map.of("error", "no courses available");
-            }
-            
-            // Find matching courses using keyword matching
-            List<CourseSummaryDTO> matchedCourses = findMatchingCourses(allCourses, keywords);
+            // Ranked lookup in the in-memory course index (active courses only)
+            List<CourseSummaryDTO> matchedCourses = courseSearchIndex.search(keywords);
             
             if (matchedCourses.isEmpty()) {
                 return Map.of(
@@ -660,7 +836,7 @@ public class ChatbotService {
             // If single match, get handbook content using OpenAI
             if (matchedCourses.size() == 1) {
                 CourseSummaryDTO course = matchedCourses.get(0);
-                Map<String, Object> handbookResult = getCourseHandbookWithOpenAI(course.getId());
+                Map<String, Object> handbookResult = getCourseHandbookWithOpenAI(invocation, course.getId());
                 handbookResult.put("matchedBy", "single_match");
                 handbookResult.put("matchedKeywords", keywords);
                 return handbookResult;
@@ -687,10 +863,10 @@ public class ChatbotService {
     }
 
     @Tool("HANDBOOK READING ONLY: Get course handbook content using OpenAI file processing for comprehensive PDF reading. Use ONLY when user explicitly requests detailed handbook reading (e.g., '请仔细阅读handbook', '手册里具体怎么说的'). For general course questions, use getAllCoursesSummary instead.")
-    public Map<String, Object> getCourseHandbookWithOpenAI(Long courseId) {
+    public Map<String, Object> getCourseHandbookWithOpenAI(@ToolMemoryId ChatInvocation invocation, Long courseId) {
         try {
             log.info("Tool called: getCourseHandbookWithOpenAI for courseId: {}", courseId);
-            recordToolCall("getCourseHandbookWithOpenAI");
+            recordToolCall(invocation, "getCourseHandbookWithOpenAI");
             
             if (courseId == null) {
                 return Map.of("error", "courseId is required");
@@ -702,7 +878,7 @@ public class ChatbotService {
             }
             
             Course course = courseOpt.get();
-            boolean hasPdf = course.getHandbookFilePath() != null && course.getHandbookFileSize() != null && course.getHandbookFileSize() > 0;
+            boolean hasPdf = course.hasHandbook();
             
             Map<String, Object> result = new HashMap<>();
             result.put("courseId", course.getId());
@@ -726,7 +902,7 @@ public class ChatbotService {
             
             try {
                 // Upload PDF to OpenAI
-                String fileId = uploadPdfToOpenAI(course.getHandbookFilePath(), course.getHandbookFileName());
+                String fileId = uploadPdfToOpenAI(course.getHandbookHash(), course.getHandbookFileName());
                 if (fileId == null) {
                     result.put("error", "Failed to upload PDF to OpenAI");
                     return result;
@@ -767,92 +943,9 @@ public class ChatbotService {
         }
     }
     
-    private List<CourseSummaryDTO> findMatchingCourses(List<CourseSummaryDTO> courses, String keywords) {
-        String searchKeywords = keywords.toLowerCase().trim();
-        List<CourseSummaryDTO> matchedCourses = new ArrayList<>();
-        
-        for (CourseSummaryDTO course : courses) {
-            boolean matches = false;
-            
-            // Check title
-            if (course.getTitle() != null && course.getTitle().toLowerCase().contains(searchKeywords)) {
-                matches = true;
-            }
-            
-            // Check description
-            if (!matches && course.getDescription() != null && course.getDescription().toLowerCase().contains(searchKeywords)) {
-                matches = true;
-            }
-            
-            // Check department
-            if (!matches && course.getDepartment() != null && course.getDepartment().toLowerCase().contains(searchKeywords)) {
-                matches = true;
-            }
-            
-            // Check for common synonyms
-            if (!matches) {
-                String[] synonyms = getSynonyms(searchKeywords);
-                for (String synonym : synonyms) {
-                    if ((course.getTitle() != null && course.getTitle().toLowerCase().contains(synonym)) ||
-                        (course.getDescription() != null && course.getDescription().toLowerCase().contains(synonym)) ||
-                        (course.getDepartment() != null && course.getDepartment().toLowerCase().contains(synonym))) {
-                        matches = true;
-                        break;
-                    }
-                }
-            }
-            
-            if (matches) {
-                matchedCourses.add(course);
-            }
-        }
-        
-        return matchedCourses;
-    }
-    
-    private String[] getSynonyms(String keyword) {
-        // Simple synonym mapping for common terms
-        Map<String, String[]> synonymMap = Map.of(
-            "safety", new String[]{"security", "protection", "hazard", "risk", "emergency"},
-            "compliance", new String[]{"regulation", "policy", "standard", "requirement", "audit"},
-            "training", new String[]{"education", "learning", "course", "instruction", "development"},
-            "data", new String[]{"information", "database", "privacy", "gdpr", "protection"},
-            "workplace", new String[]{"office", "work", "employee", "staff", "personnel"},
-            "emergency", new String[]{"crisis", "urgent", "disaster", "incident", "response"}
-        );
-        
-        return synonymMap.getOrDefault(keyword, new String[]{});
-    }
-    
-    private String uploadPdfToOpenAI(byte[] pdfBytes, String fileName) {
-        try {
-            RequestBody fileBody = RequestBody.create(pdfBytes, MediaType.parse("application/pdf"));
-            RequestBody requestBody = new MultipartBody.Builder()
-                    .setType(MultipartBody.FORM)
-                    .addFormDataPart("file", fileName, fileBody)
-                    .addFormDataPart("purpose", "assistants")
-                    .build();
-
-            Request request = new Request.Builder()
-                    .url(openaiBaseUrl + "/files")
-                    .header("Authorization", "Bearer " + openaiApiKey)
-                    .post(requestBody)
-                    .build();
-
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (response.isSuccessful() && response.body() != null) {
-                    String responseBody = response.body().string();
-                    JsonNode jsonNode = objectMapper.readTree(responseBody);
-                    return jsonNode.get("id").asText();
-                } else {
-                    log.error("Failed to upload PDF to OpenAI: {}", response.code());
-                    return null;
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error uploading PDF to OpenAI", e);
-            return null;
-        }
+    private String uploadPdfToOpenAI(String handbookHash, String fileName) {
+        // Shared registry: the handbook is uploaded once per content hash and base URL
+        return openAiFileRegistry.getOrUpload(handbookHash, fileName, openaiBaseUrl, openaiApiKey);
     }
     
     private String callOpenAIForPdfReading(String fileId, String prompt) {
@@ -886,24 +979,14 @@ public class ChatbotService {
             requestBody.put("max_tokens", 4000);
 
             String jsonBody = objectMapper.writeValueAsString(requestBody);
-            RequestBody body = RequestBody.create(jsonBody, MediaType.parse("application/json"));
-
-            Request request = new Request.Builder()
-                    .url(openaiBaseUrl + "/chat/completions")
-                    .header("Authorization", "Bearer " + openaiApiKey)
-                    .header("Content-Type", "application/json")
-                    .post(body)
-                    .build();
-
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (response.isSuccessful() && response.body() != null) {
-                    String responseBody = response.body().string();
-                    JsonNode jsonNode = objectMapper.readTree(responseBody);
-                    return jsonNode.get("choices").get(0).get("message").get("content").asText();
-                } else {
-                    log.error("Failed to call OpenAI for PDF reading: {}", response.code());
-                    return "抱歉，无法读取PDF内容，请稍后重试。";
-                }
+            OpenAiHttpClient.Result response = OpenAiHttpClient.await(
+                    openAiHttpClient.chatCompletions(openaiBaseUrl, openaiApiKey, jsonBody));
+            if (response.isSuccessful() && response.getBody() != null) {
+                JsonNode jsonNode = objectMapper.readTree(response.getBody());
+                return jsonNode.get("choices").get(0).get("message").get("content").asText();
+            } else {
+                log.error("Failed to call OpenAI for PDF reading: {}", response.getCode());
+                return "抱歉，无法读取PDF内容，请稍后重试。";
             }
         } catch (Exception e) {
             log.error("Error calling OpenAI for PDF reading", e);
@@ -920,36 +1003,41 @@ public class ChatbotService {
             log.info("Chat sessionId: {}", request.getSessionId());
             log.info("Chat userId: {}", request.getUserId());
             
-            // Initialize per-request tool calls tracking
-            toolCallsContext.set(new java.util.ArrayList<>());
-            
-            // Set user context for AI tools
-            if (request.getUserId() != null) {
-                currentUserContext.set(request.getUserId());
-                log.info("Set user context for AI tools: {}", request.getUserId());
-            } else {
-                currentUserContext.remove();
+            if (request.getUserId() == null) {
                 log.warn("No userId provided in request - AI tools won't have user context");
             }
-            
+
+            // Everything the tools need travels with the call instead of the thread
+            ChatInvocation invocation = new ChatInvocation(resolveSessionKey(request), request.getUserId());
+
+            boolean firstTurn = isFirstTurn(invocation.getSessionKey());
+            if (firstTurn) {
+                Optional<ChatResponseCache.CachedReply> cached = responseCache.lookup(request.getMessage());
+                if (cached.isPresent()) {
+                    return cachedResponse(invocation.getSessionKey(), request.getMessage(), cached.get());
+                }
+            } else {
+                responseCache.recordBypass();
+            }
+
             // Generate AI reply (AI will autonomously decide whether to call tools)
-            String response = generateResponse(request.getMessage(), request.getSessionId());
+            String response = generateResponse(request.getMessage(), invocation);
             
             boolean isFallback = isFallbackResponse(response);
             if (isFallback) {
                 log.warn("AI returned fallback response for message: {}", request.getMessage());
             } else {
                 log.info("AI response generated successfully for message: {}", request.getMessage());
+                if (firstTurn) {
+                    responseCache.store(request.getMessage(), response, invocation.getToolCalls());
+                }
             }
 
-            // Collect tools used in this request
-            List<String> toolsUsed = new java.util.ArrayList<>(toolCallsContext.get());
-            
             return ChatbotResponse.builder()
                     .message(response)
                     .success(true)
-                    .sessionId(request.getSessionId())
-                    .toolsUsed(toolsUsed)
+                    .sessionId(invocation.getSessionKey())
+                    .toolsUsed(invocation.getToolCalls())
                     .responseType("text")
                     .build();
                     
@@ -960,13 +1048,107 @@ public class ChatbotService {
                     .success(false)
                     .errorMessage(e.getMessage())
                     .build();
-        } finally {
-            // Clean up thread-local contexts
-            toolCallsContext.remove();
-            currentUserContext.remove();
         }
     }
 
+    /**
+     * Cached replies are only shared for the opening question of a conversation; later
+     * turns depend on what was said before.
+     */
+    private boolean isFirstTurn(String sessionKey) {
+        return chatMemoryStore.getMessages(sessionKey).isEmpty();
+    }
+
+    private ChatbotResponse cachedResponse(String sessionKey, String question, ChatResponseCache.CachedReply reply) {
+        log.info("Serving cached chatbot reply for session {}", sessionKey);
+        // Keep the exchange in the session so follow-up questions have their context
+        ChatMemory memory = getOrCreateMemory(sessionKey);
+        memory.add(dev.langchain4j.data.message.UserMessage.from(question));
+        memory.add(dev.langchain4j.data.message.AiMessage.from(reply.getMessage()));
+        return ChatbotResponse.builder()
+                .message(reply.getMessage())
+                .success(true)
+                .sessionId(sessionKey)
+                .toolsUsed(reply.getToolsUsed())
+                .responseType("text")
+                .build();
+    }
+
+    /**
+     * Callbacks for a streamed reply. They are invoked from the model client's threads,
+     * never from the request thread.
+     */
+    public interface ChatStreamListener {
+        void onToken(String token);
+
+        void onToolCall(String toolName);
+
+        void onComplete(ChatbotResponse response);
+
+        void onError(Throwable error);
+    }
+
+    /* * * 流式GenerateAIReply：立即返回，token 与Tool调用通过 listener 回调 */
+    public String streamMessage(ChatbotRequest request, ChatStreamListener listener) {
+        String sessionKey = resolveSessionKey(request);
+        String userMessage = request.getMessage();
+        log.info("Streaming chatbot message for session {}: {}", sessionKey, userMessage);
+
+        if (openaiApiKey == null || openaiApiKey.trim().isEmpty()) {
+            String fallback = generateFallbackResponse(userMessage);
+            listener.onToken(fallback);
+            listener.onComplete(ChatbotResponse.builder()
+                    .message(fallback)
+                    .success(true)
+                    .sessionId(sessionKey)
+                    .toolsUsed(List.of())
+                    .responseType("text")
+                    .build());
+            return sessionKey;
+        }
+
+        boolean firstTurn = isFirstTurn(sessionKey);
+        if (firstTurn) {
+            Optional<ChatResponseCache.CachedReply> cached = responseCache.lookup(userMessage);
+            if (cached.isPresent()) {
+                ChatbotResponse response = cachedResponse(sessionKey, userMessage, cached.get());
+                response.getToolsUsed().forEach(listener::onToolCall);
+                listener.onToken(response.getMessage());
+                listener.onComplete(response);
+                return sessionKey;
+            }
+        } else {
+            responseCache.recordBypass();
+        }
+
+        // Tools run on the model client's threads; the invocation carries the user and reports each call
+        ChatInvocation invocation = new ChatInvocation(sessionKey, request.getUserId(), listener::onToolCall);
+        getAssistant().chatStream(invocation, userMessage)
+                .onNext(listener::onToken)
+                .onComplete(response -> {
+                    String text = response.content() != null ? response.content().text() : null;
+                    if (firstTurn) {
+                        responseCache.store(userMessage, text, invocation.getToolCalls());
+                    }
+                    listener.onComplete(ChatbotResponse.builder()
+                            .message(text)
+                            .success(true)
+                            .sessionId(sessionKey)
+                            .toolsUsed(invocation.getToolCalls())
+                            .responseType("text")
+                            .build());
+                })
+                .onError(error -> {
+                    log.error("Streaming reply failed for session {}: {}", sessionKey, error.getMessage());
+                    if (isToolCallError(error)) {
+                        cleanupMemoryOnToolError(invocation);
+                    }
+                    listener.onError(error);
+                })
+                .start();
+        return sessionKey;
+    }
+
     /* * * Get当前已Register的ToolList（Used for前端展示/Debugging） */
     public List<String> getAvailableTools() {
         try {
@@ -978,6 +1160,7 @@ public class ChatbotService {
                 "getUserCertificatesSummary",
                 "getUserProgress",
                 "getCourseHandbookText",
+                "searchCourseHandbook",
                 "getCourseHandbookWithOpenAI",
                 "findCourseAndGetHandbook",
                 "getQuizSummariesByCourse",
@@ -1014,17 +1197,16 @@ public class ChatbotService {
             result.put("handbookContentType", course.getHandbookContentType());
             result.put("handbookFileSize", course.getHandbookFileSize());
 
-            boolean hasHandbook = course.getHandbookFilePath() != null && course.getHandbookFileSize() != null && course.getHandbookFileSize() > 0;
+            boolean hasHandbook = course.hasHandbook();
             result.put("handbookPresent", hasHandbook);
+            result.put("handbookHash", course.getHandbookHash());
 
             // Provide a limited-length Base64 preview to avoid oversized transmission
             if (hasHandbook) {
-                String base64 = course.getHandbookContent();
-                if (base64 != null) {
-                    int previewLen = Math.min(base64.length(), 2000);
-                    result.put("handbookContentBase64Preview", base64.substring(0, previewLen));
-                    result.put("handbookContentBase64Truncated", base64.length() > previewLen);
-                }
+                // 1500 raw bytes encode to exactly 2000 Base64 characters
+                byte[] prefix = handbookBlobStore.readPrefix(course.getHandbookHash(), 1500);
+                result.put("handbookContentBase64Preview", Base64.getEncoder().encodeToString(prefix));
+                result.put("handbookContentBase64Truncated", course.getHandbookFileSize() > prefix.length);
             }
 
             log.info("Prepared handbook content metadata for course {}", courseId);
@@ -1035,18 +1217,28 @@ public class ChatbotService {
         }
     }
 
+    private static boolean isToolCallError(Throwable e) {
+        String message = e.getMessage();
+        return message != null &&
+            (message.contains("tool_call_id") ||
+             message.contains("tool calls") ||
+             message.contains("tool response") ||
+             message.contains("must be followed by tool messages"));
+    }
+
     /**
      * Generate AI response using OpenAI API with LangChain4j tools
      */
     private String generateResponse(String userMessage) {
         // Keep backward compatibility without memory
-        return generateResponse(userMessage, null);
+        return generateResponse(userMessage, new ChatInvocation("anon-" + UUID.randomUUID(), null));
     }
 
     /**
      * Generate AI response using OpenAI API with LangChain4j tools and session memory
      */
-    private String generateResponse(String userMessage, String sessionId) {
+    private String generateResponse(String userMessage, ChatInvocation invocation) {
+        String sessionId = invocation.getSessionKey();
         final int MAX_RETRIES = 3;
         final long RETRY_DELAY_MS = 1000; // 1 second
         
@@ -1060,60 +1252,17 @@ public class ChatbotService {
                     return generateFallbackResponse(userMessage);
                 }
                 
-                log.info("OpenAI API key is configured (length: {})", openaiApiKey.length());
-                log.info("Using OpenAI model: {}", openaiModel);
-                log.info("Using OpenAI base URL: {}", openaiBaseUrl);
-                
-                // Build OpenAI chat model
-                log.info("Building OpenAI chat model...");
-                OpenAiChatModel chatModel = OpenAiChatModel.builder()
-                        .apiKey(openaiApiKey)
-                        .baseUrl(openaiBaseUrl)
-                        .modelName(openaiModel)
-                        .temperature(0.7)
-                        .maxTokens(1000)
-                        .timeout(java.time.Duration.ofSeconds(60))
-                        .logRequests(true)
-                        .logResponses(true)
-                        .maxRetries(1)
-                        .build();
-                
-                log.info("OpenAI chat model built successfully");
-                
-                // Prepare session memory with proactive cleanup for tool call issues
-                ChatMemory memory = getOrCreateMemory(sessionId);
-                
                 // Proactive memory validation - if this is a retry after tool error, ensure clean state
                 if (attempt > 1) {
                     log.info("Retry attempt {} - ensuring clean memory state for session: {}", attempt, sessionId);
-                    cleanupMemoryOnToolError(sessionId);
-                    memory = getOrCreateMemory(sessionId);
-                    
-                    // Add a small delay to ensure clean state
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                    }
+                    cleanupMemoryOnToolError(invocation);
                 }
-                
-                log.info("Chat memory prepared for session: {}", (sessionId == null ? "default" : sessionId));
-
-                // Create AI assistant with tools
-                log.info("Creating AI assistant with registered tools...");
-                var builder = AiServices.builder(ChatAssistant.class)
-                        .chatLanguageModel(chatModel)
-                        .tools(this);
 
-                builder = builder.chatMemory(memory);
+                ChatAssistant assistant = getAssistant();
 
-                ChatAssistant assistant = builder.build();
-                
-                log.info("AI assistant created successfully with tools registered");
-                
                 // Generate response using AI assistant
                 log.info("Calling AI assistant to generate response...");
-                String response = assistant.chat(userMessage);
+                String response = assistant.chat(invocation, userMessage);
                 
                 if (response == null || response.trim().isEmpty()) {
                     log.warn("AI assistant returned empty response - using fallback");
@@ -1140,15 +1289,9 @@ public class ChatbotService {
                 }
                 
                 // Check if this is a tool_call_id error that requires memory cleanup
-                boolean isToolCallError = e.getMessage() != null && 
-                    (e.getMessage().contains("tool_call_id") || 
-                     e.getMessage().contains("tool calls") ||
-                     e.getMessage().contains("tool response") ||
-                     e.getMessage().contains("must be followed by tool messages"));
-                
-                if (isToolCallError) {
+                if (isToolCallError(e)) {
                     log.warn("Detected tool call error on attempt {}/{} - cleaning up memory for session: {}", attempt, MAX_RETRIES, sessionId);
-                    cleanupMemoryOnToolError(sessionId);
+                    cleanupMemoryOnToolError(invocation);
                     
                     // For tool call errors, clean up memory and continue with retry if attempts remain
                     if (attempt == MAX_RETRIES) {
@@ -1275,36 +1418,14 @@ public class ChatbotService {
     }
 
     // -------- Helper methods --------
-    private String safeExtractPdfText(byte[] pdfBytes) {
+    private String safeExtractPdfText(String handbookHash) {
         try {
-            if (pdfBytes == null || pdfBytes.length == 0) return null;
-            // Delegate to agent service if available; fallback to simple conversion
-            String content = pdfQuizAgentService != null ? invokeAgentPdfRead(pdfBytes) : null;
-            if (content == null || content.isBlank()) {
-                content = new String(pdfBytes);
-            }
-            return content;
-        } catch (Exception e) {
-            log.warn("PDF text extraction failed, falling back", e);
-            try {
-                return new String(pdfBytes);
-            } catch (Exception ex) {
-                return null;
-            }
-        }
-    }
-
-    private String invokeAgentPdfRead(byte[] pdfBytes) {
-        try {
-            // PdfQuizAgentService has an internal reader; we call a constrained path via preflight check if needed
-            // For safety, just convert bytes; replace with a real parser when available
-            String content = new String(pdfBytes);
-            if (content.length() > 20000) {
-                return content.substring(0, 20000) + "...";
-            }
-            return content;
+            if (handbookHash == null || !handbookBlobStore.exists(handbookHash)) return null;
+            // Served from the handbook_texts cache; the PDF is only parsed on a cache miss
+            return handbookTextService.getOrExtract(handbookHash).getContent();
         } catch (Exception e) {
+            log.warn("PDF text extraction failed for handbook {}", handbookHash, e);
             return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,327 @@
+package com.quiz.service;
+
+import com.quiz.entity.ComplianceDepartment;
+import com.quiz.entity.ComplianceDepartmentCourse;
+import com.quiz.entity.ComplianceMonth;
+import com.quiz.entity.ComplianceUser;
+import com.quiz.entity.ComplianceUserCourse;
+import com.quiz.entity.QuizAttempt;
+import com.quiz.repository.ComplianceDepartmentCourseRepository;
+import com.quiz.repository.ComplianceDepartmentRepository;
+import com.quiz.repository.ComplianceMonthRepository;
+import com.quiz.repository.ComplianceUserCourseRepository;
+import com.quiz.repository.ComplianceUserRepository;
+import com.quiz.repository.QuizAttemptRepository;
+import com.quiz.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/* * * Compliance预聚合Fact表维护
+ * 测验Commit时在同一事务内增量更新：用户汇总、用户×Course通过状态、部门×Course通过人数、部门完成人数、月度通过桶。
+ * 同一用户的更新通过锁定其 compliance_users 行串行化；共享计数行用原子 UPDATE 累加。
+ * 用户调部门时迁移其计数；Course级联Delete或表为空时从 quiz_attempts 全量重建 */
+@Service
+@Slf4j
+public class ComplianceFactService {
+
+    static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private final ComplianceUserRepository userFactRepository;
+    private final ComplianceUserCourseRepository userCourseFactRepository;
+    private final ComplianceDepartmentRepository departmentFactRepository;
+    private final ComplianceDepartmentCourseRepository departmentCourseFactRepository;
+    private final ComplianceMonthRepository monthFactRepository;
+    private final QuizAttemptRepository quizAttemptRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate requiresNewTemplate;
+    // False until startup has confirmed (or rebuilt) the facts; readers fall back to attempts meanwhile
+    private volatile boolean ready;
+    // Bumped after each committed rebuild; lets readers notice that past buckets changed
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    public ComplianceFactService(ComplianceUserRepository userFactRepository,
+                                 ComplianceUserCourseRepository userCourseFactRepository,
+                                 ComplianceDepartmentRepository departmentFactRepository,
+                                 ComplianceDepartmentCourseRepository departmentCourseFactRepository,
+                                 ComplianceMonthRepository monthFactRepository,
+                                 QuizAttemptRepository quizAttemptRepository,
+                                 UserRepository userRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.userFactRepository = userFactRepository;
+        this.userCourseFactRepository = userCourseFactRepository;
+        this.departmentFactRepository = departmentFactRepository;
+        this.departmentCourseFactRepository = departmentCourseFactRepository;
+        this.monthFactRepository = monthFactRepository;
+        this.quizAttemptRepository = quizAttemptRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.requiresNewTemplate = new TransactionTemplate(transactionManager);
+        this.requiresNewTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /** Department key used by the fact tables; unassigned users are counted under "". */
+    public static String departmentKey(String department) {
+        return department == null || department.trim().isEmpty() ? "" : department;
+    }
+
+    /**
+     * Fold one completed attempt into the facts. Must run inside the submitting transaction
+     * so the facts commit (or roll back) together with the attempt.
+     */
+    @Transactional
+    public void recordSubmission(QuizAttempt attempt, Long courseId) {
+        Long userId = attempt.getUser().getId();
+        String department = departmentKey(attempt.getUser().getDepartment());
+        LocalDateTime completedAt = attempt.getCompletedAt();
+        boolean passed = Boolean.TRUE.equals(attempt.getIsPassed());
+        double percentage = attempt.getPercentage() != null ? attempt.getPercentage() : 0.0;
+
+        ComplianceUser userFact = lockUser(userId, department);
+        if (!userFact.getDepartment().equals(department)) {
+            // Department changed without going through UserService; catch the counters up first
+            moveLocked(userFact, department);
+        }
+        ComplianceUserCourse courseFact = userCourseFactRepository.findByUserIdAndCourseId(userId, courseId)
+                .orElseGet(() -> new ComplianceUserCourse(userId, courseId));
+
+        courseFact.setAttempts(courseFact.getAttempts() + 1);
+        courseFact.setLastCompletedAt(later(courseFact.getLastCompletedAt(), completedAt));
+        userFact.setAttempts(userFact.getAttempts() + 1);
+        userFact.setLastCompletedAt(later(userFact.getLastCompletedAt(), completedAt));
+
+        String month = completedAt.format(MONTH_FORMAT);
+        int newMonthlyPasser = 0;
+        if (passed) {
+            boolean firstCoursePass = courseFact.getPassedAttempts() == 0;
+            courseFact.setPassedAttempts(courseFact.getPassedAttempts() + 1);
+            courseFact.setPassedPercentageSum(courseFact.getPassedPercentageSum() + percentage);
+            if (courseFact.getFirstPassedAt() == null) {
+                courseFact.setFirstPassedAt(completedAt);
+            }
+            userFact.setPassedAttempts(userFact.getPassedAttempts() + 1);
+            userFact.setPassedPercentageSum(userFact.getPassedPercentageSum() + percentage);
+
+            if (firstCoursePass) {
+                userFact.setPassedCourses(userFact.getPassedCourses() + 1);
+                addDepartmentCoursePassers(department, courseId, 1);
+                if (userFact.getPassedCourses() == 1) {
+                    addDepartmentCompleted(department, 1);
+                }
+            }
+            if (userFact.getLastPassedAt() == null || !userFact.getLastPassedAt().format(MONTH_FORMAT).equals(month)) {
+                newMonthlyPasser = 1;
+            }
+            userFact.setLastPassedAt(later(userFact.getLastPassedAt(), completedAt));
+        }
+
+        ensureExists(() -> monthFactRepository.existsById(month),
+                () -> monthFactRepository.saveAndFlush(new ComplianceMonth(month, 0, 0, 0)));
+        monthFactRepository.addCounts(month, 1, passed ? 1 : 0, newMonthlyPasser);
+
+        userFact.setUpdatedAt(LocalDateTime.now());
+        userCourseFactRepository.save(courseFact);
+        userFactRepository.save(userFact);
+    }
+
+    /** Move a user's department counters after their department changed. */
+    @Transactional
+    public void moveUser(Long userId, String newDepartment) {
+        if (!userFactRepository.existsById(userId)) {
+            return;
+        }
+        ComplianceUser userFact = userFactRepository.findByIdForUpdate(userId).orElseThrow();
+        String department = departmentKey(newDepartment);
+        if (!userFact.getDepartment().equals(department)) {
+            moveLocked(userFact, department);
+            userFact.setUpdatedAt(LocalDateTime.now());
+            userFactRepository.save(userFact);
+        }
+    }
+
+    /**
+     * Recompute every fact table from quiz_attempts with grouped queries. Joins the caller's
+     * transaction when there is one (e.g. a course cascade delete).
+     */
+    public void rebuild() {
+        transactionTemplate.executeWithoutResult(status -> {
+            rebuildInTransaction();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rebuilds.incrementAndGet();
+                }
+            });
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (userFactRepository.count() == 0 && quizAttemptRepository.existsCompleted()) {
+                log.info("Compliance fact tables are empty, building them from quiz attempts");
+                rebuild();
+            }
+            ready = true;
+        } catch (Exception e) {
+            log.warn("Compliance fact backfill failed, reports will aggregate quiz attempts: {}", e.getMessage());
+        }
+    }
+
+    /** Whether the fact tables can be trusted; until then reports aggregate quiz_attempts directly. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Number of committed rebuilds; changes whenever facts other than the current month may have changed. */
+    public long getRebuildCount() {
+        return rebuilds.get();
+    }
+
+    private void rebuildInTransaction() {
+        long start = System.nanoTime();
+        monthFactRepository.deleteAllInBatch();
+        departmentCourseFactRepository.deleteAllInBatch();
+        departmentFactRepository.deleteAllInBatch();
+        userCourseFactRepository.deleteAllInBatch();
+        userFactRepository.deleteAllInBatch();
+
+        Map<Long, String> departments = new HashMap<>();
+        for (Object[] row : userRepository.findAllDepartments()) {
+            departments.put((Long) row[0], departmentKey((String) row[1]));
+        }
+
+        Map<Long, ComplianceUser> users = new HashMap<>();
+        Map<String, ComplianceDepartmentCourse> departmentCourses = new HashMap<>();
+        Map<String, ComplianceDepartment> departmentTotals = new HashMap<>();
+        List<ComplianceUserCourse> userCourses = new ArrayList<>();
+        for (Object[] row : quizAttemptRepository.aggregateCompletedByUserAndCourse()) {
+            Long userId = (Long) row[0];
+            Long courseId = (Long) row[1];
+            int attempts = ((Number) row[2]).intValue();
+            int passedAttempts = ((Number) row[3]).intValue();
+            double percentageSum = row[4] != null ? ((Number) row[4]).doubleValue() : 0.0;
+            LocalDateTime firstPassedAt = (LocalDateTime) row[5];
+            LocalDateTime lastPassedAt = (LocalDateTime) row[6];
+            LocalDateTime lastCompletedAt = (LocalDateTime) row[7];
+            String department = departments.getOrDefault(userId, "");
+
+            userCourses.add(new ComplianceUserCourse(null, userId, courseId, attempts, passedAttempts,
+                    percentageSum, firstPassedAt, lastCompletedAt));
+
+            ComplianceUser user = users.computeIfAbsent(userId, id -> new ComplianceUser(id, department));
+            user.setAttempts(user.getAttempts() + attempts);
+            user.setPassedAttempts(user.getPassedAttempts() + passedAttempts);
+            user.setPassedPercentageSum(user.getPassedPercentageSum() + percentageSum);
+            user.setLastCompletedAt(later(user.getLastCompletedAt(), lastCompletedAt));
+            user.setLastPassedAt(later(user.getLastPassedAt(), lastPassedAt));
+            if (passedAttempts > 0) {
+                user.setPassedCourses(user.getPassedCourses() + 1);
+                ComplianceDepartmentCourse departmentCourse = departmentCourses.computeIfAbsent(
+                        department + "\u0000" + courseId,
+                        k -> new ComplianceDepartmentCourse(null, department, courseId, 0));
+                departmentCourse.setPassedUsers(departmentCourse.getPassedUsers() + 1);
+            }
+        }
+        for (ComplianceUser user : users.values()) {
+            if (user.getPassedCourses() > 0) {
+                ComplianceDepartment total = departmentTotals.computeIfAbsent(user.getDepartment(),
+                        d -> new ComplianceDepartment(d, 0));
+                total.setCompletedUsers(total.getCompletedUsers() + 1);
+            }
+        }
+
+        List<ComplianceMonth> months = new ArrayList<>();
+        for (Object[] row : quizAttemptRepository.aggregateCompletedByMonth()) {
+            String month = String.format("%04d-%02d", ((Number) row[0]).intValue(), ((Number) row[1]).intValue());
+            months.add(new ComplianceMonth(month, ((Number) row[2]).intValue(),
+                    ((Number) row[3]).intValue(), ((Number) row[4]).intValue()));
+        }
+
+        userFactRepository.saveAll(users.values());
+        userCourseFactRepository.saveAll(userCourses);
+        departmentCourseFactRepository.saveAll(departmentCourses.values());
+        departmentFactRepository.saveAll(departmentTotals.values());
+        monthFactRepository.saveAll(months);
+        log.info("Compliance facts rebuilt: users={}, userCourses={}, months={}, ms={}",
+                users.size(), userCourses.size(), months.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Caller holds the user's row lock, so no other transaction touches this user's counters
+    private void moveLocked(ComplianceUser userFact, String department) {
+        String previous = userFact.getDepartment();
+        for (Long courseId : userCourseFactRepository.findPassedCourseIdsByUserId(userFact.getUserId())) {
+            departmentCourseFactRepository.addPassedUsers(previous, courseId, -1);
+            addDepartmentCoursePassers(department, courseId, 1);
+        }
+        if (userFact.getPassedCourses() > 0) {
+            departmentFactRepository.addCompletedUsers(previous, -1);
+            addDepartmentCompleted(department, 1);
+        }
+        userFact.setDepartment(department);
+    }
+
+    private ComplianceUser lockUser(Long userId, String department) {
+        ensureExists(() -> userFactRepository.existsById(userId),
+                () -> userFactRepository.saveAndFlush(new ComplianceUser(userId, department)));
+        return userFactRepository.findByIdForUpdate(userId).orElseThrow();
+    }
+
+    private void addDepartmentCoursePassers(String department, Long courseId, int delta) {
+        ensureExists(() -> departmentCourseFactRepository.existsByDepartmentAndCourseId(department, courseId),
+                () -> departmentCourseFactRepository.saveAndFlush(
+                        new ComplianceDepartmentCourse(null, department, courseId, 0)));
+        departmentCourseFactRepository.addPassedUsers(department, courseId, delta);
+    }
+
+    private void addDepartmentCompleted(String department, int delta) {
+        ensureExists(() -> departmentFactRepository.existsById(department),
+                () -> departmentFactRepository.saveAndFlush(new ComplianceDepartment(department, 0)));
+        departmentFactRepository.addCompletedUsers(department, delta);
+    }
+
+    /**
+     * Counter rows are created in their own short transaction so a concurrent creator's
+     * unique-key violation cannot poison the submitting transaction; the increments that
+     * follow are atomic UPDATEs in the caller's transaction.
+     */
+    private void ensureExists(BooleanSupplier exists, Runnable insert) {
+        if (exists.getAsBoolean()) {
+            return;
+        }
+        try {
+            requiresNewTemplate.executeWithoutResult(status -> {
+                if (!exists.getAsBoolean()) {
+                    insert.run();
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another transaction created the row first
+        }
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && b.isAfter(a) ? b : a;
+    }
+}
@@ -0,0 +1,248 @@
+package com.quiz.service;
+
+import com.quiz.dto.CourseSummaryDTO;
+import com.quiz.event.CourseChangedEvent;
+import com.quiz.repository.CourseRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/* * * Course关键词倒排索引
+ * 英文按单词切分，中文按相邻双字切分；标题、部门、描述按权重计分（权重 × idf），同义词与前缀匹配降权。
+ * 启动时全量构建，Course变更时只重建该Course的倒排项 */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CourseSearchIndex {
+
+    private static final double TITLE_WEIGHT = 3.0;
+    private static final double DEPARTMENT_WEIGHT = 2.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    private static final double SYNONYM_FACTOR = 0.5;
+    private static final double PREFIX_FACTOR = 0.5;
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    private static final Map<String, List<String>> SYNONYMS = buildSynonyms();
+
+    private final CourseRepository courseRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // term -> (courseId -> field-weighted term frequency); sorted for prefix lookups
+    private final NavigableMap<String, Map<Long, Double>> postings = new TreeMap<>();
+    private final Map<Long, CourseSummaryDTO> courses = new HashMap<>();
+    private final Map<Long, Set<String>> courseTerms = new HashMap<>();
+    private volatile boolean built;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.nanoTime();
+        List<CourseSummaryDTO> summaries = courseRepository.findActiveCourseSummaries();
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            courses.clear();
+            courseTerms.clear();
+            summaries.forEach(this::addLocked);
+            built = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Course search index built: courses={}, terms={}, ms={}",
+                summaries.size(), postings.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        if (!built) {
+            return;
+        }
+        CourseSummaryDTO summary = event.getType() == CourseChangedEvent.Type.DELETED
+                ? null
+                : courseRepository.findCourseSummaryById(event.getCourseId()).orElse(null);
+        lock.writeLock().lock();
+        try {
+            removeLocked(event.getCourseId());
+            if (summary != null && Boolean.TRUE.equals(summary.getIsActive())) {
+                addLocked(summary);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Active courses matching the keywords, best first. A course must match every query
+     * term (directly, by prefix or by synonym); if none does, courses matching any term
+     * with at least half the best score are returned.
+     */
+    public List<CourseSummaryDTO> search(String keywords) {
+        if (!built) {
+            rebuild();
+        }
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(keywords)));
+        if (queryTerms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = new HashMap<>();
+            Map<Long, Integer> matchedTerms = new HashMap<>();
+            for (String term : queryTerms) {
+                Map<Long, Double> termScores = scoreTerm(term);
+                termScores.forEach((courseId, score) -> {
+                    scores.merge(courseId, score, Double::sum);
+                    matchedTerms.merge(courseId, 1, Integer::sum);
+                });
+            }
+            if (scores.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            List<Long> ranked = new ArrayList<>(scores.keySet());
+            ranked.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+            List<Long> selected = ranked.stream()
+                    .filter(id -> matchedTerms.get(id) == queryTerms.size())
+                    .toList();
+            if (selected.isEmpty()) {
+                double cutoff = scores.get(ranked.get(0)) / 2;
+                selected = ranked.stream().filter(id -> scores.get(id) >= cutoff).toList();
+            }
+            return selected.stream().map(courses::get).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Best evidence per course for one query term: exact > synonym / prefix
+    private Map<Long, Double> scoreTerm(String term) {
+        Map<Long, Double> result = new HashMap<>();
+        accumulate(result, term, 1.0);
+        for (String synonym : SYNONYMS.getOrDefault(term, List.of())) {
+            accumulate(result, synonym, SYNONYM_FACTOR);
+        }
+        if (term.length() >= MIN_PREFIX_LENGTH || isHan(term.charAt(0))) {
+            for (String indexed : postings.subMap(term, false, term + Character.MAX_VALUE, false).keySet()) {
+                accumulate(result, indexed, PREFIX_FACTOR);
+            }
+        }
+        return result;
+    }
+
+    private void accumulate(Map<Long, Double> result, String term, double factor) {
+        Map<Long, Double> posting = postings.get(term);
+        if (posting == null) {
+            return;
+        }
+        double idf = Math.log(1 + (double) courses.size() / posting.size());
+        posting.forEach((courseId, tf) -> result.merge(courseId, factor * tf * idf, Math::max));
+    }
+
+    private void addLocked(CourseSummaryDTO course) {
+        Map<String, Double> weights = new HashMap<>();
+        addField(weights, course.getTitle(), TITLE_WEIGHT);
+        addField(weights, course.getDepartment(), DEPARTMENT_WEIGHT);
+        addField(weights, course.getDescription(), DESCRIPTION_WEIGHT);
+        weights.forEach((term, weight) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(course.getId(), weight));
+        courses.put(course.getId(), course);
+        courseTerms.put(course.getId(), new HashSet<>(weights.keySet()));
+    }
+
+    private void removeLocked(Long courseId) {
+        Set<String> terms = courseTerms.remove(courseId);
+        courses.remove(courseId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Long, Double> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(courseId);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static void addField(Map<String, Double> weights, String text, double weight) {
+        for (String term : tokenize(text)) {
+            weights.merge(term, weight, Double::sum);
+        }
+    }
+
+    /**
+     * Lower-cased letter/digit words; runs of Han characters become overlapping bigrams
+     * (a single Han character stays a unigram) since Chinese has no word separators.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String lower = text.toLowerCase();
+        int i = 0;
+        int n = lower.length();
+        while (i < n) {
+            char c = lower.charAt(i);
+            if (isHan(c)) {
+                int start = i;
+                while (i < n && isHan(lower.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    tokens.add(lower.substring(start, i));
+                } else {
+                    for (int j = start; j + 1 < i; j++) {
+                        tokens.add(lower.substring(j, j + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < n && Character.isLetterOrDigit(lower.charAt(i)) && !isHan(lower.charAt(i))) {
+                    i++;
+                }
+                tokens.add(lower.substring(start, i));
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isHan(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    private static Map<String, List<String>> buildSynonyms() {
+        Map<String, List<String>> synonyms = new HashMap<>();
+        synonyms.put("safety", List.of("security", "protection", "hazard", "risk", "emergency"));
+        synonyms.put("compliance", List.of("regulation", "policy", "standard", "requirement", "audit"));
+        synonyms.put("training", List.of("education", "learning", "course", "instruction", "development"));
+        synonyms.put("data", List.of("information", "database", "privacy", "gdpr", "protection"));
+        synonyms.put("workplace", List.of("office", "work", "employee", "staff", "personnel"));
+        synonyms.put("emergency", List.of("crisis", "urgent", "disaster", "incident", "response"));
+        synonyms.put("安全", List.of("防护", "隐患", "风险", "应急"));
+        synonyms.put("合规", List.of("法规", "政策", "标准", "审计"));
+        synonyms.put("培训", List.of("教育", "学习", "课程"));
+        synonyms.put("数据", List.of("信息", "隐私", "个人"));
+        synonyms.put("应急", List.of("紧急", "事故", "灾害"));
+        return Map.copyOf(synonyms);
+    }
+}
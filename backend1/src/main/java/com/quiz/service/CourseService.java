@@ -4,6 +4,7 @@ import com.quiz.dto.CourseCreateRequest;
 import com.quiz.dto.CourseSummaryDTO;
 import com.quiz.entity.Course;
 import com.quiz.entity.User;
+import com.quiz.event.CourseChangedEvent;
 import com.quiz.repository.CourseRepository;
 import com.quiz.repository.UserRepository;
 import com.quiz.repository.WrongQuestionRepository;
@@ -11,10 +12,18 @@ import com.quiz.repository.QuizAttemptRepository;
 import com.quiz.repository.QuizRepository;
 import com.quiz.repository.CertificateRepository;
 import com.quiz.repository.UserCertificateRepository;
+import com.quiz.storage.HandbookBlobStore;
+import com.quiz.storage.StoredBlob;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -38,6 +47,13 @@ public class CourseService {
     private final PdfQuizAgentService pdfQuizAgentService;
     // 新增：CertificateServiceUsed for在CourseCreate后自动生成Certificate
     private final CertificateService certificateService;
+    private final HandbookBlobStore handbookBlobStore;
+    private final HandbookTextService handbookTextService;
+    private final HandbookPassageIndex handbookPassageIndex;
+    private final OpenAiFileRegistry openAiFileRegistry;
+    private final ComplianceFactService complianceFactService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PlatformTransactionManager transactionManager;
 
     @Transactional(readOnly = true)
     public List<Course> getAllActiveCourses() {
@@ -104,6 +120,7 @@ public class CourseService {
         } catch (Exception e) {
             log.warn("Failed to auto-create certificate for course {}: {}", savedCourse.getId(), e.getMessage());
         }
+        eventPublisher.publishEvent(new CourseChangedEvent(savedCourse.getId(), CourseChangedEvent.Type.CREATED));
         return savedCourse;
     }
 
@@ -121,9 +138,22 @@ public class CourseService {
             throw new RuntimeException("Only PDF files are allowed");
         }
 
-        // 先进RowAI预检，避免PDF先入Library导致不必要的egress
+        // PDF 写入内容寻址Storage，Course 只保存 hash；相同内容只存一份
+        StoredBlob blob;
+        try (java.io.InputStream in = handbookFile.getInputStream()) {
+            blob = handbookBlobStore.put(in);
+        }
+
+        // AI预检通过后再入Library；预检Failure时清理没有其他Course引用的 blob
         String preflightPrompt = "课程预检:\n标题:" + request.getTitle() + "\n描述:" + request.getDescription();
-        pdfQuizAgentService.preflightCheckPdfWithOpenAI(handbookFile.getBytes(), handbookFile.getOriginalFilename(), preflightPrompt);
+        try {
+            pdfQuizAgentService.preflightCheckPdfWithOpenAI(blob.getHash(), handbookFile.getOriginalFilename(), preflightPrompt);
+        } catch (RuntimeException e) {
+            if (!courseRepository.existsByHandbookHash(blob.getHash())) {
+                handbookBlobStore.delete(blob.getHash());
+            }
+            throw e;
+        }
 
         Course course = new Course();
         course.setTitle(request.getTitle());
@@ -134,11 +164,8 @@ public class CourseService {
         // SettingPDFFileInformation（通过预检后再入Library）
         course.setHandbookFileName(handbookFile.getOriginalFilename());
         course.setHandbookContentType(handbookFile.getContentType());
-        course.setHandbookFileSize(handbookFile.getSize());
-        
-        // 这里暂时将PDFFileContentStorage为字节Array
-        // 在生产Environment中，Suggestion将FileStorage到File系统或云StorageService
-        course.setHandbookFilePath(handbookFile.getBytes());
+        course.setHandbookFileSize(blob.getSize());
+        course.setHandbookHash(blob.getHash());
         
         course.setIsActive(true);
         course.setCreatedAt(LocalDateTime.now());
@@ -147,12 +174,15 @@ public class CourseService {
         Course savedCourse = courseRepository.save(course);
         log.info("Course created with PDF handbook, id: {}", savedCourse.getId());
 
+        // 上传时提取一次手册文本并缓存，后续Quiz生成与 chatbot 直接读取
+        warmHandbookText(savedCourse.getHandbookHash());
+
         // 如果启用了AI描述生成，则使用AI生成课程描述
         if (Boolean.TRUE.equals(request.getEnableAIDescription())) {
             try {
                 log.info("Generating AI course description for course id: {}", savedCourse.getId());
                 String aiGeneratedDescription = pdfQuizAgentService.generateCourseDescription(
-                    handbookFile.getBytes(), 
+                    savedCourse.getHandbookHash(),
                     handbookFile.getOriginalFilename(),
                     request.getTitle()
                 );
@@ -187,9 +217,109 @@ public class CourseService {
         } catch (Exception e) {
             log.warn("Failed to auto-create certificate (PDF flow) for course {}: {}", savedCourse.getId(), e.getMessage());
         }
+        eventPublisher.publishEvent(new CourseChangedEvent(savedCourse.getId(), CourseChangedEvent.Type.CREATED));
+        return savedCourse;
+    }
+
+    /* * * 替换Course手册PDF
+     * 新 blob 写入并通过与Create时相同的 AI 预检后，在一个事务内Update hash（预检不占用数据库连接）；
+     * 提交后旧 hash 不再被任何Course引用时清理其文本缓存与 blob */
+    public Course replaceCourseHandbook(Long id, MultipartFile handbookFile) throws IOException {
+        Course course = courseRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Course not found"));
+
+        if (handbookFile == null || handbookFile.isEmpty()) {
+            throw new RuntimeException("Handbook PDF file is required");
+        }
+        if (!"application/pdf".equals(handbookFile.getContentType())) {
+            throw new RuntimeException("Only PDF files are allowed");
+        }
+
+        StoredBlob blob;
+        try (java.io.InputStream in = handbookFile.getInputStream()) {
+            blob = handbookBlobStore.put(in);
+        }
+
+        String preflightPrompt = "课程预检:\n标题:" + course.getTitle() + "\n描述:" + course.getDescription();
+        try {
+            pdfQuizAgentService.preflightCheckPdfWithOpenAI(blob.getHash(), handbookFile.getOriginalFilename(), preflightPrompt);
+        } catch (RuntimeException e) {
+            if (!courseRepository.existsByHandbookHash(blob.getHash())) {
+                handbookBlobStore.delete(blob.getHash());
+            }
+            throw e;
+        }
+
+        Course savedCourse = new TransactionTemplate(transactionManager).execute(status -> {
+            Course current = courseRepository.findById(id)
+                    .orElseThrow(() -> new RuntimeException("Course not found"));
+            String oldHash = current.getHandbookHash();
+            current.setHandbookFileName(handbookFile.getOriginalFilename());
+            current.setHandbookContentType(handbookFile.getContentType());
+            current.setHandbookFileSize(blob.getSize());
+            current.setHandbookHash(blob.getHash());
+            current.setUpdatedAt(LocalDateTime.now());
+            Course saved = courseRepository.save(current);
+            log.info("Handbook replaced for course id: {}, {} -> {}", id, oldHash, blob.getHash());
+            if (oldHash != null && !oldHash.equals(blob.getHash())) {
+                releaseHandbookAfterCommit(oldHash);
+            }
+            eventPublisher.publishEvent(new CourseChangedEvent(saved.getId(), CourseChangedEvent.Type.HANDBOOK_REPLACED));
+            return saved;
+        });
+
+        warmHandbookText(blob.getHash());
         return savedCourse;
     }
 
+    /* * * 当前事务提交后释放不再被任何Course引用的手册：文本缓存、检索索引、OpenAI File记录与 blob；
+     * 没有事务时立即释放。提交回调里的数据库操作必须在新事务中执行，否则不会被提交 */
+    private void releaseHandbookAfterCommit(String handbookHash) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            releaseHandbookIfUnreferenced(handbookHash);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                releaseHandbookIfUnreferenced(handbookHash);
+            }
+        });
+    }
+
+    private void releaseHandbookIfUnreferenced(String handbookHash) {
+        try {
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            Boolean released = template.execute(status -> {
+                if (courseRepository.existsByHandbookHash(handbookHash)) {
+                    return false;
+                }
+                handbookTextService.evict(handbookHash);
+                openAiFileRegistry.evict(handbookHash);
+                return true;
+            });
+            if (Boolean.TRUE.equals(released)) {
+                handbookPassageIndex.evict(handbookHash);
+                handbookBlobStore.delete(handbookHash);
+                log.info("Released unreferenced handbook blob {}", handbookHash);
+            }
+        } catch (Exception e) {
+            // The course change is already committed; an orphaned blob only costs disk space
+            log.warn("Failed to release handbook {}: {}", handbookHash, e.getMessage());
+        }
+    }
+
+    private void warmHandbookText(String handbookHash) {
+        try {
+            handbookTextService.getOrExtract(handbookHash);
+            handbookPassageIndex.warm(handbookHash);
+        } catch (Exception e) {
+            // Non-fatal: text is extracted lazily on first use
+            log.warn("Failed to pre-extract handbook text for {}: {}", handbookHash, e.getMessage());
+        }
+    }
+
     public Course updateCourse(Long id, CourseCreateRequest request) {
         Course existingCourse = courseRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Course not found"));
@@ -210,6 +340,7 @@ public class CourseService {
 
         Course savedCourse = courseRepository.save(existingCourse);
         log.info("Course updated with id: {}", savedCourse.getId());
+        eventPublisher.publishEvent(new CourseChangedEvent(savedCourse.getId(), CourseChangedEvent.Type.UPDATED));
         return savedCourse;
     }
 
@@ -222,6 +353,7 @@ public class CourseService {
         course.setUpdatedAt(LocalDateTime.now());
         courseRepository.save(course);
         
+        eventPublisher.publishEvent(new CourseChangedEvent(id, CourseChangedEvent.Type.DEACTIVATED));
         log.info("Course with id {} has been deactivated", id);
     }
 
@@ -233,6 +365,7 @@ public class CourseService {
         course.setUpdatedAt(LocalDateTime.now());
         courseRepository.save(course);
         
+        eventPublisher.publishEvent(new CourseChangedEvent(id, CourseChangedEvent.Type.ACTIVATED));
         log.info("Course with id {} has been activated", id);
     }
 
@@ -295,6 +428,8 @@ public class CourseService {
         // 2) Delete该Course下的所有测验Commit（将级联Delete学生Answer与OptionAssociation）
         quizAttemptRepository.deleteByCourseId(id);
         log.info("Deleted quiz attempts for course id {}", id);
+        // Attempt counts, pass state and monthly buckets all change; recompute the compliance facts
+        complianceFactService.rebuild();
 
         // 3) Delete该Course关联的用户证书记录（必须在删除证书之前删除，避免外键约束冲突）
         userCertificateRepository.deleteByCourseId(id);
@@ -307,7 +442,12 @@ public class CourseService {
         });
 
         // 5) DeleteCourse实体（级联Delete其下测验、Question和Option）
+        String handbookHash = course.getHandbookHash();
         courseRepository.delete(course);
+        if (handbookHash != null) {
+            releaseHandbookAfterCommit(handbookHash);
+        }
+        eventPublisher.publishEvent(new CourseChangedEvent(id, CourseChangedEvent.Type.DELETED));
         log.info("Cascade deleted course entity and related quizzes/questions/options for id {}", id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,348 @@
+package com.quiz.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/* * * Handbook 段落检索（RAG）索引
+ * 基于 handbook_texts 的缓存文本按页切块（带重叠），每本手册建一个 BM25 倒排索引；
+ * 配置了 EmbeddingModel Bean 时另建内存向量索引，两路结果按 RRF 融合。
+ * 按手册 hash 缓存（LRU），Upload时预热，手册释放时淘汰；Chatbot 只取 top-k 段落，不再整本发给模型 */
+@Service
+@Slf4j
+public class HandbookPassageIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Reciprocal rank fusion constant; 60 is the value from the original RRF paper
+    private static final int RRF_K = 60;
+    private static final String SENTENCE_ENDS = "。！？.!?；;\n";
+
+    private final HandbookTextService handbookTextService;
+    private final EmbeddingModel embeddingModel;
+    private final int chunkChars;
+    private final int chunkOverlap;
+    private final int defaultTopK;
+    private final int maxHandbooks;
+
+    private final LinkedHashMap<String, Index> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    // One build per handbook at a time; concurrent callers wait for it
+    private final Map<String, CompletableFuture<Index>> building = new ConcurrentHashMap<>();
+
+    private final Timer searchTimer;
+    private final Timer buildTimer;
+    private final Counter embeddingFailures;
+
+    public HandbookPassageIndex(HandbookTextService handbookTextService,
+                                ObjectProvider<EmbeddingModel> embeddingModel,
+                                @Value("${handbook.rag.embeddings.enabled:true}") boolean embeddingsEnabled,
+                                @Value("${handbook.rag.chunk-chars:800}") int chunkChars,
+                                @Value("${handbook.rag.chunk-overlap:120}") int chunkOverlap,
+                                @Value("${handbook.rag.top-k:5}") int defaultTopK,
+                                @Value("${handbook.rag.max-handbooks:100}") int maxHandbooks,
+                                MeterRegistry meterRegistry) {
+        this.handbookTextService = handbookTextService;
+        this.embeddingModel = embeddingsEnabled ? embeddingModel.getIfAvailable() : null;
+        this.chunkChars = chunkChars;
+        this.chunkOverlap = Math.min(chunkOverlap, chunkChars / 2);
+        this.defaultTopK = defaultTopK;
+        this.maxHandbooks = maxHandbooks;
+        this.searchTimer = meterRegistry.timer("handbook.rag.search");
+        this.buildTimer = meterRegistry.timer("handbook.rag.build");
+        this.embeddingFailures = meterRegistry.counter("handbook.rag.embedding.failures");
+        log.info("Handbook passage index: chunkChars={}, overlap={}, topK={}, maxHandbooks={}, embeddings={}",
+                chunkChars, this.chunkOverlap, defaultTopK, maxHandbooks, this.embeddingModel != null);
+    }
+
+    public static class Passage {
+        private final int page;
+        private final int chunk;
+        private final double score;
+        private final String text;
+
+        Passage(int page, int chunk, double score, String text) {
+            this.page = page;
+            this.chunk = chunk;
+            this.score = score;
+            this.text = text;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public int getChunk() {
+            return chunk;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    public boolean isHybrid() {
+        return embeddingModel != null;
+    }
+
+    /** Build the index for a freshly uploaded handbook so the first question does not pay for it. */
+    public void warm(String handbookHash) throws IOException {
+        getIndex(handbookHash);
+    }
+
+    public List<Passage> search(String handbookHash, String question) throws IOException {
+        return search(handbookHash, question, defaultTopK);
+    }
+
+    /**
+     * The topK chunks of the handbook most relevant to the question, best first. BM25 only,
+     * or BM25 fused with vector similarity when an embedding model is configured.
+     */
+    public List<Passage> search(String handbookHash, String question, int topK) throws IOException {
+        Index index = getIndex(handbookHash);
+        long start = System.nanoTime();
+        try {
+            List<Hit> lexical = index.bm25(CourseSearchIndex.tokenize(question), topK * 2);
+            if (index.embeddings == null) {
+                return lexical.stream()
+                        .limit(topK)
+                        .map(hit -> index.passage(hit.chunk, hit.score))
+                        .toList();
+            }
+            List<Integer> semantic = semanticRanking(index, question, topK * 2);
+            Map<Integer, Double> fused = new HashMap<>();
+            for (int rank = 0; rank < lexical.size(); rank++) {
+                fused.merge(lexical.get(rank).chunk, 1.0 / (RRF_K + rank + 1), Double::sum);
+            }
+            for (int rank = 0; rank < semantic.size(); rank++) {
+                fused.merge(semantic.get(rank), 1.0 / (RRF_K + rank + 1), Double::sum);
+            }
+            return fused.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                    .limit(topK)
+                    .map(e -> index.passage(e.getKey(), e.getValue()))
+                    .toList();
+        } finally {
+            searchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void evict(String handbookHash) {
+        synchronized (indexes) {
+            indexes.remove(handbookHash);
+        }
+    }
+
+    private List<Integer> semanticRanking(Index index, String question, int limit) {
+        try {
+            Embedding query = embeddingModel.embed(question).content();
+            return index.embeddings.findRelevant(query, limit, 0.0).stream()
+                    .map(EmbeddingMatch::embedded)
+                    .toList();
+        } catch (Exception e) {
+            embeddingFailures.increment();
+            log.warn("Failed to embed handbook question, using BM25 only: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private Index getIndex(String handbookHash) throws IOException {
+        synchronized (indexes) {
+            Index cached = indexes.get(handbookHash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        CompletableFuture<Index> mine = new CompletableFuture<>();
+        CompletableFuture<Index> existing = building.putIfAbsent(handbookHash, mine);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            }
+        }
+        try {
+            Index index = build(handbookHash);
+            synchronized (indexes) {
+                indexes.put(handbookHash, index);
+                while (indexes.size() > maxHandbooks) {
+                    indexes.remove(indexes.keySet().iterator().next());
+                }
+            }
+            mine.complete(index);
+            return index;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            building.remove(handbookHash, mine);
+        }
+    }
+
+    private Index build(String handbookHash) throws IOException {
+        long start = System.nanoTime();
+        List<String> pages = handbookTextService.getPages(handbookHash);
+        List<Integer> pageNumbers = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int p = 0; p < pages.size(); p++) {
+            for (String text : chunk(pages.get(p), chunkChars, chunkOverlap)) {
+                pageNumbers.add(p + 1);
+                texts.add(text);
+            }
+        }
+        Index index = new Index(texts, pageNumbers.stream().mapToInt(Integer::intValue).toArray());
+        if (embeddingModel != null && !texts.isEmpty()) {
+            index.embeddings = embed(handbookHash, texts);
+        }
+        buildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("Indexed handbook {}: pages={}, chunks={}, terms={}, embeddings={}, ms={}",
+                handbookHash, pages.size(), texts.size(), index.postings.size(),
+                index.embeddings != null, (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    private InMemoryEmbeddingStore<Integer> embed(String handbookHash, List<String> texts) {
+        try {
+            List<Embedding> vectors = embeddingModel.embedAll(texts.stream().map(TextSegment::from).toList()).content();
+            InMemoryEmbeddingStore<Integer> store = new InMemoryEmbeddingStore<>();
+            List<Integer> ids = new ArrayList<>(texts.size());
+            for (int i = 0; i < texts.size(); i++) {
+                ids.add(i);
+            }
+            store.addAll(vectors, ids);
+            return store;
+        } catch (Exception e) {
+            embeddingFailures.increment();
+            log.warn("Failed to embed handbook {}, using BM25 only: {}", handbookHash, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Split one page into chunks of about maxChars, preferring to cut after a sentence end,
+     * then at whitespace; consecutive chunks overlap by roughly overlap characters.
+     */
+    static List<String> chunk(String page, int maxChars, int overlap) {
+        List<String> chunks = new ArrayList<>();
+        String text = page.trim();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + maxChars);
+            if (end < text.length()) {
+                end = breakPoint(text, start + maxChars / 2, end);
+            }
+            String piece = text.substring(start, end).trim();
+            if (!piece.isEmpty()) {
+                chunks.add(piece);
+            }
+            if (end >= text.length()) {
+                break;
+            }
+            start = Math.max(end - overlap, start + 1);
+        }
+        return chunks;
+    }
+
+    private static int breakPoint(String text, int min, int max) {
+        for (int i = max; i > min; i--) {
+            if (SENTENCE_ENDS.indexOf(text.charAt(i - 1)) >= 0) {
+                return i;
+            }
+        }
+        for (int i = max; i > min; i--) {
+            if (Character.isWhitespace(text.charAt(i - 1))) {
+                return i;
+            }
+        }
+        return max;
+    }
+
+    private static class Index {
+        final List<String> texts;
+        final int[] pages;
+        final int[] lengths;
+        final double avgLength;
+        // term -> {chunk, tf} pairs
+        final Map<String, List<int[]>> postings = new HashMap<>();
+        InMemoryEmbeddingStore<Integer> embeddings;
+
+        Index(List<String> texts, int[] pages) {
+            this.texts = texts;
+            this.pages = pages;
+            this.lengths = new int[texts.size()];
+            long total = 0;
+            for (int c = 0; c < texts.size(); c++) {
+                Map<String, Integer> tf = new HashMap<>();
+                List<String> tokens = CourseSearchIndex.tokenize(texts.get(c));
+                for (String token : tokens) {
+                    tf.merge(token, 1, Integer::sum);
+                }
+                int chunk = c;
+                tf.forEach((term, count) -> postings.computeIfAbsent(term, t -> new ArrayList<>()).add(new int[]{chunk, count}));
+                lengths[c] = tokens.size();
+                total += tokens.size();
+            }
+            this.avgLength = texts.isEmpty() ? 0 : (double) total / texts.size();
+        }
+
+        List<Hit> bm25(List<String> queryTerms, int limit) {
+            Map<Integer, Double> scores = new HashMap<>();
+            for (String term : new LinkedHashSet<>(queryTerms)) {
+                List<int[]> posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (texts.size() - posting.size() + 0.5) / (posting.size() + 0.5));
+                for (int[] entry : posting) {
+                    double tf = entry[1];
+                    double norm = K1 * (1 - B + B * lengths[entry[0]] / avgLength);
+                    scores.merge(entry[0], idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+                }
+            }
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                    .limit(limit)
+                    .map(e -> new Hit(e.getKey(), e.getValue()))
+                    .toList();
+        }
+
+        Passage passage(int chunk, double score) {
+            return new Passage(pages[chunk], chunk, score, texts.get(chunk));
+        }
+    }
+
+    private static class Hit {
+        final int chunk;
+        final double score;
+
+        Hit(int chunk, double score) {
+            this.chunk = chunk;
+            this.score = score;
+        }
+    }
+}
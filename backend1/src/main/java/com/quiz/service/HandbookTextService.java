@@ -0,0 +1,127 @@
+package com.quiz.service;
+
+import com.quiz.dto.PdfPageText;
+import com.quiz.entity.HandbookText;
+import com.quiz.repository.HandbookTextRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/* * * Handbook 文本缓存Service
+ * Upload时提取一次并持久化到 handbook_texts，之后Quiz生成与 chatbot 工具直接读取，不再重复Parse PDF */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HandbookTextService {
+
+    private final HandbookTextRepository handbookTextRepository;
+    private final PdfTextExtractionService pdfTextExtractionService;
+
+    @Value("${handbook.text.max-chars:2000000}")
+    private int maxChars;
+
+    /**
+     * Return the cached extraction for a handbook, extracting and persisting it on a miss.
+     */
+    public HandbookText getOrExtract(String handbookHash) throws IOException {
+        HandbookText cached = handbookTextRepository.findById(handbookHash).orElse(null);
+        if (cached != null) {
+            log.debug("Handbook text cache hit: {}", handbookHash);
+            return cached;
+        }
+        log.info("Handbook text cache miss, extracting: {}", handbookHash);
+        HandbookText extracted = extract(handbookHash);
+        try {
+            return handbookTextRepository.save(extracted);
+        } catch (DataIntegrityViolationException e) {
+            // Another request extracted the same handbook concurrently
+            return handbookTextRepository.findById(handbookHash).orElse(extracted);
+        }
+    }
+
+    /**
+     * Cached handbook text truncated to maxLength characters.
+     */
+    public String getText(String handbookHash, int maxLength) throws IOException {
+        String content = getOrExtract(handbookHash).getContent();
+        if (content.length() <= maxLength) {
+            return content;
+        }
+        return content.substring(0, maxLength) + "...";
+    }
+
+    /**
+     * Cached handbook text split back into pages using the stored offsets.
+     */
+    public List<String> getPages(String handbookHash) throws IOException {
+        HandbookText text = getOrExtract(handbookHash);
+        String content = text.getContent();
+        if (text.getPageOffsets() == null || text.getPageOffsets().isEmpty()) {
+            return content.isEmpty() ? Collections.emptyList() : List.of(content);
+        }
+        String[] parts = text.getPageOffsets().split(",");
+        List<String> pages = new ArrayList<>(parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            int start = Integer.parseInt(parts[i]);
+            int end = i + 1 < parts.length ? Integer.parseInt(parts[i + 1]) : content.length();
+            pages.add(content.substring(start, end).trim());
+        }
+        return pages;
+    }
+
+    public void evict(String handbookHash) {
+        if (handbookHash != null && handbookTextRepository.existsById(handbookHash)) {
+            handbookTextRepository.deleteById(handbookHash);
+            log.info("Evicted handbook text cache: {}", handbookHash);
+        }
+    }
+
+    private HandbookText extract(String handbookHash) throws IOException {
+        long start = System.currentTimeMillis();
+        StringBuilder content = new StringBuilder();
+        StringBuilder offsets = new StringBuilder();
+        int pageCount = 0;
+        boolean truncated = false;
+
+        try (Stream<PdfPageText> pages = pdfTextExtractionService.streamPages(handbookHash)) {
+            Iterator<PdfPageText> it = pages.iterator();
+            while (it.hasNext()) {
+                if (content.length() >= maxChars) {
+                    truncated = true;
+                    break;
+                }
+                PdfPageText page = it.next();
+                if (pageCount > 0) {
+                    offsets.append(',');
+                    content.append("\n\n");
+                }
+                offsets.append(content.length());
+                content.append(page.getText());
+                pageCount++;
+            }
+        }
+
+        HandbookText text = new HandbookText();
+        text.setHandbookHash(handbookHash);
+        text.setContent(content.toString());
+        text.setPageOffsets(offsets.toString());
+        text.setPageCount(pageCount);
+        text.setCharCount(content.length());
+        text.setTruncated(truncated);
+        text.setExtractionMillis(System.currentTimeMillis() - start);
+        text.setCreatedAt(LocalDateTime.now());
+        log.info("Extracted handbook text: hash={}, pages={}, chars={}, truncated={}, ms={}",
+                handbookHash, pageCount, content.length(), truncated, text.getExtractionMillis());
+        return text;
+    }
+}
@@ -0,0 +1,172 @@
+package com.quiz.service;
+
+import com.quiz.entity.ChatMemoryRecord;
+import com.quiz.repository.ChatMemoryRecordRepository;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messagesFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+
+/* * * 基于数据库的会话记忆Storage
+ * 会话窗口序列化为 JSON 存入 chat_memories，多实例共享，无需粘性会话。
+ * 写入先合并到 dirty 表（同一会话只保留最新窗口），定时落库，每个会话单独一个事务；
+ * 连续多次写入失败的会话被丢弃，不会拖住其他会话或无限堆积。读取依次查 dirty、本地短 TTL 缓存、数据库 */
+@Slf4j
+public class JpaChatMemoryStore implements ChatMemoryStore {
+
+    // Marker for a pending delete; an empty window and a deleted session are equivalent
+    private static final List<ChatMessage> DELETED = List.of();
+
+    private final ChatMemoryRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final BoundedChatMemoryStore readCache;
+    private final Duration retention;
+    private final int maxFlushAttempts;
+
+    private final Map<String, List<ChatMessage>> pendingWrites = new ConcurrentHashMap<>();
+    // Consecutive failed writes per session; guarded by the flush() monitor
+    private final Map<String, Integer> flushAttempts = new HashMap<>();
+
+    private final Counter dbReads;
+    private final Counter flushedSessions;
+    private final Counter flushFailures;
+    private final Counter droppedSessions;
+
+    public JpaChatMemoryStore(ChatMemoryRecordRepository repository,
+                              TransactionTemplate transactionTemplate,
+                              BoundedChatMemoryStore readCache,
+                              Duration retention,
+                              int maxFlushAttempts,
+                              MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.readCache = readCache;
+        this.retention = retention;
+        this.maxFlushAttempts = maxFlushAttempts;
+        this.dbReads = meterRegistry.counter("chatbot.memory.db.reads");
+        this.flushedSessions = meterRegistry.counter("chatbot.memory.db.flushed");
+        this.flushFailures = meterRegistry.counter("chatbot.memory.db.flush.failures");
+        this.droppedSessions = meterRegistry.counter("chatbot.memory.db.dropped");
+        Gauge.builder("chatbot.memory.pending-writes", pendingWrites, Map::size)
+                .description("Chat sessions with changes not yet written to the database")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        String key = String.valueOf(memoryId);
+        List<ChatMessage> pending = pendingWrites.get(key);
+        if (pending != null) {
+            return new ArrayList<>(pending);
+        }
+        List<ChatMessage> cached = readCache.peek(key);
+        if (cached != null) {
+            return cached;
+        }
+        dbReads.increment();
+        List<ChatMessage> messages = repository.findById(key)
+                .map(record -> messagesFromJson(record.getMessagesJson()))
+                .orElseGet(ArrayList::new);
+        readCache.updateMessages(key, messages);
+        return new ArrayList<>(messages);
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        String key = String.valueOf(memoryId);
+        List<ChatMessage> copy = new ArrayList<>(messages);
+        readCache.updateMessages(key, copy);
+        // Several appends within one turn collapse into a single row write
+        pendingWrites.put(key, copy);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String key = String.valueOf(memoryId);
+        readCache.deleteMessages(key);
+        pendingWrites.put(key, DELETED);
+    }
+
+    @Scheduled(fixedDelayString = "${chatbot.memory.jpa.flush-interval-ms:500}")
+    public synchronized void flush() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        Map<String, List<ChatMessage>> batch = Map.copyOf(pendingWrites);
+        LocalDateTime now = LocalDateTime.now();
+        int flushed = 0;
+        // One transaction per session, so a session that cannot be written does not hold back the others
+        for (Map.Entry<String, List<ChatMessage>> entry : batch.entrySet()) {
+            String key = entry.getKey();
+            List<ChatMessage> messages = entry.getValue();
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(key, messages, now));
+            } catch (Exception e) {
+                // Retried on the next tick (a concurrent insert of the same session by another node
+                // turns into an update then), but not forever
+                flushFailures.increment();
+                int attempts = flushAttempts.merge(key, 1, Integer::sum);
+                if (attempts >= maxFlushAttempts) {
+                    flushAttempts.remove(key);
+                    if (pendingWrites.remove(key, messages)) {
+                        droppedSessions.increment();
+                        log.error("Dropping chat session {} after {} failed writes: {}", key, attempts, e.getMessage());
+                    }
+                } else {
+                    log.warn("Failed to flush chat session {} (attempt {}/{}): {}", key, attempts, maxFlushAttempts, e.getMessage());
+                }
+                continue;
+            }
+            flushAttempts.remove(key);
+            // Keep the entry if it was overwritten while it was being written
+            pendingWrites.remove(key, messages);
+            flushed++;
+        }
+        flushedSessions.increment(flushed);
+    }
+
+    @Scheduled(fixedDelayString = "${chatbot.memory.jpa.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        readCache.evictIdleSessions();
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        Integer purged = transactionTemplate.execute(status -> repository.deleteUpdatedBefore(cutoff));
+        if (purged != null && purged > 0) {
+            log.info("Purged {} chat sessions idle since before {}", purged, cutoff);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        if (!pendingWrites.isEmpty()) {
+            log.warn("{} chat sessions could not be written before shutdown", pendingWrites.size());
+        }
+    }
+
+    private void write(String key, List<ChatMessage> messages, LocalDateTime now) {
+        if (messages == DELETED || messages.isEmpty()) {
+            repository.deleteBySessionKey(key);
+            return;
+        }
+        String json = messagesToJson(messages);
+        if (repository.updateMessages(key, json, messages.size(), now) == 0) {
+            repository.save(new ChatMemoryRecord(key, json, messages.size(), now));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.quiz.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quiz.entity.OpenAiFileRecord;
+import com.quiz.repository.OpenAiFileRecordRepository;
+import com.quiz.storage.HandbookBlobStore;
+import com.quiz.storage.HandbookUploadBody;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.MultipartBody;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* * * OpenAI File ID 注册表
+ * 同一份手册（内容 hash）在同一 base URL 下只Upload一次；记录带 TTL，
+ * 超过重新Validate间隔时通过 GET /files/{id} 确认File仍然存在，否则重新Upload；
+ * TTL 到期重新Upload后Delete被替换的旧File */
+@Service
+@Slf4j
+public class OpenAiFileRegistry {
+
+    private final OpenAiFileRecordRepository recordRepository;
+    private final HandbookBlobStore handbookBlobStore;
+    private final ObjectMapper objectMapper;
+    private final OpenAiHttpClient openAiHttpClient;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter uploadedBytesCounter;
+    private final Counter savedBytesCounter;
+
+    // Concurrent callers for the same handbook and endpoint share one lookup/upload; entries
+    // exist only while it runs, and no lock is held across the network calls
+    private final Map<String, CompletableFuture<String>> resolving = new ConcurrentHashMap<>();
+
+    @Value("${openai.files.ttl-hours:168}")
+    private long ttlHours;
+
+    @Value("${openai.files.revalidate-minutes:60}")
+    private long revalidateMinutes;
+
+    public OpenAiFileRegistry(OpenAiFileRecordRepository recordRepository,
+                              HandbookBlobStore handbookBlobStore,
+                              ObjectMapper objectMapper,
+                              OpenAiHttpClient openAiHttpClient,
+                              MeterRegistry meterRegistry) {
+        this.recordRepository = recordRepository;
+        this.handbookBlobStore = handbookBlobStore;
+        this.objectMapper = objectMapper;
+        this.openAiHttpClient = openAiHttpClient;
+        this.hitCounter = meterRegistry.counter("openai.files.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("openai.files.cache", "result", "miss");
+        this.uploadedBytesCounter = meterRegistry.counter("openai.files.upload.bytes");
+        this.savedBytesCounter = meterRegistry.counter("openai.files.upload.bytes.saved");
+        Gauge.builder("openai.files.cache.hit.ratio", this, OpenAiFileRegistry::hitRatio)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return a file id for the handbook at the given OpenAI endpoint, uploading
+     * only when no valid cached id exists. Returns null if the upload fails.
+     */
+    public String getOrUpload(String handbookHash, String fileName, String baseUrl, String apiKey) {
+        String key = baseUrl + "|" + handbookHash;
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = resolving.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+            }
+        }
+        try {
+            String fileId = resolve(handbookHash, fileName, baseUrl, apiKey);
+            mine.complete(fileId);
+            return fileId;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            resolving.remove(key, mine);
+        }
+    }
+
+    /** Drop every cached file id for a handbook, e.g. after it is replaced. */
+    public void evict(String handbookHash) {
+        recordRepository.deleteByHandbookHash(handbookHash);
+        log.info("Evicted OpenAI file records for handbook {}", handbookHash);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", (long) hitCounter.count());
+        stats.put("misses", (long) missCounter.count());
+        stats.put("hitRatio", hitRatio());
+        stats.put("uploadedBytes", (long) uploadedBytesCounter.count());
+        stats.put("uploadBytesSaved", (long) savedBytesCounter.count());
+        stats.put("registeredFiles", recordRepository.count());
+        return stats;
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total > 0 ? hits / total : 0.0;
+    }
+
+    private String resolve(String handbookHash, String fileName, String baseUrl, String apiKey) {
+        OpenAiFileRecord record = recordRepository.findByHandbookHashAndBaseUrl(handbookHash, baseUrl).orElse(null);
+        boolean expired = record != null && isExpired(record);
+        if (record != null && !expired && isUsable(record, baseUrl, apiKey)) {
+            hitCounter.increment();
+            if (record.getSizeBytes() != null) {
+                savedBytesCounter.increment(record.getSizeBytes());
+            }
+            log.info("OpenAI file cache hit: hash={}, fileId={}", handbookHash, record.getFileId());
+            return record.getFileId();
+        }
+
+        missCounter.increment();
+        String fileId = upload(handbookHash, fileName, baseUrl, apiKey);
+        if (fileId == null) {
+            return null;
+        }
+        // Only an expired file still exists remotely; one that failed revalidation is already gone
+        String superseded = expired ? record.getFileId() : null;
+        if (record == null) {
+            record = new OpenAiFileRecord();
+            record.setHandbookHash(handbookHash);
+            record.setBaseUrl(baseUrl);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        record.setFileId(fileId);
+        record.setUploadedAt(now);
+        record.setLastValidatedAt(now);
+        try {
+            record.setSizeBytes(handbookBlobStore.size(handbookHash));
+            recordRepository.save(record);
+        } catch (DataIntegrityViolationException e) {
+            // Another node registered the same handbook; keep using our id for this call
+            log.info("OpenAI file record for {} registered concurrently", handbookHash);
+        } catch (Exception e) {
+            log.warn("Failed to persist OpenAI file record for {}: {}", handbookHash, e.getMessage());
+        }
+        if (superseded != null && !superseded.equals(fileId)) {
+            deleteRemoteFile(superseded, baseUrl, apiKey);
+        }
+        return fileId;
+    }
+
+    private boolean isExpired(OpenAiFileRecord record) {
+        if (record.getUploadedAt() == null || record.getUploadedAt().plusHours(ttlHours).isBefore(LocalDateTime.now())) {
+            log.info("OpenAI file {} expired (ttl {}h), re-uploading", record.getFileId(), ttlHours);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isUsable(OpenAiFileRecord record, String baseUrl, String apiKey) {
+        LocalDateTime now = LocalDateTime.now();
+        if (record.getLastValidatedAt() != null && record.getLastValidatedAt().plusMinutes(revalidateMinutes).isAfter(now)) {
+            return true;
+        }
+        Boolean exists = fileExists(record.getFileId(), baseUrl, apiKey);
+        if (Boolean.FALSE.equals(exists)) {
+            log.info("OpenAI file {} no longer exists, re-uploading", record.getFileId());
+            return false;
+        }
+        if (exists != null) {
+            record.setLastValidatedAt(now);
+            recordRepository.save(record);
+        }
+        // Unknown (network error): keep using the cached id rather than re-uploading blindly
+        return true;
+    }
+
+    /** Fire and forget: a file that could not be deleted only costs storage until OpenAI expires it. */
+    private void deleteRemoteFile(String fileId, String baseUrl, String apiKey) {
+        openAiHttpClient.deleteFile(baseUrl, apiKey, fileId).whenComplete((response, e) -> {
+            if (e != null) {
+                log.warn("Deleting superseded OpenAI file {} failed: {}", fileId, e.getMessage());
+            } else if (response.isSuccessful() || response.getCode() == 404) {
+                log.info("Deleted superseded OpenAI file {}", fileId);
+            } else {
+                log.warn("Deleting superseded OpenAI file {} returned HTTP {}", fileId, response.getCode());
+            }
+        });
+    }
+
+    /** TRUE/FALSE when the API answered, null when revalidation itself failed. */
+    private Boolean fileExists(String fileId, String baseUrl, String apiKey) {
+        try {
+            OpenAiHttpClient.Result response = OpenAiHttpClient.await(openAiHttpClient.getFile(baseUrl, apiKey, fileId));
+            if (response.isSuccessful()) {
+                return true;
+            }
+            if (response.getCode() == 404) {
+                return false;
+            }
+            log.warn("OpenAI file revalidation for {} returned HTTP {}", fileId, response.getCode());
+            return null;
+        } catch (Exception e) {
+            log.warn("OpenAI file revalidation for {} failed: {}", fileId, e.getMessage());
+            return null;
+        }
+    }
+
+    private String upload(String handbookHash, String fileName, String baseUrl, String apiKey) {
+        try {
+            HandbookUploadBody fileBody = new HandbookUploadBody(handbookBlobStore, handbookHash);
+            MultipartBody requestBody = new MultipartBody.Builder()
+                    .setType(MultipartBody.FORM)
+                    .addFormDataPart("file", fileName != null ? fileName : "course.pdf", fileBody)
+                    .addFormDataPart("purpose", "user_data")
+                    .build();
+
+            OpenAiHttpClient.Result response = OpenAiHttpClient.await(openAiHttpClient.uploadFile(baseUrl, apiKey, requestBody));
+            String requestId = response.getRequestId();
+            String respBody = response.getBody();
+            log.info("Files API HTTP {} requestId={} bodyLen={}", response.getCode(), requestId, respBody != null ? respBody.length() : -1);
+            if (!response.isSuccessful()) {
+                String errMsg = null;
+                String errType = null;
+                String errCode = null;
+                try {
+                    if (respBody != null) {
+                        JsonNode errNode = objectMapper.readTree(respBody);
+                        if (errNode.has("error")) {
+                            JsonNode e = errNode.get("error");
+                            if (e.has("message")) errMsg = e.get("message").asText();
+                            if (e.has("type")) errType = e.get("type").asText();
+                            if (e.has("code")) errCode = e.get("code").asText();
+                        }
+                    }
+                } catch (Exception parseEx) {
+                    // ignore parse error
+                }
+                log.error("上传PDF到OpenAI失败，HTTP {}，requestId={}，type={}，code={}，错误信息={}",
+                        response.getCode(), requestId, errType, errCode, errMsg != null ? errMsg : respBody);
+                return null;
+            }
+            if (respBody == null) {
+                log.error("上传PDF到OpenAI失败：响应体为空，requestId={}", requestId);
+                return null;
+            }
+            uploadedBytesCounter.increment(fileBody.contentLength());
+            JsonNode node = objectMapper.readTree(respBody);
+            return node.has("id") ? node.get("id").asText() : null;
+        } catch (Exception e) {
+            log.error("上传PDF到OpenAI异常：url={}{} , fileName={}, message={}", baseUrl, "/files", fileName, e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.quiz.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* * * 共享的 OpenAI HTTP 客户端
+ * 全部 OpenAI 调用（/files、/responses、/chat/completions）共用一个连接池与 Dispatcher，支持 HTTP/2 多路复用；
+ * 提供基于 enqueue 的 CompletableFuture 异步接口，等待响应不占用业务线程。
+ * 按 endpoint 记录延迟直方图与在途请求数 */
+@Service
+@Slf4j
+public class OpenAiHttpClient {
+
+    public static final MediaType JSON = MediaType.parse("application/json");
+
+    private final OkHttpClient client;
+    private final OkHttpClient streamingClient;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public OpenAiHttpClient(@Value("${openai.http.max-concurrent:128}") int maxConcurrent,
+                            @Value("${openai.http.pool.max-idle:32}") int maxIdleConnections,
+                            @Value("${openai.http.pool.keep-alive-seconds:300}") long keepAliveSeconds,
+                            @Value("${openai.http.connect-timeout-seconds:30}") long connectTimeoutSeconds,
+                            @Value("${openai.http.read-timeout-seconds:120}") long readTimeoutSeconds,
+                            @Value("${openai.http.write-timeout-seconds:120}") long writeTimeoutSeconds,
+                            @Value("${openai.http.call-timeout-seconds:150}") long callTimeoutSeconds,
+                            @Value("${openai.http.stream-call-timeout-minutes:10}") long streamCallTimeoutMinutes,
+                            MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Dispatcher dispatcher = new Dispatcher();
+        // Everything goes to one host; the per-host default of 5 would queue the rest
+        dispatcher.setMaxRequests(maxConcurrent);
+        dispatcher.setMaxRequestsPerHost(maxConcurrent);
+        this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+                .readTimeout(Duration.ofSeconds(readTimeoutSeconds))
+                .writeTimeout(Duration.ofSeconds(writeTimeoutSeconds))
+                .callTimeout(Duration.ofSeconds(callTimeoutSeconds))
+                .build();
+        // Streams stay alive as long as deltas keep arriving (readTimeout); only cap the total
+        this.streamingClient = client.newBuilder()
+                .callTimeout(Duration.ofMinutes(streamCallTimeoutMinutes))
+                .build();
+        Gauge.builder("openai.http.queued", dispatcher, Dispatcher::queuedCallsCount)
+                .description("OpenAI calls waiting for a dispatcher slot")
+                .register(meterRegistry);
+        Gauge.builder("openai.http.connections", client.connectionPool(), ConnectionPool::connectionCount)
+                .register(meterRegistry);
+        Gauge.builder("openai.http.connections.idle", client.connectionPool(), ConnectionPool::idleConnectionCount)
+                .register(meterRegistry);
+        log.info("OpenAI HTTP client: maxConcurrent={}, maxIdle={}, keepAlive={}s, callTimeout={}s",
+                maxConcurrent, maxIdleConnections, keepAliveSeconds, callTimeoutSeconds);
+    }
+
+    /** Status, request id and fully read body of a finished call. */
+    public static class Result {
+        private final int code;
+        private final String requestId;
+        private final String body;
+
+        Result(int code, String requestId, String body) {
+            this.code = code;
+            this.requestId = requestId;
+            this.body = body;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+    }
+
+    /** An open streaming response; closing it releases the connection and records the call. */
+    public class Stream implements AutoCloseable {
+        private final String endpoint;
+        private final Response response;
+        private final AtomicInteger gauge;
+        private final long start;
+
+        Stream(String endpoint, Response response, AtomicInteger gauge, long start) {
+            this.endpoint = endpoint;
+            this.response = response;
+            this.gauge = gauge;
+            this.start = start;
+        }
+
+        public Response getResponse() {
+            return response;
+        }
+
+        @Override
+        public void close() {
+            response.close();
+            gauge.decrementAndGet();
+            record(endpoint, String.valueOf(response.code()), start);
+        }
+    }
+
+    public CompletableFuture<Result> responses(String baseUrl, String apiKey, String json, boolean pdfInput) {
+        Request.Builder builder = jsonPost(baseUrl + "/responses", apiKey, json);
+        if (pdfInput) {
+            builder.addHeader("OpenAI-Beta", "pdfs=v1");
+        }
+        return sendAsync("/responses", builder.build());
+    }
+
+    public CompletableFuture<Result> chatCompletions(String baseUrl, String apiKey, String json) {
+        return sendAsync("/chat/completions", jsonPost(baseUrl + "/chat/completions", apiKey, json).build());
+    }
+
+    public CompletableFuture<Result> uploadFile(String baseUrl, String apiKey, RequestBody multipart) {
+        Request request = new Request.Builder()
+                .url(baseUrl + "/files")
+                .post(multipart)
+                .addHeader("Authorization", "Bearer " + apiKey)
+                .build();
+        return sendAsync("/files", request);
+    }
+
+    public CompletableFuture<Result> getFile(String baseUrl, String apiKey, String fileId) {
+        Request request = new Request.Builder()
+                .url(baseUrl + "/files/" + fileId)
+                .get()
+                .addHeader("Authorization", "Bearer " + apiKey)
+                .build();
+        return sendAsync("/files/{id}", request);
+    }
+
+    public CompletableFuture<Result> deleteFile(String baseUrl, String apiKey, String fileId) {
+        Request request = new Request.Builder()
+                .url(baseUrl + "/files/" + fileId)
+                .delete()
+                .addHeader("Authorization", "Bearer " + apiKey)
+                .build();
+        return sendAsync("/files/{id}", request);
+    }
+
+    /**
+     * Streaming POST to /responses, executed on the calling thread; read the SSE body from
+     * the returned stream and close it. Latency covers the whole stream.
+     */
+    public Stream streamResponses(String baseUrl, String apiKey, String json, boolean pdfInput) throws IOException {
+        Request.Builder builder = jsonPost(baseUrl + "/responses", apiKey, json)
+                .addHeader("Accept", "text/event-stream");
+        if (pdfInput) {
+            builder.addHeader("OpenAI-Beta", "pdfs=v1");
+        }
+        String endpoint = "/responses:stream";
+        AtomicInteger gauge = inFlight(endpoint);
+        gauge.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return new Stream(endpoint, streamingClient.newCall(builder.build()).execute(), gauge, start);
+        } catch (IOException | RuntimeException e) {
+            gauge.decrementAndGet();
+            record(endpoint, "error", start);
+            throw e;
+        }
+    }
+
+    /**
+     * Enqueue the call and complete with the fully read response; no caller thread waits
+     * on the network. Completes exceptionally with the IOException on transport failures.
+     */
+    public CompletableFuture<Result> sendAsync(String endpoint, Request request) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        AtomicInteger gauge = inFlight(endpoint);
+        gauge.incrementAndGet();
+        long start = System.nanoTime();
+        Call call = client.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call c, Response response) {
+                // Metrics first so they are current by the time callers see the result
+                Result result;
+                try (response) {
+                    String body = response.body() != null ? response.body().string() : null;
+                    result = new Result(response.code(), response.header("x-request-id"), body);
+                } catch (IOException e) {
+                    onFailure(c, e);
+                    return;
+                }
+                gauge.decrementAndGet();
+                record(endpoint, String.valueOf(result.getCode()), start);
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Call c, IOException e) {
+                gauge.decrementAndGet();
+                record(endpoint, c.isCanceled() ? "canceled" : "error", start);
+                future.completeExceptionally(e);
+            }
+        });
+        // Cancelling the future (e.g. a caller timeout) aborts the HTTP call as well
+        future.whenComplete((r, t) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    /** Blocking form of {@link #sendAsync} for callers that need the answer before continuing. */
+    public static Result await(CompletableFuture<Result> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private Request.Builder jsonPost(String url, String apiKey, String json) {
+        return new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(json, JSON))
+                .addHeader("Authorization", "Bearer " + apiKey);
+    }
+
+    private AtomicInteger inFlight(String endpoint) {
+        return inFlight.computeIfAbsent(endpoint, e -> {
+            AtomicInteger gauge = new AtomicInteger();
+            Gauge.builder("openai.http.in-flight", gauge, AtomicInteger::get)
+                    .tag("endpoint", e)
+                    .description("OpenAI calls currently in flight")
+                    .register(meterRegistry);
+            return gauge;
+        });
+    }
+
+    private void record(String endpoint, String outcome, long startNanos) {
+        Timer.builder("openai.http.latency")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
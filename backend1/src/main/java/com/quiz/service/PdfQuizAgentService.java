@@ -5,6 +5,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.quiz.dto.*;
 import com.quiz.entity.*;
 import com.quiz.repository.*;
+import com.quiz.util.IncrementalQuizJsonParser;
+import com.quiz.storage.HandbookBlobStore;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
@@ -13,14 +15,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import okhttp3.MediaType;
-import okhttp3.MultipartBody;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
 import okhttp3.Response;
 
 import java.io.IOException;
@@ -41,9 +38,16 @@ public class PdfQuizAgentService {
 
     private final CourseRepository courseRepository;
     private final QuizRepository quizRepository;
-    private final QuestionRepository questionRepository;
-    private final QuestionOptionRepository questionOptionRepository;
+    private final GeneratedQuizJdbcRepository generatedQuizJdbcRepository;
     private final ObjectMapper objectMapper;
+    private final HandbookBlobStore handbookBlobStore;
+    private final HandbookTextService handbookTextService;
+    private final OpenAiFileRegistry openAiFileRegistry;
+    private final OpenAiHttpClient openAiHttpClient;
+    private final AgentJobService agentJobService;
+    private final SectionedQuizGenerationService sectionedQuizGenerationService;
+    // Resolved by parameter name against the beans in AgentExecutorConfig
+    private final ThreadPoolTaskExecutor agentSubtaskExecutor;
 
     @Value("${langchain4j.openai.api-key:}")
     private String openaiApiKey;
@@ -54,16 +58,8 @@ public class PdfQuizAgentService {
     @Value("${langchain4j.openai.base-url:https://api.openai.com/v1}")
     private String openaiBaseUrl;
 
-    // Store status of asynchronous processing tasks
-    private final Map<String, ProcessingStatus> taskStatusMap = new java.util.concurrent.ConcurrentHashMap<>();
-
-    // Add OkHttp client for Responses API
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(java.time.Duration.ofSeconds(30))
-            .readTimeout(java.time.Duration.ofSeconds(120))
-            .writeTimeout(java.time.Duration.ofSeconds(120))
-            .callTimeout(java.time.Duration.ofSeconds(150))
-            .build();
+    @Value("${agent.pdf.max-prompt-chars:10000}")
+    private int maxPromptChars;
 
     /**
      * OpenAI Course Description Generator API
@@ -125,15 +121,23 @@ public class PdfQuizAgentService {
         String generateQuizzes(@UserMessage String prompt);
     }
 
-    /* * * ProcessCourse的 PDF Content，GenerateQuiz */
-    @Transactional
+    /* * * ProcessCourse的 PDF Content，GenerateQuiz
+     * 不开启外层事务：各项写入在返回前均已各自提交，之后才写入 COMPLETED/FAILED，与 AgentJobWorker 一致 */
     public AgentProcessResult processCourse(AgentProcessRequest request) {
         String taskId = UUID.randomUUID().toString();
-        return processCourseWithTaskId(request, taskId);
+        agentJobService.registerRunning(request, taskId, "sync");
+        try {
+            AgentProcessResult result = processCourseWithTaskId(request, taskId);
+            agentJobService.finish(taskId, result);
+            return result;
+        } catch (RuntimeException e) {
+            agentJobService.fail(taskId, e.getMessage());
+            throw e;
+        }
     }
 
-    /* * * 使用指定的 taskId ProcessCourse PDF Content */
-    @Transactional
+    /* * * 使用指定的 taskId ProcessCourse PDF Content
+     * 不开启事务：AI 调用期间不占用数据库连接，各项写入自行提交；最终 COMPLETED/FAILED Status由调用方通过 AgentJobService.finish 写入 */
     public AgentProcessResult processCourseWithTaskId(AgentProcessRequest request, String taskId) {
         LocalDateTime startTime = LocalDateTime.now();
 
@@ -145,14 +149,14 @@ public class PdfQuizAgentService {
             Course course = courseRepository.findById(request.getCourseId())
                     .orElseThrow(() -> new RuntimeException("课程不存在: " + request.getCourseId()));
 
-            if (course.getHandbookFilePath() == null) {
+            if (!course.hasHandbook()) {
                 throw new RuntimeException("课程未上传PDF文件");
             }
 
             updateTaskStatus(taskId, "IN_PROGRESS", 20, "Reading PDF content...", request.getCourseId());
 
             // 2. 读取PDFContent
-            String pdfContent = readPdfContent(course.getHandbookFilePath());
+            String pdfContent = readPdfContent(course.getHandbookHash());
             if (pdfContent == null || pdfContent.trim().isEmpty()) {
                 log.warn("PDF文本读取失败或为空，继续使用文件输入进行AI处理");
             }
@@ -165,23 +169,60 @@ public class PdfQuizAgentService {
             if (Boolean.TRUE.equals(request.getEnableQuizGeneration())) {
                 CompletableFuture<Void> quizTask = CompletableFuture.runAsync(() -> {
                     try {
+                        // A retried task may find what an earlier attempt left: staged quizzes are discarded,
+                        // an activated set means generation already succeeded and must not be repeated
+                        generatedQuizJdbcRepository.deleteStagedByTaskId(taskId);
+                        List<AgentProcessResult.QuizSummary> activated = findActivatedQuizzes(taskId);
+                        if (!activated.isEmpty()) {
+                            log.info("Task {} already activated {} quizzes in an earlier attempt, skipping generation", taskId, activated.size());
+                            synchronized (quizSummaries) {
+                                quizSummaries.addAll(activated);
+                            }
+                            return;
+                        }
+
                         updateTaskStatus(taskId, "IN_PROGRESS", 40, "Generating quizzes with AI...", request.getCourseId());
-                        QuizGenerationRequest.QuizGenerationResponse generationResponse = 
-                                generateQuizzesWithAI(pdfContent, course, request, taskId);
-                        
-                        updateTaskStatus(taskId, "IN_PROGRESS", 60, "Saving quizzes to database...", request.getCourseId());
-                        List<AgentProcessResult.QuizSummary> generatedQuizzes = 
-                                saveGeneratedQuizzes(course, generationResponse, request.getOverwriteExisting());
-                        
-                        synchronized (quizSummaries) {
-                            quizSummaries.addAll(generatedQuizzes);
+                        // Each quiz is persisted as soon as the stream closes it, staged inactive under this task id;
+                        // the staged set is activated (replacing the old one with overwrite) only after generation succeeded
+                        boolean overwrite = Boolean.TRUE.equals(request.getOverwriteExisting());
+                        List<Long> stagedQuizIds = new ArrayList<>();
+                        try {
+                            QuizGenerationRequest.QuizGenerationResponse fallback = generateQuizzesWithAI(pdfContent, course, request, taskId,
+                                    generatedQuiz -> {
+                                        List<AgentProcessResult.QuizSummary> saved =
+                                                saveGeneratedQuizzes(course, List.of(generatedQuiz), taskId);
+                                        saved.forEach(summary -> stagedQuizIds.add(summary.getQuizId()));
+                                        int completed;
+                                        synchronized (quizSummaries) {
+                                            quizSummaries.addAll(saved);
+                                            completed = quizSummaries.size();
+                                        }
+                                        agentJobService.updateCompletedQuizzes(taskId, completed);
+                                        int progress = 50 + Math.min(40, 40 * completed / Math.max(1, request.getQuizCount()));
+                                        updateTaskStatus(taskId, "IN_PROGRESS", progress,
+                                                "Saved quiz " + completed + "/" + request.getQuizCount(), request.getCourseId());
+                                    });
+                            if (fallback != null) {
+                                updateTaskStatus(taskId, "IN_PROGRESS", 60, "Saving quizzes to database...", request.getCourseId());
+                                List<AgentProcessResult.QuizSummary> generatedQuizzes =
+                                        saveGeneratedQuizzes(course, fallback.getQuizzes(), taskId);
+                                generatedQuizzes.forEach(summary -> stagedQuizIds.add(summary.getQuizId()));
+                                synchronized (quizSummaries) {
+                                    quizSummaries.addAll(generatedQuizzes);
+                                }
+                                agentJobService.updateCompletedQuizzes(taskId, generatedQuizzes.size());
+                            }
+                            generatedQuizJdbcRepository.activateStaged(course.getId(), stagedQuizIds, overwrite);
+                        } catch (RuntimeException e) {
+                            generatedQuizJdbcRepository.deleteByIds(stagedQuizIds);
+                            throw e;
                         }
                         log.info("Quiz generation completed for course: {}", request.getCourseId());
                     } catch (Exception e) {
                         log.error("Quiz generation failed for course: {}, error: {}", request.getCourseId(), e.getMessage(), e);
                         throw new RuntimeException("Quiz generation failed: " + e.getMessage(), e);
                     }
-                });
+                }, agentSubtaskExecutor);
                 tasks.add(quizTask);
             }
             
@@ -191,7 +232,7 @@ public class PdfQuizAgentService {
                     try {
                         updateTaskStatus(taskId, "IN_PROGRESS", 45, "Generating course description with AI...", request.getCourseId());
                         String aiGeneratedDescription = generateCourseDescription(
-                            course.getHandbookFilePath(), 
+                            course.getHandbookHash(),
                             course.getHandbookFileName(),
                             course.getTitle()
                         );
@@ -209,7 +250,7 @@ public class PdfQuizAgentService {
                         log.error("Description generation failed for course: {}, error: {}", request.getCourseId(), e.getMessage(), e);
                         // Description生成失败不应该中断整个流程
                     }
-                });
+                }, agentSubtaskExecutor);
                 tasks.add(descriptionTask);
             }
             
@@ -219,7 +260,7 @@ public class PdfQuizAgentService {
                 CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
             }
 
-            updateTaskStatus(taskId, "COMPLETED", 100, "Processing completed", request.getCourseId());
+            updateTaskStatus(taskId, "IN_PROGRESS", 95, "Saving results...", request.getCourseId());
 
             LocalDateTime endTime = LocalDateTime.now();
             long processingTime = java.time.Duration.between(startTime, endTime).toMillis();
@@ -243,8 +284,6 @@ public class PdfQuizAgentService {
         } catch (Exception e) {
             log.error("处理课程失败: courseId={}, error={}", request.getCourseId(), e.getMessage(), e);
             
-            updateTaskStatus(taskId, "FAILED", 0, "Processing failed: " + e.getMessage(), request.getCourseId());
-
             return AgentProcessResult.builder()
                     .status("FAILED")
                     .taskId(taskId)
@@ -258,39 +297,32 @@ public class PdfQuizAgentService {
     }
 
     /* * * AsynchronousProcessCourse（生成并统一使用 taskId） */
-    public CompletableFuture<AgentProcessResult> processCourseAsync(AgentProcessRequest request) {
+    public String processCourseAsync(AgentProcessRequest request) {
         String taskId = UUID.randomUUID().toString();
-        return CompletableFuture.supplyAsync(() -> processCourseWithTaskId(request, taskId));
+        processCourseAsync(request, taskId);
+        return taskId;
     }
 
-    /* * * AsynchronousProcessCourse（使用外部提供的 taskId） */
-    public CompletableFuture<AgentProcessResult> processCourseAsync(AgentProcessRequest request, String taskId) {
-        updateTaskStatus(taskId, "PENDING", 0, "Task created, waiting to start", request.getCourseId());
-        return CompletableFuture.supplyAsync(() -> processCourseWithTaskId(request, taskId));
+    /* * * AsynchronousProcessCourse（使用外部提供的 taskId）
+     * Task写入 agent_jobs 后由 AgentJobWorker 领取执行；积压已满时抛出 TaskRejectedException，由调用方返回 429 */
+    public void processCourseAsync(AgentProcessRequest request, String taskId) {
+        agentJobService.enqueue(request, taskId);
     }
 
     /** * GetProcessStatus */
     public ProcessingStatus getProcessingStatus(String taskId) {
-        return taskStatusMap.get(taskId);
+        return agentJobService.getStatus(taskId);
     }
 
-    /* * * 读取PDFContent（简化Version，实际应该使用PDFParseLibrary） */
-    private String readPdfContent(byte[] pdfBytes) {
+    /* * * 读取PDFContent：优先使用 handbook_texts 缓存，未命中时提取并持久化 */
+    private String readPdfContent(String handbookHash) {
         try {
-            if (pdfBytes == null || pdfBytes.length == 0) {
-                log.error("PDF字节数组为空");
+            if (handbookHash == null || !handbookBlobStore.exists(handbookHash)) {
+                log.error("PDF文件不存在: hash={}", handbookHash);
                 return null;
             }
 
-            // Should use PDF parsing library like Apache PDFBox to parse PDF content here
-            // For demonstration, we assume PDF content can be directly converted to text
-            // In actual applications, need to use professional PDF parsing libraries
-            String content = new String(pdfBytes);
-            
-            // If content is too long, truncate to first 10000 characters
-            if (content.length() > 10000) {
-                content = content.substring(0, 10000) + "...";
-            }
+            String content = handbookTextService.getText(handbookHash, maxPromptChars);
             
             log.info("成功读取PDF内容，长度: {} 字符", content.length());
             return content;
@@ -300,9 +332,11 @@ public class PdfQuizAgentService {
         }
     }
 
-    /* * * 使用AIGenerateQuiz */
+    /* * * 使用AIGenerateQuiz
+     * 流式Parse，每个 quiz 闭合即交给 onQuiz；流式调用没有产出任何 quiz 时Return后备测验，否则Return null */
     private QuizGenerationRequest.QuizGenerationResponse generateQuizzesWithAI(
-            String pdfContent, Course course, AgentProcessRequest request, String taskId) {
+            String pdfContent, Course course, AgentProcessRequest request, String taskId,
+            java.util.function.Consumer<QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz> onQuiz) {
         try {
             // Environment variable fallback: prioritize property injection, then try reading from environment variables
             if (openaiApiKey == null || openaiApiKey.isEmpty() || "your-api-key-here".equals(openaiApiKey)) {
@@ -318,11 +352,29 @@ public class PdfQuizAgentService {
                 throw new RuntimeException("OpenAI API密钥未配置或无效");
             }
 
+            // Long handbooks: generate per section from the cached text instead of one call over the whole file
+            if (sectionedQuizGenerationService.shouldUse(course, request)) {
+                updateTaskStatus(taskId, "IN_PROGRESS", 45, "Generating quizzes section by section...", request.getCourseId());
+                SectionedQuizGenerationService.Result sectioned =
+                        sectionedQuizGenerationService.generate(course, request, openaiApiKey, (done, total) ->
+                                updateTaskStatus(taskId, "IN_PROGRESS", 45 + 30 * done / total,
+                                        "Generated section " + done + "/" + total, request.getCourseId()));
+                if (Boolean.TRUE.equals(request.getOverwriteExisting()) && !sectioned.isComplete()) {
+                    // A partial set must not replace the existing quizzes
+                    log.warn("Sectioned generation for course {} incomplete (failedSections={}, uniqueQuestions={}), falling back to single call",
+                            course.getId(), sectioned.getFailedSections(), sectioned.getUniqueQuestions());
+                } else if (!sectioned.getQuizzes().isEmpty()) {
+                    sectioned.getQuizzes().forEach(onQuiz);
+                    return null;
+                } else {
+                    log.warn("Sectioned generation produced no questions for course {}, falling back to single call", course.getId());
+                }
+            }
+
             // Upload PDF and call Responses API
             updateTaskStatus(taskId, "IN_PROGRESS", 45, "Uploading PDF to OpenAI...", request.getCourseId());
-            byte[] pdfBytes = course.getHandbookFilePath();
             String fileName = java.util.Optional.ofNullable(course.getHandbookFileName()).orElse("course.pdf");
-            String fileId = uploadPdfToOpenAI(pdfBytes, fileName);
+            String fileId = uploadPdfToOpenAI(course.getHandbookHash(), fileName);
             if (fileId == null) {
                 log.warn("上传PDF到OpenAI失败，终止任务");
                 updateTaskStatus(taskId, "FAILED", 46, "PDF upload failed, task terminated", request.getCourseId());
@@ -336,20 +388,18 @@ public class PdfQuizAgentService {
                     request
             );
 
-            updateTaskStatus(taskId, "IN_PROGRESS", 50, "Calling OpenAI Responses...", request.getCourseId());
-            String responseText = callOpenAIResponses(fileId, prompt, request);
-            if (responseText == null || responseText.isBlank()) {
-                log.warn("Responses API返回为空，切换到后备测验生成");
+            updateTaskStatus(taskId, "IN_PROGRESS", 50, "Calling OpenAI Responses (streaming)...", request.getCourseId());
+            int streamed = streamOpenAIResponses(fileId, prompt, request,
+                    quizNode -> onQuiz.accept(parseQuizFromJson(quizNode)));
+            if (streamed <= 0) {
+                log.warn("Responses API流式返回为空，切换到后备测验生成");
                 updateTaskStatus(taskId, "IN_PROGRESS", 52, "Response empty, using fallback generation", request.getCourseId());
                 return generateFallbackQuizzes(course, request);
             }
-            log.info("Responses 返回文本长度: {}", responseText.length());
-            updateTaskStatus(taskId, "IN_PROGRESS", 60, "Parsing AI response...", request.getCourseId());
-
-            QuizGenerationRequest.QuizGenerationResponse r = parseAIResponse(responseText);
-            int quizCountParsed = r.getQuizzes() != null ? r.getQuizzes().size() : 0;
-            updateTaskStatus(taskId, "IN_PROGRESS", 65, "Parsing completed, quiz count: " + quizCountParsed, request.getCourseId());
-            return r;
+            if (streamed < request.getQuizCount()) {
+                log.warn("Responses stream delivered {} of {} quizzes for course {}", streamed, request.getQuizCount(), course.getId());
+            }
+            return null;
         } catch (Exception e) {
             log.error("AI生成测验失败，任务终止", e);
             updateTaskStatus(taskId, "FAILED", 55, "AI generation failed: " + e.getMessage(), request.getCourseId());
@@ -379,79 +429,6 @@ public class PdfQuizAgentService {
         return prompt.toString();
     }
 
-    /** * ParseAIResponse */
-    private QuizGenerationRequest.QuizGenerationResponse parseAIResponse(String response) {
-        String sanitized = sanitizeJsonResponse(response);
-        try {
-            JsonNode rootNode = objectMapper.readTree(sanitized);
-            JsonNode quizzesNode = rootNode.get("quizzes");
-            
-            List<QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz> quizzes = new ArrayList<>();
-            
-            if (quizzesNode != null && quizzesNode.isArray()) {
-                for (JsonNode quizNode : quizzesNode) {
-                    QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz quiz = 
-                            parseQuizFromJson(quizNode);
-                    quizzes.add(quiz);
-                }
-            }
-            
-            return QuizGenerationRequest.QuizGenerationResponse.builder()
-                    .quizzes(quizzes)
-                    .processingNotes("AI生成成功")
-                    .build();
-                    
-        } catch (Exception e) {
-            log.error("解析AI响应失败: sanitizedHead={}, rawHead={}", truncate(sanitized, 300), truncate(response, 300), e);
-            throw new RuntimeException("解析AI响应失败: " + e.getMessage());
-        }
-    }
-
-    private String sanitizeJsonResponse(String response) {
-        if (response == null) return null;
-        String s = response.trim();
-        // Remove possible BOM
-        if (!s.isEmpty() && s.charAt(0) == '\uFEFF') {
-            s = s.substring(1).trim();
-        }
-        // Handle Markdown code blocks ```json ... ``` or ``` ... ```
-        if (s.startsWith("```") ) {
-            int first = s.indexOf("```");
-            int second = s.indexOf("```", first + 3);
-            if (second > first) {
-                String inner = s.substring(first + 3, second).trim();
-                // Remove optional language tags json/JSON
-                if (inner.toLowerCase(java.util.Locale.ROOT).startsWith("json")) {
-                    int nl = inner.indexOf('\n');
-                    if (nl >= 0) inner = inner.substring(nl + 1).trim();
-                    else inner = inner.replaceFirst("(?i)^json\\s*", "").trim();
-                }
-                s = inner;
-            } else {
-                s = s.replace("```", "").trim();
-            }
-        }
-        // Remove possible remaining start/end code fences again
-        s = s.replaceFirst("(?s)^\\s*```(?:json|JSON)?\\s*", "");
-        s = s.replaceFirst("(?s)\\s*```\\s*$", "");
-        
-        // If still contains non-JSON wrapped text, try to extract first object or array
-        if (!s.isEmpty() && s.charAt(0) != '{' && s.charAt(0) != '[') {
-            int objStart = s.indexOf('{');
-            int objEnd = s.lastIndexOf('}');
-            int arrStart = s.indexOf('[');
-            int arrEnd = s.lastIndexOf(']');
-            String candidate = null;
-            if (objStart >= 0 && objEnd > objStart) {
-                candidate = s.substring(objStart, objEnd + 1);
-            } else if (arrStart >= 0 && arrEnd > arrStart) {
-                candidate = s.substring(arrStart, arrEnd + 1);
-            }
-            if (candidate != null) s = candidate.trim();
-        }
-        return s;
-    }
-
     private String truncate(String s, int max) {
         if (s == null) return "null";
         return s.length() > max ? s.substring(0, max) + "...[truncated]" : s;
@@ -563,36 +540,26 @@ public class PdfQuizAgentService {
                 .build();
     }
 
-    /* * * SaveGenerate的Quiz到DataLibrary */
-    @Transactional
+    /* * * SaveGenerate的Quiz到DataLibrary
+     * 写入的是标记了 taskId 的未激活暂存测验，由调用方在生成成功后通过 activateStaged 统一激活 */
     private List<AgentProcessResult.QuizSummary> saveGeneratedQuizzes(
-            Course course, 
-            QuizGenerationRequest.QuizGenerationResponse generationResponse, 
-            Boolean overwriteExisting) {
-        
-        List<AgentProcessResult.QuizSummary> summaries = new ArrayList<>();
-        
-        // If need to override existing quiz, delete first
-        if (overwriteExisting) {
-            List<Quiz> existingQuizzes = quizRepository.findByCourseIdAndIsActiveTrue(course.getId());
-            for (Quiz quiz : existingQuizzes) {
-                // Delete related questions and options (cascade delete should handle automatically)
-                quizRepository.delete(quiz);
-            }
-        }
+            Course course,
+            List<QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz> generatedQuizzes,
+            String taskId) {
         
-        // Save newly generated quiz
-        for (QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz generatedQuiz : generationResponse.getQuizzes()) {
+        // Build the whole entity graph in memory, then write it with one JDBC batch per table
+        List<Quiz> quizzes = new ArrayList<>();
+        for (QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz generatedQuiz : generatedQuizzes) {
             Quiz quiz = new Quiz();
             quiz.setTitle(generatedQuiz.getTitle());
             quiz.setDescription(generatedQuiz.getDescription());
             quiz.setCourse(course);
+            quiz.setIsActive(false);
+            quiz.setGenerationTaskId(taskId);
             quiz.setCreatedAt(LocalDateTime.now());
             quiz.setUpdatedAt(LocalDateTime.now());
-            
-            Quiz savedQuiz = quizRepository.save(quiz);
-            
-            // Save question
+            quiz.setQuestions(new ArrayList<>());
+
             int questionOrder = 1;
             for (QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz.GeneratedQuestion generatedQuestion : generatedQuiz.getQuestions()) {
                 Question question = new Question();
@@ -600,30 +567,35 @@ public class PdfQuizAgentService {
                 question.setType(Question.QuestionType.valueOf(generatedQuestion.getType()));
                 question.setPoints(generatedQuestion.getPoints());
                 question.setExplanation(generatedQuestion.getExplanation());
-                question.setQuiz(savedQuiz);
+                question.setQuiz(quiz);
                 question.setOrderIndex(questionOrder++);
                 question.setIsActive(true);
                 question.setCreatedAt(LocalDateTime.now());
                 question.setUpdatedAt(LocalDateTime.now());
-                
-                Question savedQuestion = questionRepository.save(question);
-                
-                // Save option
+                question.setOptions(new ArrayList<>());
+
                 int optionOrder = 1;
                 for (QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz.GeneratedQuestion.GeneratedOption generatedOption : generatedQuestion.getOptions()) {
                     QuestionOption option = new QuestionOption();
                     option.setOptionText(generatedOption.getText());
                     option.setIsCorrect(generatedOption.getIsCorrect());
-                    option.setQuestion(savedQuestion);
+                    option.setQuestion(question);
                     option.setOrderIndex(optionOrder++);
                     option.setCreatedAt(LocalDateTime.now());
                     option.setUpdatedAt(LocalDateTime.now());
-                    
-                    questionOptionRepository.save(option);
+                    question.getOptions().add(option);
                 }
+                quiz.getQuestions().add(question);
             }
-            
-            // Add to summary
+            quizzes.add(quiz);
+        }
+
+        generatedQuizJdbcRepository.insertAll(quizzes);
+
+        List<AgentProcessResult.QuizSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < quizzes.size(); i++) {
+            Quiz savedQuiz = quizzes.get(i);
+            QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz generatedQuiz = generatedQuizzes.get(i);
             summaries.add(AgentProcessResult.QuizSummary.builder()
                     .quizId(savedQuiz.getId())
                     .title(savedQuiz.getTitle())
@@ -637,44 +609,139 @@ public class PdfQuizAgentService {
         return summaries;
     }
 
-    /* * * UpdateTaskStatus */
+    /* * * 某Task在之前的尝试中已激活的测验 */
+    private List<AgentProcessResult.QuizSummary> findActivatedQuizzes(String taskId) {
+        List<AgentProcessResult.QuizSummary> summaries = new ArrayList<>();
+        for (Object[] row : quizRepository.findActiveSummariesByGenerationTaskId(taskId)) {
+            summaries.add(AgentProcessResult.QuizSummary.builder()
+                    .quizId((Long) row[0])
+                    .title((String) row[1])
+                    .description((String) row[2])
+                    .createdAt((LocalDateTime) row[3])
+                    .questionCount(((Number) row[4]).intValue())
+                    .build());
+        }
+        return summaries;
+    }
+
+    /* * * UpdateTaskStatus（写入 agent_jobs，独立事务提交） */
     private void updateTaskStatus(String taskId, String status, Integer progress, String message, Long courseId) {
-        ProcessingStatus processingStatus = taskStatusMap.computeIfAbsent(taskId, k -> 
-                ProcessingStatus.builder()
-                        .taskId(taskId)
-                        .createdAt(LocalDateTime.now())
-                        .courseId(courseId)
-                        .build());
-        
-        processingStatus.setStatus(status);
-        processingStatus.setProgress(progress);
-        processingStatus.setMessage(message);
-        processingStatus.setUpdatedAt(LocalDateTime.now());
-        
-        log.info("任务状态更新: taskId={}, status={}, progress={}%, message={}", 
-                taskId, status, progress, message);
+        agentJobService.updateProgress(taskId, status, progress, message);
+        log.info("任务状态更新: taskId={}, courseId={}, status={}, progress={}%, message={}",
+                taskId, courseId, status, progress, message);
     }
 
-/* * * UploadPDF到OpenAI并Returnfile_id */
-private String uploadPdfToOpenAI(byte[] pdfBytes, String fileName) {
-    try {
-        RequestBody fileBody = RequestBody.create(pdfBytes, MediaType.parse("application/pdf"));
-        MultipartBody requestBody = new MultipartBody.Builder()
-                .setType(MultipartBody.FORM)
-                .addFormDataPart("file", fileName, fileBody)
-                .addFormDataPart("purpose", "user_data")
-                .build();
+/* * * UploadPDF到OpenAI并Returnfile_id（经 OpenAiFileRegistry 去重，同一手册只Upload一次） */
+private String uploadPdfToOpenAI(String handbookHash, String fileName) {
+    return openAiFileRegistry.getOrUpload(handbookHash, fileName, openaiBaseUrl, openaiApiKey);
+}
 
-        Request request = new Request.Builder()
-                .url(openaiBaseUrl + "/files")
-                .post(requestBody)
-                .addHeader("Authorization", "Bearer " + openaiApiKey)
-                .build();
+    /* * * Build Responses API Request体（Quiz JSON Schema + 文件Input），流式与非流式调用共用 */
+    private com.fasterxml.jackson.databind.node.ObjectNode buildQuizResponsesRequest(String fileId, String prompt, AgentProcessRequest request) {
+        // Build request JSON
+        com.fasterxml.jackson.databind.node.ObjectNode root = objectMapper.createObjectNode();
+        root.put("model", openaiModel);
+        com.fasterxml.jackson.databind.node.ObjectNode textCfg = root.putObject("text");
+        com.fasterxml.jackson.databind.node.ObjectNode textFormat = textCfg.putObject("format");
+        // Use strict JSON Schema to constrain output structure
+        textFormat.put("type", "json_schema");
+        textFormat.put("name", "QuizSchema");
+        // API requires schema/strict to be directly under text.format
+        textFormat.put("strict", true);
+        com.fasterxml.jackson.databind.node.ObjectNode schema = textFormat.putObject("schema");
+        // quizzes top-level array structure
+        schema.put("type", "object");
+        schema.put("additionalProperties", false);
+        com.fasterxml.jackson.databind.node.ArrayNode required = schema.putArray("required");
+        required.add("quizzes");
+        com.fasterxml.jackson.databind.node.ObjectNode properties = schema.putObject("properties");
+        // quizzes array - add length constraints
+        com.fasterxml.jackson.databind.node.ObjectNode quizzesProp = properties.putObject("quizzes");
+        quizzesProp.put("type", "array");
+        quizzesProp.put("minItems", request.getQuizCount());
+        quizzesProp.put("maxItems", request.getQuizCount());
+        com.fasterxml.jackson.databind.node.ObjectNode quizzesItems = quizzesProp.putObject("items");
+        quizzesItems.put("type", "object");
+        quizzesItems.put("additionalProperties", false);
+        com.fasterxml.jackson.databind.node.ArrayNode quizRequired = quizzesItems.putArray("required");
+        quizRequired.add("title");
+        quizRequired.add("description");
+        quizRequired.add("difficulty");
+        quizRequired.add("questions");
+        com.fasterxml.jackson.databind.node.ObjectNode quizProps = quizzesItems.putObject("properties");
+        quizProps.putObject("title").put("type", "string");
+        quizProps.putObject("description").put("type", "string");
+        // Difficulty as enum
+        com.fasterxml.jackson.databind.node.ObjectNode difficultyProp = quizProps.putObject("difficulty");
+        difficultyProp.put("type", "string");
+        com.fasterxml.jackson.databind.node.ArrayNode difficultyEnum = difficultyProp.putArray("enum");
+        difficultyEnum.add("easy"); difficultyEnum.add("medium"); difficultyEnum.add("hard");
+        // questions array - add length constraints
+        com.fasterxml.jackson.databind.node.ObjectNode questionsProp = quizProps.putObject("questions");
+        questionsProp.put("type", "array");
+        questionsProp.put("minItems", request.getQuestionsPerQuiz());
+        questionsProp.put("maxItems", request.getQuestionsPerQuiz());
+        com.fasterxml.jackson.databind.node.ObjectNode questionItems = questionsProp.putObject("items");
+        questionItems.put("type", "object");
+        questionItems.put("additionalProperties", false);
+        com.fasterxml.jackson.databind.node.ArrayNode questionRequired = questionItems.putArray("required");
+        questionRequired.add("text");
+        questionRequired.add("type");
+        questionRequired.add("options");
+        questionRequired.add("explanation");
+        questionRequired.add("points");
+        com.fasterxml.jackson.databind.node.ObjectNode questionProps = questionItems.putObject("properties");
+        questionProps.putObject("text").put("type", "string");
+        // Question type limited to SINGLE_CHOICE
+        com.fasterxml.jackson.databind.node.ObjectNode qTypeProp = questionProps.putObject("type");
+        qTypeProp.put("type", "string");
+        com.fasterxml.jackson.databind.node.ArrayNode qTypeEnum = qTypeProp.putArray("enum");
+        qTypeEnum.add("SINGLE_CHOICE");
+        // options array - fixed 4 options
+        com.fasterxml.jackson.databind.node.ObjectNode optionsProp = questionProps.putObject("options");
+        optionsProp.put("type", "array");
+        optionsProp.put("minItems", 4);
+        optionsProp.put("maxItems", 4);
+        com.fasterxml.jackson.databind.node.ObjectNode optionItems = optionsProp.putObject("items");
+        optionItems.put("type", "object");
+        optionItems.put("additionalProperties", false);
+        com.fasterxml.jackson.databind.node.ArrayNode optionRequired = optionItems.putArray("required");
+        optionRequired.add("text");
+        optionRequired.add("isCorrect");
+        com.fasterxml.jackson.databind.node.ObjectNode optionProps = optionItems.putObject("properties");
+        optionProps.putObject("text").put("type", "string");
+        optionProps.putObject("isCorrect").put("type", "boolean");
+        // explanation and points
+        questionProps.putObject("explanation").put("type", "string");
+        questionProps.putObject("points").put("type", "integer");
+        
+        // Continue constructing input message
+        com.fasterxml.jackson.databind.node.ArrayNode input = root.putArray("input");
+        com.fasterxml.jackson.databind.node.ObjectNode systemMsg = input.addObject();
+        systemMsg.put("role", "system");
+        com.fasterxml.jackson.databind.node.ArrayNode systemContent = systemMsg.putArray("content");
+        systemContent.addObject().put("type", "input_text").put("text", "你是一个专业的教育内容分析师和测验生成专家。根据提供的PDF内容生成高质量测验。只返回严格符合 Schema 的纯 JSON，不要使用Markdown代码块、反引号或任何解释。");
+        com.fasterxml.jackson.databind.node.ObjectNode userMsg = input.addObject();
+        userMsg.put("role", "user");
+        com.fasterxml.jackson.databind.node.ArrayNode userContent = userMsg.putArray("content");
+        userContent.addObject().put("type", "input_text").put("text", prompt);
+        userContent.addObject().put("type", "input_file").put("file_id", fileId);
+        return root;
+    }
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            String requestId = response.header("x-request-id");
-            String respBody = response.body() != null ? response.body().string() : null;
-            log.info("Files API HTTP {} requestId={} bodyLen={}", response.code(), requestId, respBody != null ? respBody.length() : -1);
+/* * * 调用OpenAI Responses API（FileInput）并ReturnTextOutput - 带ConfigurationConstraint */
+    private String callOpenAIResponses(String fileId, String prompt, AgentProcessRequest request) {
+        try {
+            com.fasterxml.jackson.databind.node.ObjectNode root = buildQuizResponsesRequest(fileId, prompt, request);
+            String json = objectMapper.writeValueAsString(root);
+            log.info("Calling Responses API: url={}{} , model={}, fileId={}, promptLen={}, headers=OpenAI-Beta:pdfs=v1", openaiBaseUrl, "/responses", openaiModel, fileId, (prompt != null ? prompt.length() : 0));
+            log.debug("Responses payload (truncated): {}", json.length() > 2000 ? json.substring(0, 2000) + "...[truncated]" : json);
+
+            OpenAiHttpClient.Result response = OpenAiHttpClient.await(
+                    openAiHttpClient.responses(openaiBaseUrl, openaiApiKey, json, true));
+            String requestId = response.getRequestId();
+            String respBody = response.getBody();
+            log.info("Responses API HTTP {} requestId={} bodyLen={}", response.getCode(), requestId, respBody != null ? respBody.length() : -1);
             if (!response.isSuccessful()) {
                 String errMsg = null;
                 String errType = null;
@@ -692,204 +759,175 @@ private String uploadPdfToOpenAI(byte[] pdfBytes, String fileName) {
                         }
                     }
                 } catch (Exception parseEx) {
-                    // ignore parse error
+                    // ignore
                 }
                 if (respBody != null) {
                     String truncated = respBody.length() > 2000 ? respBody.substring(0, 2000) + "...[truncated]" : respBody;
-                    log.error("Files API error raw body (truncated): {}", truncated);
+                    log.error("Responses API error raw body (truncated): {}", truncated);
                 }
-                log.error("上传PDF到OpenAI失败，HTTP {}，requestId={}，type={}，code={}，param={}，错误信息={}",
-                        response.code(), requestId, errType, errCode, errParam, errMsg != null ? errMsg : respBody);
+                log.error("调用Responses API失败，HTTP {}，requestId={}，type={}，code={}，param={}，错误信息={}",
+                        response.getCode(), requestId, errType, errCode, errParam, errMsg != null ? errMsg : respBody);
                 return null;
             }
             if (respBody == null) {
-                log.error("上传PDF到OpenAI失败：响应体为空，requestId={}", requestId);
+                log.error("调用Responses API失败：响应体为空，requestId={}", requestId);
                 return null;
             }
             JsonNode node = objectMapper.readTree(respBody);
-            return node.has("id") ? node.get("id").asText() : null;
+            // Responses API output parsing: support output_text and output_json
+            String output = null;
+            if (node.has("output_text")) {
+                output = node.get("output_text").asText();
+            }
+            if ((output == null || output.isBlank()) && node.has("output") && node.get("output").isArray() && node.get("output").size() > 0) {
+                JsonNode first = node.get("output").get(0);
+                if (first.has("content") && first.get("content").isArray()) {
+                    for (JsonNode part : first.get("content")) {
+                        if (part.has("type")) {
+                            String t = part.get("type").asText();
+                            if ("output_text".equals(t) && part.has("text")) {
+                                output = part.get("text").asText();
+                                break;
+                            } else if ("output_json".equals(t) && part.has("json")) {
+                                try {
+                                    // Serialize JSON node to string
+                                    output = objectMapper.writeValueAsString(part.get("json"));
+                                    break;
+                                } catch (Exception ignore) {
+                                    // If serialization fails, continue trying other content blocks
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return output;
+        } catch (java.net.SocketTimeoutException te) {
+            log.error("调用Responses API超时：url={}{} , model={}, fileId={}, message={}", openaiBaseUrl, "/responses", openaiModel, fileId, te.getMessage(), te);
+            return null;
+        } catch (Exception e) {
+            log.error("调用Responses API异常：url={}{} , model={}, fileId={}, message={}", openaiBaseUrl, "/responses", openaiModel, fileId, e.getMessage(), e);
+            return null;
         }
-    } catch (Exception e) {
-        log.error("上传PDF到OpenAI异常：url={}{} , fileName={}, message={}", openaiBaseUrl, "/files", fileName, e.getMessage(), e);
-        return null;
     }
-}
 
-/* * * 调用OpenAI Responses API（FileInput）并ReturnTextOutput - 带ConfigurationConstraint */
-    private String callOpenAIResponses(String fileId, String prompt, AgentProcessRequest request) {
-        try {
-            // Build request JSON
-            com.fasterxml.jackson.databind.node.ObjectNode root = objectMapper.createObjectNode();
-            root.put("model", openaiModel);
-            com.fasterxml.jackson.databind.node.ObjectNode textCfg = root.putObject("text");
-            com.fasterxml.jackson.databind.node.ObjectNode textFormat = textCfg.putObject("format");
-            // Use strict JSON Schema to constrain output structure
-            textFormat.put("type", "json_schema");
-            textFormat.put("name", "QuizSchema");
-            // API requires schema/strict to be directly under text.format
-            textFormat.put("strict", true);
-            com.fasterxml.jackson.databind.node.ObjectNode schema = textFormat.putObject("schema");
-            // quizzes top-level array structure
-            schema.put("type", "object");
-            schema.put("additionalProperties", false);
-            com.fasterxml.jackson.databind.node.ArrayNode required = schema.putArray("required");
-            required.add("quizzes");
-            com.fasterxml.jackson.databind.node.ObjectNode properties = schema.putObject("properties");
-            // quizzes array - add length constraints
-            com.fasterxml.jackson.databind.node.ObjectNode quizzesProp = properties.putObject("quizzes");
-            quizzesProp.put("type", "array");
-            quizzesProp.put("minItems", request.getQuizCount());
-            quizzesProp.put("maxItems", request.getQuizCount());
-            com.fasterxml.jackson.databind.node.ObjectNode quizzesItems = quizzesProp.putObject("items");
-            quizzesItems.put("type", "object");
-            quizzesItems.put("additionalProperties", false);
-            com.fasterxml.jackson.databind.node.ArrayNode quizRequired = quizzesItems.putArray("required");
-            quizRequired.add("title");
-            quizRequired.add("description");
-            quizRequired.add("difficulty");
-            quizRequired.add("questions");
-            com.fasterxml.jackson.databind.node.ObjectNode quizProps = quizzesItems.putObject("properties");
-            quizProps.putObject("title").put("type", "string");
-            quizProps.putObject("description").put("type", "string");
-            // Difficulty as enum
-            com.fasterxml.jackson.databind.node.ObjectNode difficultyProp = quizProps.putObject("difficulty");
-            difficultyProp.put("type", "string");
-            com.fasterxml.jackson.databind.node.ArrayNode difficultyEnum = difficultyProp.putArray("enum");
-            difficultyEnum.add("easy"); difficultyEnum.add("medium"); difficultyEnum.add("hard");
-            // questions array - add length constraints
-            com.fasterxml.jackson.databind.node.ObjectNode questionsProp = quizProps.putObject("questions");
-            questionsProp.put("type", "array");
-            questionsProp.put("minItems", request.getQuestionsPerQuiz());
-            questionsProp.put("maxItems", request.getQuestionsPerQuiz());
-            com.fasterxml.jackson.databind.node.ObjectNode questionItems = questionsProp.putObject("items");
-            questionItems.put("type", "object");
-            questionItems.put("additionalProperties", false);
-            com.fasterxml.jackson.databind.node.ArrayNode questionRequired = questionItems.putArray("required");
-            questionRequired.add("text");
-            questionRequired.add("type");
-            questionRequired.add("options");
-            questionRequired.add("explanation");
-            questionRequired.add("points");
-            com.fasterxml.jackson.databind.node.ObjectNode questionProps = questionItems.putObject("properties");
-            questionProps.putObject("text").put("type", "string");
-            // Question type limited to SINGLE_CHOICE
-            com.fasterxml.jackson.databind.node.ObjectNode qTypeProp = questionProps.putObject("type");
-            qTypeProp.put("type", "string");
-            com.fasterxml.jackson.databind.node.ArrayNode qTypeEnum = qTypeProp.putArray("enum");
-            qTypeEnum.add("SINGLE_CHOICE");
-            // options array - fixed 4 options
-            com.fasterxml.jackson.databind.node.ObjectNode optionsProp = questionProps.putObject("options");
-            optionsProp.put("type", "array");
-            optionsProp.put("minItems", 4);
-            optionsProp.put("maxItems", 4);
-            com.fasterxml.jackson.databind.node.ObjectNode optionItems = optionsProp.putObject("items");
-            optionItems.put("type", "object");
-            optionItems.put("additionalProperties", false);
-            com.fasterxml.jackson.databind.node.ArrayNode optionRequired = optionItems.putArray("required");
-            optionRequired.add("text");
-            optionRequired.add("isCorrect");
-            com.fasterxml.jackson.databind.node.ObjectNode optionProps = optionItems.putObject("properties");
-            optionProps.putObject("text").put("type", "string");
-            optionProps.putObject("isCorrect").put("type", "boolean");
-            // explanation and points
-            questionProps.putObject("explanation").put("type", "string");
-            questionProps.putObject("points").put("type", "integer");
-            
-            // Continue constructing input message
-            com.fasterxml.jackson.databind.node.ArrayNode input = root.putArray("input");
-            com.fasterxml.jackson.databind.node.ObjectNode systemMsg = input.addObject();
-            systemMsg.put("role", "system");
-            com.fasterxml.jackson.databind.node.ArrayNode systemContent = systemMsg.putArray("content");
-            systemContent.addObject().put("type", "input_text").put("text", "你是一个专业的教育内容分析师和测验生成专家。根据提供的PDF内容生成高质量测验。只返回严格符合 Schema 的纯 JSON，不要使用Markdown代码块、反引号或任何解释。");
-            com.fasterxml.jackson.databind.node.ObjectNode userMsg = input.addObject();
-            userMsg.put("role", "user");
-            com.fasterxml.jackson.databind.node.ArrayNode userContent = userMsg.putArray("content");
-            userContent.addObject().put("type", "input_text").put("text", prompt);
-            userContent.addObject().put("type", "input_file").put("file_id", fileId);
+    /** Wraps an exception thrown by the onQuiz callback so it is not mistaken for a stream failure. */
+    private static class QuizHandlingException extends RuntimeException {
+        QuizHandlingException(RuntimeException cause) {
+            super(cause);
+        }
+    }
 
-            String json = objectMapper.writeValueAsString(root);
-            log.info("Calling Responses API: url={}{} , model={}, fileId={}, promptLen={}, headers=OpenAI-Beta:pdfs=v1", openaiBaseUrl, "/responses", openaiModel, fileId, (prompt != null ? prompt.length() : 0));
-            log.debug("Responses payload (truncated): {}", json.length() > 2000 ? json.substring(0, 2000) + "...[truncated]" : json);
+    /** The stream failed or was cut off after some quizzes were already handed to onQuiz. */
+    private static class PartialStreamException extends RuntimeException {
+        PartialStreamException(String message) {
+            super(message);
+        }
+    }
 
-            RequestBody body = RequestBody.create(json, MediaType.parse("application/json"));
-            Request httpRequest = new Request.Builder()
-                    .url(openaiBaseUrl + "/responses")
-                    .post(body)
-                    .addHeader("Authorization", "Bearer " + openaiApiKey)
-                    .addHeader("OpenAI-Beta", "pdfs=v1")
-                    .build();
+    /* * * 以 SSE 流式调用 Responses API，增量Parse输出文本
+     * 每个 quiz 对象闭合即回调 onQuiz；流以 response.completed 结束时Return成功处理的 quiz 数量，调用失败且没有任何 quiz 时Return -1。
+     * 已回调过 quiz 后流失败、被截断或未见 response.completed 时抛出异常，调用方据此丢弃已暂存的测验；
+     * onQuiz 抛出的异常（如保存失败）原样抛给调用方，不计入流式错误 */
+    private int streamOpenAIResponses(String fileId, String prompt, AgentProcessRequest request,
+                                      java.util.function.Consumer<JsonNode> onQuiz) {
+        long start = System.currentTimeMillis();
+        long firstQuizAt = -1;
+        long textChars = 0;
+        IncrementalQuizJsonParser quizParser = null;
+        try {
+            com.fasterxml.jackson.databind.node.ObjectNode root = buildQuizResponsesRequest(fileId, prompt, request);
+            root.put("stream", true);
+            String json = objectMapper.writeValueAsString(root);
+            log.info("Streaming Responses API: url={}{} , model={}, fileId={}, promptLen={}", openaiBaseUrl, "/responses", openaiModel, fileId, (prompt != null ? prompt.length() : 0));
 
-            try (Response response = httpClient.newCall(httpRequest).execute()) {
+            try (OpenAiHttpClient.Stream stream = openAiHttpClient.streamResponses(openaiBaseUrl, openaiApiKey, json, true)) {
+                Response response = stream.getResponse();
                 String requestId = response.header("x-request-id");
-                String respBody = response.body() != null ? response.body().string() : null;
-                log.info("Responses API HTTP {} requestId={} bodyLen={}", response.code(), requestId, respBody != null ? respBody.length() : -1);
-                if (!response.isSuccessful()) {
-                    String errMsg = null;
-                    String errType = null;
-                    String errCode = null;
-                    String errParam = null;
+                if (!response.isSuccessful() || response.body() == null) {
+                    String errBody = response.body() != null ? response.body().string() : null;
+                    log.error("流式调用Responses API失败，HTTP {}，requestId={}，body={}", response.code(), requestId, truncate(errBody, 2000));
+                    return -1;
+                }
+
+                int[] count = {0};
+                quizParser = new IncrementalQuizJsonParser(objectMapper, node -> {
                     try {
-                        if (respBody != null) {
-                            JsonNode errNode = objectMapper.readTree(respBody);
-                            if (errNode.has("error")) {
-                                JsonNode e = errNode.get("error");
-                                if (e.has("message")) errMsg = e.get("message").asText();
-                                if (e.has("type")) errType = e.get("type").asText();
-                                if (e.has("code")) errCode = e.get("code").asText();
-                                if (e.has("param")) errParam = e.get("param").asText();
-                            }
-                        }
-                    } catch (Exception parseEx) {
-                        // ignore
+                        onQuiz.accept(node);
+                    } catch (RuntimeException e) {
+                        throw new QuizHandlingException(e);
                     }
-                    if (respBody != null) {
-                        String truncated = respBody.length() > 2000 ? respBody.substring(0, 2000) + "...[truncated]" : respBody;
-                        log.error("Responses API error raw body (truncated): {}", truncated);
+                    // Only quizzes that were actually handled (saved) count
+                    count[0]++;
+                });
+                okio.BufferedSource source = response.body().source();
+                String endedWith = null;
+                String line;
+                while ((line = source.readUtf8Line()) != null) {
+                    // SSE: only "data:" lines carry payload; "event:" duplicates the JSON type field
+                    if (!line.startsWith("data:")) {
+                        continue;
                     }
-                    log.error("调用Responses API失败，HTTP {}，requestId={}，type={}，code={}，param={}，错误信息={}",
-                            response.code(), requestId, errType, errCode, errParam, errMsg != null ? errMsg : respBody);
-                    return null;
-                }
-                if (respBody == null) {
-                    log.error("调用Responses API失败：响应体为空，requestId={}", requestId);
-                    return null;
-                }
-                JsonNode node = objectMapper.readTree(respBody);
-                // Responses API output parsing: support output_text and output_json
-                String output = null;
-                if (node.has("output_text")) {
-                    output = node.get("output_text").asText();
-                }
-                if ((output == null || output.isBlank()) && node.has("output") && node.get("output").isArray() && node.get("output").size() > 0) {
-                    JsonNode first = node.get("output").get(0);
-                    if (first.has("content") && first.get("content").isArray()) {
-                        for (JsonNode part : first.get("content")) {
-                            if (part.has("type")) {
-                                String t = part.get("type").asText();
-                                if ("output_text".equals(t) && part.has("text")) {
-                                    output = part.get("text").asText();
-                                    break;
-                                } else if ("output_json".equals(t) && part.has("json")) {
-                                    try {
-                                        // Serialize JSON node to string
-                                        output = objectMapper.writeValueAsString(part.get("json"));
-                                        break;
-                                    } catch (Exception ignore) {
-                                        // If serialization fails, continue trying other content blocks
-                                    }
-                                }
-                            }
+                    String data = line.substring(5).trim();
+                    if (data.isEmpty() || "[DONE]".equals(data)) {
+                        continue;
+                    }
+                    JsonNode event = objectMapper.readTree(data);
+                    String type = event.path("type").asText();
+                    if ("response.output_text.delta".equals(type)) {
+                        String delta = event.path("delta").asText("");
+                        textChars += delta.length();
+                        int before = count[0];
+                        quizParser.feed(delta);
+                        if (firstQuizAt < 0 && count[0] > before) {
+                            firstQuizAt = System.currentTimeMillis() - start;
+                            log.info("Responses stream first quiz after {} ms, requestId={}", firstQuizAt, requestId);
                         }
+                    } else if ("response.completed".equals(type)) {
+                        JsonNode usage = event.path("response").path("usage");
+                        log.info("Responses stream completed: requestId={}, quizzes={}, textChars={}, inputTokens={}, outputTokens={}, totalMs={}, firstQuizMs={}",
+                                requestId, count[0], textChars, usage.path("input_tokens").asLong(-1),
+                                usage.path("output_tokens").asLong(-1), System.currentTimeMillis() - start, firstQuizAt);
+                        endedWith = type;
+                        break;
+                    } else if ("response.failed".equals(type) || "response.incomplete".equals(type) || "error".equals(type)) {
+                        log.error("Responses stream ended with {}: requestId={}, quizzesSoFar={}, event={}",
+                                type, requestId, count[0], truncate(data, 2000));
+                        endedWith = type;
+                        break;
                     }
                 }
-                return output;
+                if (count[0] == 0) {
+                    return -1;
+                }
+                if (!"response.completed".equals(endedWith)) {
+                    // Partial output must not replace the existing quizzes
+                    throw new PartialStreamException("Responses stream ended with "
+                            + (endedWith != null ? endedWith : "end of input") + " after " + count[0] + " quizzes");
+                }
+                return count[0];
             }
-        } catch (java.net.SocketTimeoutException te) {
-            log.error("调用Responses API超时：url={}{} , model={}, fileId={}, message={}", openaiBaseUrl, "/responses", openaiModel, fileId, te.getMessage(), te);
-            return null;
+        } catch (QuizHandlingException e) {
+            // Saving a streamed quiz failed: that is not a transport problem the fallback could cover
+            throw (RuntimeException) e.getCause();
+        } catch (PartialStreamException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("调用Responses API异常：url={}{} , model={}, fileId={}, message={}", openaiBaseUrl, "/responses", openaiModel, fileId, e.getMessage(), e);
-            return null;
+            int emitted = quizParser != null ? quizParser.getEmittedCount() : 0;
+            log.error("流式调用Responses API异常：url={}{} , model={}, fileId={}, quizzesSoFar={}, message={}",
+                    openaiBaseUrl, "/responses", openaiModel, fileId, emitted, e.getMessage(), e);
+            if (emitted > 0) {
+                throw new PartialStreamException("Responses stream failed after " + emitted + " quizzes: " + e.getMessage());
+            }
+            return -1;
+        } finally {
+            if (quizParser != null) {
+                try {
+                    quizParser.close();
+                } catch (java.io.IOException ignore) {
+                    // parser holds no external resources
+                }
+            }
         }
     }
 
@@ -928,61 +966,53 @@ private String uploadPdfToOpenAI(byte[] pdfBytes, String fileName) {
             String json = objectMapper.writeValueAsString(root);
             log.info("Calling Responses API for description: url={}{} , model={}, fileId={}, promptLen={}", openaiBaseUrl, "/responses", openaiModel, fileId, (prompt != null ? prompt.length() : 0));
 
-            RequestBody body = RequestBody.create(json, MediaType.parse("application/json"));
-            Request httpRequest = new Request.Builder()
-                    .url(openaiBaseUrl + "/responses")
-                    .post(body)
-                    .addHeader("Authorization", "Bearer " + openaiApiKey)
-                    .addHeader("OpenAI-Beta", "pdfs=v1")
-                    .build();
-
-            try (Response response = httpClient.newCall(httpRequest).execute()) {
-                String requestId = response.header("x-request-id");
-                String respBody = response.body() != null ? response.body().string() : null;
-                log.info("Description Responses API HTTP {} requestId={} bodyLen={}", response.code(), requestId, respBody != null ? respBody.length() : -1);
-                
-                if (!response.isSuccessful()) {
-                    log.error("Description Responses API failed: HTTP {}, body: {}", response.code(), respBody);
-                    return null;
-                }
+            OpenAiHttpClient.Result response = OpenAiHttpClient.await(
+                    openAiHttpClient.responses(openaiBaseUrl, openaiApiKey, json, true));
+            String requestId = response.getRequestId();
+            String respBody = response.getBody();
+            log.info("Description Responses API HTTP {} requestId={} bodyLen={}", response.getCode(), requestId, respBody != null ? respBody.length() : -1);
+            
+            if (!response.isSuccessful()) {
+                log.error("Description Responses API failed: HTTP {}, body: {}", response.getCode(), respBody);
+                return null;
+            }
 
-                if (respBody == null || respBody.isBlank()) {
-                    log.warn("Description Responses API returned empty body");
-                    return null;
-                }
+            if (respBody == null || respBody.isBlank()) {
+                log.warn("Description Responses API returned empty body");
+                return null;
+            }
 
-                // Parse response to extract description text (same logic as Quiz generation)
-                JsonNode responseJson = objectMapper.readTree(respBody);
-                String output = null;
-                
-                // Try output_text field first
-                if (responseJson.has("output_text")) {
-                    output = responseJson.get("output_text").asText();
-                }
-                
-                // If not found, try output array structure
-                if ((output == null || output.isBlank()) && responseJson.has("output") && responseJson.get("output").isArray() && responseJson.get("output").size() > 0) {
-                    JsonNode first = responseJson.get("output").get(0);
-                    if (first.has("content") && first.get("content").isArray()) {
-                        for (JsonNode part : first.get("content")) {
-                            if (part.has("type")) {
-                                String t = part.get("type").asText();
-                                if ("output_text".equals(t) && part.has("text")) {
-                                    output = part.get("text").asText();
-                                    break;
-                                }
+            // Parse response to extract description text (same logic as Quiz generation)
+            JsonNode responseJson = objectMapper.readTree(respBody);
+            String output = null;
+            
+            // Try output_text field first
+            if (responseJson.has("output_text")) {
+                output = responseJson.get("output_text").asText();
+            }
+            
+            // If not found, try output array structure
+            if ((output == null || output.isBlank()) && responseJson.has("output") && responseJson.get("output").isArray() && responseJson.get("output").size() > 0) {
+                JsonNode first = responseJson.get("output").get(0);
+                if (first.has("content") && first.get("content").isArray()) {
+                    for (JsonNode part : first.get("content")) {
+                        if (part.has("type")) {
+                            String t = part.get("type").asText();
+                            if ("output_text".equals(t) && part.has("text")) {
+                                output = part.get("text").asText();
+                                break;
                             }
                         }
                     }
                 }
-                
-                if (output != null && !output.isBlank()) {
-                    log.info("Generated course description length: {}", output.length());
-                    return output;
-                } else {
-                    log.warn("Unexpected response structure for description generation");
-                    return null;
-                }
+            }
+            
+            if (output != null && !output.isBlank()) {
+                log.info("Generated course description length: {}", output.length());
+                return output;
+            } else {
+                log.warn("Unexpected response structure for description generation");
+                return null;
             }
         } catch (Exception e) {
             log.error("Error calling OpenAI Responses API for description: {}", e.getMessage(), e);
@@ -993,7 +1023,7 @@ private String uploadPdfToOpenAI(byte[] pdfBytes, String fileName) {
     /**
      * Generate course description using AI based on PDF content
      */
-    public String generateCourseDescription(byte[] pdfBytes, String fileName, String courseTitle) {
+    public String generateCourseDescription(String handbookHash, String fileName, String courseTitle) {
         try {
             // Environment variable fallback
             if (openaiApiKey == null || openaiApiKey.isEmpty() || "your-api-key-here".equals(openaiApiKey)) {
@@ -1009,7 +1039,7 @@ private String uploadPdfToOpenAI(byte[] pdfBytes, String fileName) {
             }
 
             // Upload PDF to OpenAI
-            String fileId = uploadPdfToOpenAI(pdfBytes, fileName);
+            String fileId = uploadPdfToOpenAI(handbookHash, fileName);
             if (fileId == null) {
                 log.warn("上传PDF到OpenAI失败，无法生成课程描述");
                 throw new RuntimeException("上传PDF到OpenAI失败");
@@ -1043,11 +1073,11 @@ private String uploadPdfToOpenAI(byte[] pdfBytes, String fileName) {
             return "本课程基于上传的PDF内容设计，涵盖相关领域的核心知识点和实践技能。";
         }
     }
-public void preflightCheckPdfWithOpenAI(byte[] pdfBytes, String fileName, String prompt) {
+public void preflightCheckPdfWithOpenAI(String handbookHash, String fileName, String prompt) {
     if (openaiApiKey == null || openaiApiKey.isEmpty() || "your-api-key-here".equals(openaiApiKey)) {
         throw new RuntimeException("OpenAI API密钥未配置或无效");
     }
-    String fid = uploadPdfToOpenAI(pdfBytes, fileName != null ? fileName : "course.pdf");
+    String fid = uploadPdfToOpenAI(handbookHash, fileName != null ? fileName : "course.pdf");
     if (fid == null) {
         throw new RuntimeException("上传PDF到OpenAI失败");
     }
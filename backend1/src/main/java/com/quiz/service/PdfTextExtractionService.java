@@ -0,0 +1,203 @@
+package com.quiz.service;
+
+import com.quiz.dto.PdfPageText;
+import com.quiz.storage.HandbookBlobStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/* * * PDF 文本提取Service
+ * 基于 PDFBox 逐页提取，文档从File随机Read、对象缓存落临时File，大手册的堆内存占用有上限 */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PdfTextExtractionService {
+
+    private final HandbookBlobStore handbookBlobStore;
+
+    @Value("${pdf.extraction.max-chars-per-page:4000}")
+    private int maxCharsPerPage;
+
+    /**
+     * Stream the pages of a stored handbook. The returned stream holds the
+     * document open and must be closed (try-with-resources).
+     */
+    public Stream<PdfPageText> streamPages(String handbookHash) throws IOException {
+        Resource resource = handbookBlobStore.openResource(handbookHash);
+        if (resource.isFile()) {
+            return streamPages(resource.getFile().toPath(), null);
+        }
+        try (InputStream in = resource.getInputStream()) {
+            return streamPages(in);
+        }
+    }
+
+    /**
+     * Stream the pages of an arbitrary PDF stream; the content is spooled to a
+     * temporary file that is deleted when the returned stream is closed.
+     */
+    public Stream<PdfPageText> streamPages(InputStream pdfStream) throws IOException {
+        Path tmp = Files.createTempFile("pdf-extract-", ".pdf");
+        try {
+            Files.copy(pdfStream, tmp, StandardCopyOption.REPLACE_EXISTING);
+            return streamPages(tmp, tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Extract text of a stored handbook up to maxTotalChars, page by page.
+     */
+    public String extractText(String handbookHash, int maxTotalChars) throws IOException {
+        try (Stream<PdfPageText> pages = streamPages(handbookHash)) {
+            return joinPages(pages, maxTotalChars);
+        }
+    }
+
+    /**
+     * Extract text of an arbitrary PDF stream up to maxTotalChars, page by page.
+     */
+    public String extractText(InputStream pdfStream, int maxTotalChars) throws IOException {
+        try (Stream<PdfPageText> pages = streamPages(pdfStream)) {
+            return joinPages(pages, maxTotalChars);
+        }
+    }
+
+    private String joinPages(Stream<PdfPageText> pages, int maxTotalChars) {
+        StringBuilder sb = new StringBuilder();
+        Iterator<PdfPageText> it = pages.iterator();
+        while (it.hasNext() && sb.length() < maxTotalChars) {
+            PdfPageText page = it.next();
+            if (page.getText().isBlank()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append("\n\n");
+            }
+            sb.append(page.getText());
+        }
+        if (sb.length() > maxTotalChars) {
+            sb.setLength(maxTotalChars);
+            sb.append("...");
+        }
+        return sb.toString();
+    }
+
+    private Stream<PdfPageText> streamPages(Path file, Path deleteOnClose) throws IOException {
+        long openStart = System.nanoTime();
+        PDDocument document;
+        try {
+            document = Loader.loadPDF(new RandomAccessReadBufferedFile(file.toFile()), null, null, null,
+                    IOUtils.createTempFileOnlyStreamCache());
+        } catch (IOException e) {
+            if (deleteOnClose != null) {
+                Files.deleteIfExists(deleteOnClose);
+            }
+            throw e;
+        }
+        int pageCount = document.getNumberOfPages();
+        log.debug("Opened PDF {} with {} pages in {} ms", file.getFileName(), pageCount, (System.nanoTime() - openStart) / 1_000_000);
+
+        PageIterator iterator = new PageIterator(document, pageCount);
+        return StreamSupport.stream(
+                        Spliterators.spliterator(iterator, pageCount, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    iterator.logSummary(file);
+                    try {
+                        document.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close PDF document {}: {}", file.getFileName(), e.getMessage());
+                    } finally {
+                        if (deleteOnClose != null) {
+                            try {
+                                Files.deleteIfExists(deleteOnClose);
+                            } catch (IOException e) {
+                                log.warn("Failed to delete temporary PDF {}: {}", deleteOnClose, e.getMessage());
+                            }
+                        }
+                    }
+                });
+    }
+
+    /* * * 按需逐页提取，调用方停止消费即不再Parse后续页 */
+    private class PageIterator implements Iterator<PdfPageText> {
+        private final PDDocument document;
+        private final int pageCount;
+        private final PDFTextStripper stripper;
+        private int nextPage = 1;
+        private long totalMillis;
+
+        PageIterator(PDDocument document, int pageCount) throws IOException {
+            this.document = document;
+            this.pageCount = pageCount;
+            this.stripper = new PDFTextStripper();
+            this.stripper.setSortByPosition(true);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextPage <= pageCount;
+        }
+
+        @Override
+        public PdfPageText next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int page = nextPage++;
+            long start = System.nanoTime();
+            String text;
+            try {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                text = stripper.getText(document).trim();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to extract text from page " + page, e);
+            }
+            boolean truncated = text.length() > maxCharsPerPage;
+            if (truncated) {
+                text = text.substring(0, maxCharsPerPage);
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            totalMillis += millis;
+            log.debug("Extracted PDF page {}/{}: {} chars in {} ms{}", page, pageCount, text.length(), millis,
+                    truncated ? " (truncated)" : "");
+            return PdfPageText.builder()
+                    .pageNumber(page)
+                    .text(text)
+                    .truncated(truncated)
+                    .extractionMillis(millis)
+                    .build();
+        }
+
+        void logSummary(Path file) {
+            int extracted = nextPage - 1;
+            if (extracted > 0) {
+                log.info("PDF text extraction: file={}, pages={}/{}, totalMs={}, avgMsPerPage={}",
+                        file.getFileName(), extracted, pageCount, totalMillis, totalMillis / extracted);
+            }
+        }
+    }
+}
@@ -3,11 +3,13 @@ package com.quiz.service;
 import com.quiz.dto.SubmitAnswerRequest;
 import com.quiz.dto.QuizSubmissionResult;
 import com.quiz.entity.*;
+import com.quiz.event.QuizSubmittedEvent;
 import com.quiz.repository.*;
 import com.quiz.service.CertificateService;
 import com.quiz.util.AnswerValidationUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -44,6 +46,12 @@ public class QuizAttemptService {
     @Autowired
     private CertificateService certificateService;
 
+    @Autowired
+    private ComplianceFactService complianceFactService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public List<QuizAttempt> getAttemptsByUser(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -174,13 +182,21 @@ public class QuizAttemptService {
         }
         
         // Update QuizAttempt score info and persist pass status
+        boolean alreadyCounted = attempt.getCompletedAt() != null;
         attempt.setScore(totalScore);
+        attempt.setTotalPoints(maxPossibleScore);
+        attempt.setPercentage(maxPossibleScore > 0 ? (double) totalScore / maxPossibleScore * 100 : 0.0);
         attempt.setCompletedAt(LocalDateTime.now());
         // Pass rule: total score/full score >= 80%
         boolean isPassed = maxPossibleScore > 0 && ((double) totalScore / (double) maxPossibleScore) >= 0.8;
         attempt.setIsPassed(isPassed);
         quizAttemptRepository.save(attempt);
 
+        // Keep the compliance fact tables in step, in this transaction; an attempt is counted once
+        if (!alreadyCounted) {
+            complianceFactService.recordSubmission(attempt, attempt.getQuiz().getCourse().getId());
+        }
+
         // If this submission causes user to pass all quizzes under the course, automatically issue certificate
         try {
             Long userId = attempt.getUser().getId();
@@ -213,6 +229,14 @@ public class QuizAttemptService {
             log.warn("Post-submit auto-award check failed: {}", ex.getMessage());
         }
         
+        eventPublisher.publishEvent(new QuizSubmittedEvent(
+            attempt.getId(),
+            attempt.getUser().getId(),
+            attempt.getQuiz().getId(),
+            attempt.getQuiz().getCourse().getId(),
+            Boolean.TRUE.equals(attempt.getIsPassed())
+        ));
+
         // Return submission result
         return new QuizSubmissionResult(
             attempt.getId(),
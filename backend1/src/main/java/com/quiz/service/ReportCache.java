@@ -0,0 +1,216 @@
+package com.quiz.service;
+
+import com.quiz.event.CourseChangedEvent;
+import com.quiz.event.QuizSubmittedEvent;
+import com.quiz.event.UserChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/* * * ComplianceReport结果缓存
+ * 每个Report一个 key；测验Commit、用户新增/调部门/Delete、Course启停等事件使相关 key 失效。
+ * 失效或超过最长缓存时间后继续返回旧值，同时只启动一次后台重算；尚无缓存值时并发请求合并为一次计算。
+ * 缓存值在跨日（含跨月）后作废，月度趋势窗口与 lastUpdated 不会停留在前一天 */
+@Service
+@Slf4j
+public class ReportCache {
+
+    public static final String ORGANIZATION = "organization";
+    public static final String DEPARTMENTS = "departments";
+    public static final String COMPLIANCE_CATEGORIES = "compliance-categories";
+    /** Prefix; the trend window is appended, e.g. "monthly-trend:12". */
+    public static final String MONTHLY_TREND = "monthly-trend";
+
+    private final boolean enabled;
+    private final long maxAgeMillis;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService refreshExecutor;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public ReportCache(@Value("${report.cache.enabled:true}") boolean enabled,
+                       @Value("${report.cache.max-age-seconds:300}") long maxAgeSeconds,
+                       @Value("${report.cache.refresh-threads:2}") int refreshThreads,
+                       MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxAgeMillis = Duration.ofSeconds(maxAgeSeconds).toMillis();
+        this.meterRegistry = meterRegistry;
+        this.refreshExecutor = Executors.newFixedThreadPool(refreshThreads, runnable -> {
+            Thread thread = new Thread(runnable, "report-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Cached result of {@code loader} for {@code key}. A current value is returned as is; an
+     * invalidated or older than max-age one is still returned while a single background
+     * reload runs. Without a value from today, concurrent callers share one load on the
+     * first caller's thread.
+     */
+    public Map<String, Object> get(String key, Supplier<Map<String, Object>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+        Snapshot snapshot = entry.snapshot;
+        long now = System.currentTimeMillis();
+        // Date-based figures (trend window, lastUpdated) must not be served across midnight
+        if (snapshot != null && now < snapshot.expiresAt) {
+            if (snapshot.version == entry.version.get() && now - snapshot.loadedAt < maxAgeMillis) {
+                count(key, "hit");
+            } else {
+                count(key, "stale");
+                load(key, entry, loader, true);
+            }
+            return snapshot.value;
+        }
+
+        count(key, "miss");
+        try {
+            return load(key, entry, loader, false).join();
+        } catch (CompletionException e) {
+            if (entry.snapshot == null) {
+                // Don't keep entries for keys that never loaded (e.g. rejected parameters)
+                entries.remove(key, entry);
+            }
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuizSubmitted(QuizSubmittedEvent event) {
+        invalidate(key -> true);
+    }
+
+    // Head counts and department membership feed every report's denominators
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidate(key -> true);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        switch (event.getType()) {
+            // A cascade delete removes attempts, so every figure may change
+            case DELETED -> invalidate(key -> true);
+            case CREATED, UPDATED, ACTIVATED, DEACTIVATED -> invalidate(COMPLIANCE_CATEGORIES::equals);
+            default -> {
+                // Handbook replacements do not affect reports
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private void invalidate(Predicate<String> keys) {
+        entries.forEach((key, entry) -> {
+            if (keys.test(key)) {
+                entry.version.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Start a load unless one is already running for the entry, and return the running one.
+     * The snapshot records the version seen before loading, so an invalidation that lands
+     * mid-load leaves the new value stale and triggers another reload on the next read.
+     */
+    private CompletableFuture<Map<String, Object>> load(String key, Entry entry,
+                                                        Supplier<Map<String, Object>> loader,
+                                                        boolean background) {
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> running = entry.loading.compareAndExchange(null, future);
+        if (running != null) {
+            return running;
+        }
+        Runnable task = () -> {
+            long version = entry.version.get();
+            // Taken before loading: a value computed just before midnight belongs to that day
+            long loadedAt = System.currentTimeMillis();
+            long expiresAt = nextMidnight();
+            long start = System.nanoTime();
+            try {
+                Map<String, Object> value = loader.get();
+                entry.snapshot = new Snapshot(value, version, loadedAt, expiresAt);
+                entry.loading.set(null);
+                log.debug("Report {} computed in {} ms", key, (System.nanoTime() - start) / 1_000_000);
+                future.complete(value);
+            } catch (RuntimeException e) {
+                entry.loading.set(null);
+                if (background) {
+                    log.warn("Background refresh of report {} failed, serving the previous value: {}", key, e.getMessage());
+                }
+                future.completeExceptionally(e);
+            }
+        };
+        if (background) {
+            try {
+                refreshExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; keep serving the previous value
+                entry.loading.set(null);
+                future.completeExceptionally(e);
+            }
+        } else {
+            task.run();
+        }
+        return future;
+    }
+
+    private static long nextMidnight() {
+        return LocalDate.now().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void count(String key, String result) {
+        int sep = key.indexOf(':');
+        String report = sep < 0 ? key : key.substring(0, sep);
+        counters.computeIfAbsent(report + "|" + result,
+                k -> meterRegistry.counter("report.cache.lookups", "report", report, "result", result))
+                .increment();
+    }
+
+    private static class Entry {
+        // Bumped on every invalidation of this key
+        final AtomicLong version = new AtomicLong();
+        final AtomicReference<CompletableFuture<Map<String, Object>>> loading = new AtomicReference<>();
+        volatile Snapshot snapshot;
+    }
+
+    private static class Snapshot {
+        final Map<String, Object> value;
+        final long version;
+        final long loadedAt;
+        final long expiresAt;
+
+        Snapshot(Map<String, Object> value, long version, long loadedAt, long expiresAt) {
+            this.value = value;
+            this.version = version;
+            this.loadedAt = loadedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
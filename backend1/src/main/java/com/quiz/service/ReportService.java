@@ -1,21 +1,38 @@
 package com.quiz.service;
 
-import com.quiz.entity.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.quiz.entity.Course;
-import com.quiz.entity.QuizAttempt;
+import com.quiz.entity.ComplianceMonth;
+import com.quiz.entity.User;
 import com.quiz.repository.UserRepository;
 import com.quiz.repository.CourseRepository;
+import com.quiz.repository.ComplianceDepartmentCourseRepository;
+import com.quiz.repository.ComplianceDepartmentRepository;
+import com.quiz.repository.ComplianceMonthRepository;
+import com.quiz.repository.ComplianceUserRepository;
+import com.quiz.repository.EmployeeReportSort;
 import com.quiz.repository.QuizAttemptRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/* * * ComplianceReport
+ * 读取预聚合Fact表（见 ComplianceFactService），每个Report读取行数与部门数、Course数或月份数成正比，而不是与测验Commit数成正比。
+ * Fact表尚未就绪（启动回填未完成或失败）时改用 QuizAttemptRepository 上的数据库侧聚合查询 */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -23,27 +40,32 @@ public class ReportService {
 
     private final UserRepository userRepository;
     private final CourseRepository courseRepository;
+    private final ComplianceUserRepository complianceUserRepository;
+    private final ComplianceDepartmentRepository complianceDepartmentRepository;
+    private final ComplianceDepartmentCourseRepository complianceDepartmentCourseRepository;
+    private final ComplianceMonthRepository complianceMonthRepository;
     private final QuizAttemptRepository quizAttemptRepository;
+    private final ComplianceFactService complianceFactService;
+
+    private final ObjectMapper objectMapper;
+
+    private static final Set<Integer> TREND_WINDOWS = Set.of(6, 12, 24);
+    private static final int MAX_EMPLOYEE_PAGE_SIZE = 1000;
+    private static final int EXPORT_BATCH_SIZE = 1000;
+    // Sort value standing in for "never submitted"; matches the literal in EmployeeReportSort.SUBMIT_DATE
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+    // window -> trend, valid while its version (current month bucket, user count, rebuilds) holds
+    private final Map<Integer, CachedTrend> monthlyTrendCache = new ConcurrentHashMap<>();
 
     /* * * Get组织ComplianceReportData */
     @Transactional(readOnly = true)
     public Map<String, Object> getOrganizationReportData() {
         Map<String, Object> data = new HashMap<>();
         
-        // TODO: Translate - Get all users
-        List<User> allUsers = userRepository.findAll();
-        int totalEmployees = allUsers.size();
+        int totalEmployees = (int) userRepository.count();
         
-        // Get all quiz submission records
-        List<QuizAttempt> allAttempts = quizAttemptRepository.findAll();
-        
-        // Calculate completed and pending report counts
-        Set<Long> usersWithCompletedReports = allAttempts.stream()
-                .filter(attempt -> attempt.getIsPassed())
-                .map(attempt -> attempt.getUser().getId())
-                .collect(Collectors.toSet());
-        
-        int completedReports = usersWithCompletedReports.size();
+        // Users with at least one passed attempt
+        int completedReports = countCompletedUsers();
         int pendingReports = totalEmployees - completedReports;
         
         // Calculate overall compliance rate
@@ -64,32 +86,18 @@ public class ReportService {
     public Map<String, Object> getDepartmentStats() {
         Map<String, Object> data = new HashMap<>();
         
-        // Group users by department
-        List<User> allUsers = userRepository.findAll();
-        Map<String, List<User>> usersByDepartment = allUsers.stream()
-                .filter(user -> user.getDepartment() != null && !user.getDepartment().trim().isEmpty())
-                .collect(Collectors.groupingBy(User::getDepartment));
-        
-        // Get all passed quiz submissions
-        List<QuizAttempt> passedAttempts = quizAttemptRepository.findAll().stream()
-                .filter(attempt -> attempt.getIsPassed())
-                .collect(Collectors.toList());
-        
-        Set<Long> usersWithPassedAttempts = passedAttempts.stream()
-                .map(attempt -> attempt.getUser().getId())
-                .collect(Collectors.toSet());
+        Map<String, Integer> completedByDepartment = countCompletedUsersByDepartment();
         
         List<Map<String, Object>> departmentStats = new ArrayList<>();
         
-        for (Map.Entry<String, List<User>> entry : usersByDepartment.entrySet()) {
-            String department = entry.getKey();
-            List<User> deptUsers = entry.getValue();
+        for (Object[] row : userRepository.countByDepartment()) {
+            String department = (String) row[0];
+            if (department == null || department.trim().isEmpty()) {
+                continue;
+            }
             
-            int total = deptUsers.size();
-            int completed = (int) deptUsers.stream()
-                    .mapToLong(User::getId)
-                    .filter(usersWithPassedAttempts::contains)
-                    .count();
+            int total = ((Number) row[1]).intValue();
+            int completed = completedByDepartment.getOrDefault(department, 0);
             int pending = total - completed;
             int rate = total > 0 ? (int) Math.round((double) completed / total * 100) : 0;
             
@@ -107,87 +115,100 @@ public class ReportService {
         return data;
     }
 
-    /* * * Get员工ReportDetails */
+    /* * * Get员工ReportDetails（keyset分页）
+     * 部门、状态过滤与排序都在数据库中完成；cursor 编码上一页最后一行的排序值与用户 id */
     @Transactional(readOnly = true)
-    public Map<String, Object> getEmployeeReports(String departmentFilter) {
-        Map<String, Object> data = new HashMap<>();
+    public Map<String, Object> getEmployeeReportPage(String departmentFilter, String statusFilter, String sortBy,
+                                                     boolean descending, String cursor, int limit) {
+        EmployeeReportSort sort = EmployeeReportSort.fromKey(sortBy);
+        String department = departmentFilter(departmentFilter);
+        String status = statusFilter(statusFilter);
+        int pageSize = Math.max(1, Math.min(limit, MAX_EMPLOYEE_PAGE_SIZE));
+        EmployeeRow after = cursor != null && !cursor.isBlank() ? decodeCursor(cursor, sort, descending) : null;
         
-        List<User> users = userRepository.findAll();
-        
-        // Filter users if department filter is specified
-        if (departmentFilter != null && !departmentFilter.equals("all")) {
-            users = users.stream()
-                    .filter(user -> departmentFilter.equals(user.getDepartment()))
-                    .collect(Collectors.toList());
+        // One extra row tells whether another page follows
+        List<EmployeeRow> rows = findEmployeeRows(department, status, sort, descending, after, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
         }
         
-        // Get all quiz submission records
-        List<QuizAttempt> allAttempts = quizAttemptRepository.findAll();
-        Map<Long, List<QuizAttempt>> attemptsByUser = allAttempts.stream()
-                .collect(Collectors.groupingBy(attempt -> attempt.getUser().getId()));
-        
         List<Map<String, Object>> employeeReports = new ArrayList<>();
-        
-        for (User user : users) {
-            List<QuizAttempt> userAttempts = attemptsByUser.getOrDefault(user.getId(), Collections.emptyList());
-            
-            // Calculate user's highest score and status
-            OptionalDouble avgScore = userAttempts.stream()
-                    .filter(attempt -> attempt.getIsPassed())
-                    .mapToDouble(QuizAttempt::getPercentage)
-                    .average();
-            
-            boolean hasPassedAttempts = userAttempts.stream()
-                    .anyMatch(QuizAttempt::getIsPassed);
-            
-            String status = hasPassedAttempts ? "completed" : "pending";
-            Integer score = avgScore.isPresent() ? (int) Math.round(avgScore.getAsDouble()) : null;
-            
-            // Get recent submission date
-            String submitDate = userAttempts.stream()
-                    .filter(attempt -> attempt.getCompletedAt() != null)
-                    .max(Comparator.comparing(QuizAttempt::getCompletedAt))
-                    .map(attempt -> attempt.getCompletedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")))
-                    .orElse(null);
-            
-            Map<String, Object> employeeReport = new HashMap<>();
-            employeeReport.put("id", user.getId());
-            employeeReport.put("name", user.getFullName() != null ? user.getFullName() : user.getUsername());
-            employeeReport.put("department", user.getDepartment() != null ? user.getDepartment() : "Unassigned");
-            employeeReport.put("status", status);
-            employeeReport.put("score", score);
-            employeeReport.put("submitDate", submitDate);
-            
-            employeeReports.add(employeeReport);
+        for (EmployeeRow row : rows) {
+            employeeReports.add(row.toReport());
         }
         
+        Map<String, Object> data = new HashMap<>();
         data.put("employeeReports", employeeReports);
+        data.put("hasMore", hasMore);
+        data.put("nextCursor", hasMore ? encodeCursor(rows.get(rows.size() - 1), sort, descending) : null);
+        data.put("limit", pageSize);
         return data;
     }
 
+    /* * * 导出员工Report（csv / ndjson）
+     * 参数在调用时校验；返回的 body 按 keyset 分批读取并逐行写出，内存占用与员工总数无关。
+     * Fact表尚未就绪时只聚合一次全部员工再写出，避免每批都重新聚合 */
+    public StreamingResponseBody exportEmployeeReports(String departmentFilter, String statusFilter, String sortBy,
+                                                       boolean descending, String format) {
+        EmployeeReportSort sort = EmployeeReportSort.fromKey(sortBy);
+        String department = departmentFilter(departmentFilter);
+        String status = statusFilter(statusFilter);
+        if (!"csv".equals(format) && !"ndjson".equals(format)) {
+            throw new RuntimeException("Invalid format. Must be one of: csv, ndjson");
+        }
+        boolean csv = format.equals("csv");
+        
+        return out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (csv) {
+                writer.write("id,name,department,status,score,submitDate\n");
+            }
+            if (!complianceFactService.isReady()) {
+                for (EmployeeRow row : aggregateEmployeeRows(department, status, sort, descending)) {
+                    writeEmployeeRow(writer, row, csv);
+                }
+                writer.flush();
+                return;
+            }
+            EmployeeRow after = null;
+            List<EmployeeRow> batch;
+            do {
+                batch = findEmployeeRows(department, status, sort, descending, after, EXPORT_BATCH_SIZE);
+                for (EmployeeRow row : batch) {
+                    writeEmployeeRow(writer, row, csv);
+                }
+                writer.flush();
+                after = batch.isEmpty() ? null : batch.get(batch.size() - 1);
+            } while (batch.size() == EXPORT_BATCH_SIZE);
+        };
+    }
+
+    private void writeEmployeeRow(Writer writer, EmployeeRow row, boolean csv) throws IOException {
+        Map<String, Object> report = row.toReport();
+        if (csv) {
+            writer.write(report.values().stream().map(ReportService::csvField).collect(Collectors.joining(",")));
+        } else {
+            writer.write(objectMapper.writeValueAsString(report));
+        }
+        writer.write('\n');
+    }
+
     /* * * GetComplianceClass别完成情况 */
     @Transactional(readOnly = true)
     public Map<String, Object> getComplianceCategories() {
         Map<String, Object> data = new HashMap<>();
         
         List<Course> allCourses = courseRepository.findByIsActiveTrue();
-        List<User> allUsers = userRepository.findAll();
-        int totalEmployees = allUsers.size();
+        int totalEmployees = (int) userRepository.count();
+        
+        // Distinct passing users per course
+        Map<Long, Integer> completedByCourse = countCompletedUsersByCourse();
         
         List<Map<String, Object>> complianceCategories = new ArrayList<>();
         
         for (Course course : allCourses) {
-            // Get all passed quiz submissions for this course
-            List<QuizAttempt> coursePassedAttempts = quizAttemptRepository.findAll().stream()
-                    .filter(attempt -> attempt.getIsPassed() && 
-                            attempt.getQuiz().getCourse().getId().equals(course.getId()))
-                    .collect(Collectors.toList());
-            
-            Set<Long> usersCompletedCourse = coursePassedAttempts.stream()
-                    .map(attempt -> attempt.getUser().getId())
-                    .collect(Collectors.toSet());
-            
-            int completed = usersCompletedCourse.size();
+            int completed = completedByCourse.getOrDefault(course.getId(), 0);
             int rate = totalEmployees > 0 ? (int) Math.round((double) completed / totalEmployees * 100) : 0;
             
             String status;
@@ -215,42 +236,261 @@ public class ReportService {
         return data;
     }
 
-    /* * * GetMonth度ComplianceTrend */
+    /* * * GetMonth度ComplianceTrend
+     * 按 completedAt 月份读取月度通过桶；过去月份不再变化，结果缓存到当月桶、用户总数或全量重建发生变化为止 */
     @Transactional(readOnly = true)
-    public Map<String, Object> getMonthlyTrend() {
-        Map<String, Object> data = new HashMap<>();
+    public Map<String, Object> getMonthlyTrend(int months) {
+        if (!TREND_WINDOWS.contains(months)) {
+            throw new RuntimeException("Invalid trend window. Must be one of: 6, 12, 24");
+        }
+        YearMonth current = YearMonth.now();
+        int totalUsers = (int) userRepository.count();
         
-        // Get data for the past 6 months
-        List<Map<String, Object>> monthlyTrend = new ArrayList<>();
-        LocalDateTime now = LocalDateTime.now();
+        if (!complianceFactService.isReady()) {
+            Map<String, Integer> passedUsersByMonth = new HashMap<>();
+            for (Object[] row : quizAttemptRepository.aggregateCompletedByMonth()) {
+                passedUsersByMonth.put(String.format("%04d-%02d", ((Number) row[0]).intValue(), ((Number) row[1]).intValue()),
+                        ((Number) row[4]).intValue());
+            }
+            return buildMonthlyTrend(current, months, totalUsers, passedUsersByMonth);
+        }
         
-        for (int i = 5; i >= 0; i--) {
-            LocalDateTime monthStart = now.minusMonths(i).withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0);
-            LocalDateTime monthEnd = monthStart.plusMonths(1).minusSeconds(1);
-            
-            // Get all quiz submissions for that month
-            List<QuizAttempt> monthAttempts = quizAttemptRepository.findAll().stream()
-                    .filter(attempt -> attempt.getCreatedAt().isAfter(monthStart) && 
-                                     attempt.getCreatedAt().isBefore(monthEnd))
-                    .collect(Collectors.toList());
-            
-            // Calculate compliance rate for that month
-            Set<Long> usersWithAttempts = monthAttempts.stream()
-                    .filter(QuizAttempt::getIsPassed)
-                    .map(attempt -> attempt.getUser().getId())
-                    .collect(Collectors.toSet());
-            
-            int totalUsers = userRepository.findAll().size();
-            int rate = totalUsers > 0 ? (int) Math.round((double) usersWithAttempts.size() / totalUsers * 100) : 0;
-            
-            Map<String, Object> monthData = new HashMap<>();
-            monthData.put("month", monthStart.format(DateTimeFormatter.ofPattern("yyyy-MM")));
-            monthData.put("rate", Math.max(rate, 75 + (int)(Math.random() * 20))); // Add some base values to avoid being too low
-            
-            monthlyTrend.add(monthData);
+        ComplianceMonth currentBucket = complianceMonthRepository.findById(current.toString()).orElse(null);
+        String version = current + ":" + totalUsers + ":" + complianceFactService.getRebuildCount() + ":"
+                + (currentBucket != null ? currentBucket.getAttempts() + "/" + currentBucket.getPassedUsers() : "-");
+        CachedTrend cached = monthlyTrendCache.get(months);
+        if (cached != null && cached.version.equals(version)) {
+            return cached.data;
         }
         
-        data.put("monthlyTrend", monthlyTrend);
+        List<String> keys = new ArrayList<>();
+        for (int i = months - 1; i >= 0; i--) {
+            keys.add(current.minusMonths(i).toString());
+        }
+        Map<String, Integer> passedUsersByMonth = complianceMonthRepository.findAllById(keys).stream()
+                .collect(Collectors.toMap(ComplianceMonth::getMonth, ComplianceMonth::getPassedUsers));
+        Map<String, Object> data = buildMonthlyTrend(current, months, totalUsers, passedUsersByMonth);
+        monthlyTrendCache.put(months, new CachedTrend(version, data));
         return data;
     }
-}
\ No newline at end of file
+
+    // Compliance rate per month: distinct users who passed during it over all users
+    private Map<String, Object> buildMonthlyTrend(YearMonth current, int months, int totalUsers,
+                                                  Map<String, Integer> passedUsersByMonth) {
+        List<Map<String, Object>> monthlyTrend = new ArrayList<>();
+        for (int i = months - 1; i >= 0; i--) {
+            String month = current.minusMonths(i).toString();
+            int passedUsers = passedUsersByMonth.getOrDefault(month, 0);
+            int rate = totalUsers > 0 ? (int) Math.round((double) passedUsers / totalUsers * 100) : 0;
+            monthlyTrend.add(Map.of("month", month, "rate", rate));
+        }
+        return Map.of("monthlyTrend", List.copyOf(monthlyTrend));
+    }
+
+    private int countCompletedUsers() {
+        if (complianceFactService.isReady()) {
+            return complianceDepartmentRepository.sumCompletedUsers().intValue();
+        }
+        return (int) quizAttemptRepository.countDistinctPassedUsers();
+    }
+
+    private Map<String, Integer> countCompletedUsersByDepartment() {
+        Map<String, Integer> completed = new HashMap<>();
+        if (complianceFactService.isReady()) {
+            complianceDepartmentRepository.findAll()
+                    .forEach(d -> completed.put(d.getDepartment(), d.getCompletedUsers()));
+        } else {
+            for (Object[] row : quizAttemptRepository.countDistinctPassedUsersByDepartment()) {
+                completed.put(ComplianceFactService.departmentKey((String) row[0]), ((Number) row[1]).intValue());
+            }
+        }
+        return completed;
+    }
+
+    private Map<Long, Integer> countCompletedUsersByCourse() {
+        List<Object[]> rows = complianceFactService.isReady()
+                ? complianceDepartmentCourseRepository.sumPassedUsersByCourse()
+                : quizAttemptRepository.countDistinctPassedUsersByCourse();
+        Map<Long, Integer> completed = new HashMap<>();
+        for (Object[] row : rows) {
+            completed.put((Long) row[0], ((Number) row[1]).intValue());
+        }
+        return completed;
+    }
+
+    private List<EmployeeRow> findEmployeeRows(String department, String status, EmployeeReportSort sort,
+                                               boolean descending, EmployeeRow after, int limit) {
+        if (complianceFactService.isReady()) {
+            List<Object[]> page = complianceUserRepository.findEmployeeReportPage(department, status, sort, descending,
+                    after != null ? after.sortValue(sort) : null, after != null ? after.id : null, limit);
+            List<EmployeeRow> rows = new ArrayList<>(page.size());
+            for (Object[] row : page) {
+                rows.add(new EmployeeRow((Long) row[0], (String) row[1], (String) row[2], (String) row[3],
+                        row[4] != null ? (Integer) row[4] : 0, row[5] != null ? (Double) row[5] : 0.0,
+                        (LocalDateTime) row[6]));
+            }
+            return rows;
+        }
+        
+        // Facts not ready: aggregate attempts per user and page in memory with the same ordering
+        Comparator<EmployeeRow> order = employeeOrder(sort, descending);
+        List<EmployeeRow> rows = new ArrayList<>();
+        for (EmployeeRow row : aggregateEmployeeRows(department, status, sort, descending)) {
+            if (after == null || order.compare(row, after) > 0) {
+                rows.add(row);
+                if (rows.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Every matching employee, aggregated from the attempts and sorted; the fallback while facts are not ready. */
+    private List<EmployeeRow> aggregateEmployeeRows(String department, String status, EmployeeReportSort sort,
+                                                    boolean descending) {
+        Map<Long, Object[]> statsByUser = new HashMap<>();
+        for (Object[] stats : quizAttemptRepository.aggregateByUser()) {
+            statsByUser.put((Long) stats[0], stats);
+        }
+        List<EmployeeRow> rows = new ArrayList<>();
+        for (User user : userRepository.findAll()) {
+            if (department != null && !department.equals(user.getDepartment())) {
+                continue;
+            }
+            Object[] stats = statsByUser.get(user.getId());
+            int passedAttempts = stats != null ? ((Number) stats[1]).intValue() : 0;
+            double passedPercentageSum = passedAttempts > 0 ? ((Number) stats[2]).doubleValue() * passedAttempts : 0.0;
+            EmployeeRow row = new EmployeeRow(user.getId(), user.getFullName(), user.getUsername(), user.getDepartment(),
+                    passedAttempts, passedPercentageSum, stats != null ? (LocalDateTime) stats[3] : null);
+            if (status == null || status.equals(row.status())) {
+                rows.add(row);
+            }
+        }
+        rows.sort(employeeOrder(sort, descending));
+        return rows;
+    }
+
+    private static Comparator<EmployeeRow> employeeOrder(EmployeeReportSort sort, boolean descending) {
+        Comparator<EmployeeRow> order = Comparator.<EmployeeRow, Comparable<Object>>comparing(r -> r.sortValue(sort))
+                .thenComparing(r -> r.id);
+        return descending ? order.reversed() : order;
+    }
+
+    private static String departmentFilter(String department) {
+        return department != null && !department.isBlank() && !department.equals("all") ? department : null;
+    }
+
+    private static String statusFilter(String status) {
+        if (status == null || status.isBlank() || status.equals("all")) {
+            return null;
+        }
+        if (!status.equals("completed") && !status.equals("pending")) {
+            throw new RuntimeException("Invalid status. Must be one of: all, completed, pending");
+        }
+        return status;
+    }
+
+    // sort|direction|id|sort value, base64url encoded
+    private static String encodeCursor(EmployeeRow row, EmployeeReportSort sort, boolean descending) {
+        String raw = sort.getKey() + "|" + (descending ? "desc" : "asc") + "|" + row.id + "|" + row.sortValue(sort);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A row carrying just the cursor's id and sort value
+    private static EmployeeRow decodeCursor(String cursor, EmployeeReportSort sort, boolean descending) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 4);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+        if (parts.length != 4 || !parts[0].equals(sort.getKey()) || !parts[1].equals(descending ? "desc" : "asc")) {
+            throw new RuntimeException("Cursor does not match the requested sort");
+        }
+        Long id = Long.valueOf(parts[2]);
+        String value = parts[3];
+        return switch (sort) {
+            case ID -> new EmployeeRow(id, null, "", null, 0, 0.0, null);
+            case NAME -> new EmployeeRow(id, value, value, null, 0, 0.0, null);
+            case DEPARTMENT -> new EmployeeRow(id, null, "", value, 0, 0.0, null);
+            case SCORE -> {
+                double score = Double.parseDouble(value);
+                yield score < 0 ? new EmployeeRow(id, null, "", null, 0, 0.0, null)
+                        : new EmployeeRow(id, null, "", null, 1, score, null);
+            }
+            case SUBMIT_DATE -> new EmployeeRow(id, null, "", null, 0, 0.0, LocalDateTime.parse(value));
+        };
+    }
+
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+
+    /** One employee's report figures; sort values mirror the expressions in {@link EmployeeReportSort}. */
+    private static class EmployeeRow {
+        final Long id;
+        final String name;
+        final String department;
+        final int passedAttempts;
+        final double passedPercentageSum;
+        final LocalDateTime lastCompletedAt;
+
+        EmployeeRow(Long id, String fullName, String username, String department,
+                    int passedAttempts, double passedPercentageSum, LocalDateTime lastCompletedAt) {
+            this.id = id;
+            this.name = fullName != null ? fullName : username;
+            this.department = department;
+            this.passedAttempts = passedAttempts;
+            this.passedPercentageSum = passedPercentageSum;
+            this.lastCompletedAt = lastCompletedAt;
+        }
+
+        String status() {
+            return passedAttempts > 0 ? "completed" : "pending";
+        }
+
+        @SuppressWarnings("unchecked")
+        Comparable<Object> sortValue(EmployeeReportSort sort) {
+            Comparable<?> value = switch (sort) {
+                case ID -> id;
+                case NAME -> name;
+                case DEPARTMENT -> department != null ? department : "";
+                // Average percentage over passed attempts, -1 for none
+                case SCORE -> passedAttempts > 0 ? passedPercentageSum / passedAttempts : -1.0;
+                case SUBMIT_DATE -> lastCompletedAt != null ? lastCompletedAt : EPOCH;
+            };
+            return (Comparable<Object>) value;
+        }
+
+        Map<String, Object> toReport() {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("id", id);
+            report.put("name", name);
+            report.put("department", department != null ? department : "Unassigned");
+            report.put("status", status());
+            report.put("score", passedAttempts > 0 ? (int) Math.round(passedPercentageSum / passedAttempts) : null);
+            report.put("submitDate", lastCompletedAt != null
+                    ? lastCompletedAt.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"))
+                    : null);
+            return report;
+        }
+    }
+
+    private static class CachedTrend {
+        final String version;
+        final Map<String, Object> data;
+
+        CachedTrend(String version, Map<String, Object> data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+}
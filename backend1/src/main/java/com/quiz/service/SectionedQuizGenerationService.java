@@ -0,0 +1,447 @@
+package com.quiz.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.quiz.dto.AgentProcessRequest;
+import com.quiz.dto.QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz;
+import com.quiz.dto.QuizGenerationRequest.QuizGenerationResponse.GeneratedQuiz.GeneratedQuestion;
+import com.quiz.entity.Course;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/* * * 分段 map-reduce Quiz生成
+ * 把已提取的手册文本按页切成若干 section，每个 section 单独Request题目（并发数受限），
+ * 再去重并组装成 request.getQuizCount() 个Quiz；长手册的覆盖面更完整，总耗时随篇幅亚线性增长 */
+@Service
+@Slf4j
+public class SectionedQuizGenerationService {
+
+    private final HandbookTextService handbookTextService;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolTaskExecutor agentSubtaskExecutor;
+    private final OpenAiHttpClient openAiHttpClient;
+    private final Timer sectionTimer;
+    private final Counter inputTokenCounter;
+    private final Counter outputTokenCounter;
+    private final Counter duplicateCounter;
+
+    @Value("${langchain4j.openai.model:gpt-4o-mini}")
+    private String openaiModel;
+
+    @Value("${langchain4j.openai.base-url:https://api.openai.com/v1}")
+    private String openaiBaseUrl;
+
+    @Value("${agent.sections.max-chars:6000}")
+    private int sectionMaxChars;
+
+    @Value("${agent.sections.max-sections:24}")
+    private int maxSections;
+
+    @Value("${agent.sections.concurrency:4}")
+    private int concurrency;
+
+    @Value("${agent.sections.auto-threshold-chars:12000}")
+    private int autoThresholdChars;
+
+    // Ask for some extra questions so dedupe still leaves enough to fill every quiz
+    @Value("${agent.sections.overgenerate-ratio:1.3}")
+    private double overgenerateRatio;
+
+    public SectionedQuizGenerationService(HandbookTextService handbookTextService,
+                                          ObjectMapper objectMapper,
+                                          ThreadPoolTaskExecutor agentSubtaskExecutor,
+                                          OpenAiHttpClient openAiHttpClient,
+                                          MeterRegistry meterRegistry) {
+        this.handbookTextService = handbookTextService;
+        this.objectMapper = objectMapper;
+        this.agentSubtaskExecutor = agentSubtaskExecutor;
+        this.openAiHttpClient = openAiHttpClient;
+        this.sectionTimer = Timer.builder("agent.sections.latency")
+                .description("Latency of one per-section question generation call")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        this.inputTokenCounter = meterRegistry.counter("agent.sections.tokens", "type", "input");
+        this.outputTokenCounter = meterRegistry.counter("agent.sections.tokens", "type", "output");
+        this.duplicateCounter = meterRegistry.counter("agent.sections.questions.deduplicated");
+    }
+
+    /**
+     * Whether the request should go through sectioned generation: explicitly
+     * requested, or "auto" with a handbook longer than the threshold.
+     */
+    public boolean shouldUse(Course course, AgentProcessRequest request) {
+        String mode = request.getGenerationMode() != null ? request.getGenerationMode().toLowerCase(Locale.ROOT) : "auto";
+        if ("single".equals(mode) || course.getHandbookHash() == null) {
+            return false;
+        }
+        try {
+            int chars = handbookTextService.getOrExtract(course.getHandbookHash()).getCharCount();
+            if (chars == 0) {
+                return false;
+            }
+            return "sections".equals(mode) || chars > autoThresholdChars;
+        } catch (IOException e) {
+            log.warn("Cannot read handbook text for course {}, using single-call generation: {}", course.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Generate quizzes section by section. progress receives (finishedSections, totalSections).
+     * The result has no quizzes when no section produced any question, and reports failed
+     * sections and a question shortfall so the caller can refuse a partial set.
+     */
+    public Result generate(Course course, AgentProcessRequest request, String apiKey,
+                           BiConsumer<Integer, Integer> progress) {
+        long start = System.currentTimeMillis();
+        int needed = request.getQuizCount() * request.getQuestionsPerQuiz();
+        List<Section> sections;
+        try {
+            sections = buildSections(handbookTextService.getPages(course.getHandbookHash()));
+        } catch (IOException e) {
+            log.warn("Cannot split handbook of course {} into sections: {}", course.getId(), e.getMessage());
+            return new Result(List.of(), 0, 0, needed);
+        }
+        if (sections.isEmpty()) {
+            return new Result(List.of(), 0, 0, needed);
+        }
+        int perSection = Math.max(2, (int) Math.ceil(needed * overgenerateRatio / sections.size()));
+        log.info("Sectioned generation for course {}: sections={}, questionsPerSection={}, needed={}, concurrency={}",
+                course.getId(), sections.size(), perSection, needed, concurrency);
+
+        // Map: a fixed number of async chains pull sections from a shared queue, which caps in-flight
+        // calls; no thread is held while a call is waiting on OpenAI
+        Queue<Section> pending = new ConcurrentLinkedQueue<>(sections);
+        AtomicInteger finished = new AtomicInteger();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(concurrency, sections.size()); i++) {
+            workers.add(nextSection(pending, course, request, perSection, apiKey,
+                    () -> progress.accept(finished.incrementAndGet(), sections.size())));
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).join();
+
+        // Reduce: dedupe across sections, then cut into quizzes in handbook order
+        List<GeneratedQuestion> unique = new ArrayList<>();
+        List<Integer> sourceSection = new ArrayList<>();
+        List<Set<String>> seenShingles = new ArrayList<>();
+        Set<String> seenExact = new HashSet<>();
+        for (int s = 0; s < sections.size(); s++) {
+            for (GeneratedQuestion q : sections.get(s).questions) {
+                String normalized = normalize(q.getText());
+                if (normalized.isEmpty()) {
+                    continue;
+                }
+                Set<String> shingles = bigrams(normalized);
+                if (!seenExact.add(normalized) || isNearDuplicate(shingles, seenShingles)) {
+                    duplicateCounter.increment();
+                    continue;
+                }
+                seenShingles.add(shingles);
+                unique.add(q);
+                sourceSection.add(s);
+            }
+        }
+
+        List<GeneratedQuiz> quizzes = assemble(course, request, sections, unique, sourceSection);
+        int failed = (int) sections.stream().filter(s -> s.failed).count();
+        log.info("Sectioned generation done for course {}: sections={}, failedSections={}, generated={}, unique={}, quizzes={}, totalMs={}",
+                course.getId(), sections.size(), failed, sections.stream().mapToInt(s -> s.questions.size()).sum(),
+                unique.size(), quizzes.size(), System.currentTimeMillis() - start);
+        return new Result(quizzes, failed, unique.size(), needed);
+    }
+
+    private List<GeneratedQuiz> assemble(Course course, AgentProcessRequest request, List<Section> sections,
+                                         List<GeneratedQuestion> questions, List<Integer> sourceSection) {
+        List<GeneratedQuiz> quizzes = new ArrayList<>();
+        if (questions.isEmpty()) {
+            return quizzes;
+        }
+        int quizCount = Math.min(request.getQuizCount(), questions.size());
+        int perQuiz = Math.min(request.getQuestionsPerQuiz(), questions.size() / quizCount);
+        // Spread quizzes evenly over the question list so every part of the handbook is covered
+        double stride = (double) questions.size() / quizCount;
+        for (int i = 0; i < quizCount; i++) {
+            int from = (int) Math.floor(i * stride);
+            List<GeneratedQuestion> picked = new ArrayList<>(questions.subList(from, from + perQuiz));
+            Section first = sections.get(sourceSection.get(from));
+            Section last = sections.get(sourceSection.get(from + perQuiz - 1));
+            quizzes.add(GeneratedQuiz.builder()
+                    .title(course.getTitle() + " 测验 " + (i + 1))
+                    .description("覆盖手册第 " + first.firstPage + "-" + last.lastPage + " 页内容")
+                    .difficulty(request.getDifficulty())
+                    .questions(picked)
+                    .build());
+        }
+        if (perQuiz < request.getQuestionsPerQuiz()) {
+            log.warn("Only {} unique questions for {} quizzes x {}; quizzes have {} questions each",
+                    questions.size(), request.getQuizCount(), request.getQuestionsPerQuiz(), perQuiz);
+        }
+        return quizzes;
+    }
+
+    private CompletableFuture<Void> nextSection(Queue<Section> pending, Course course, AgentProcessRequest request,
+                                                int questionCount, String apiKey, Runnable onFinished) {
+        Section section = pending.poll();
+        if (section == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return generateForSection(course, request, section, questionCount, apiKey)
+                .thenComposeAsync(questions -> {
+                    section.failed = questions == null;
+                    section.questions = questions != null ? questions : List.of();
+                    onFinished.run();
+                    return nextSection(pending, course, request, questionCount, apiKey, onFinished);
+                }, agentSubtaskExecutor);
+    }
+
+    /** Never completes exceptionally; a failed section yields null. */
+    private CompletableFuture<List<GeneratedQuestion>> generateForSection(Course course, AgentProcessRequest request,
+                                                                         Section section, int questionCount, String apiKey) {
+        long start = System.nanoTime();
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(buildRequest(course, request, section, questionCount));
+        } catch (IOException e) {
+            log.warn("Section {} (pages {}-{}) request could not be built: {}", section.index, section.firstPage, section.lastPage, e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        return openAiHttpClient.responses(openaiBaseUrl, apiKey, json, false)
+                .thenApply(response -> parseSection(section, response, start))
+                .exceptionally(e -> {
+                    log.warn("Section {} (pages {}-{}) generation error: {}", section.index, section.firstPage, section.lastPage, e.getMessage());
+                    return null;
+                })
+                .whenComplete((questions, e) -> sectionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    private List<GeneratedQuestion> parseSection(Section section, OpenAiHttpClient.Result response, long start) {
+        String body = response.getBody();
+        if (!response.isSuccessful() || body == null) {
+            log.warn("Section {} (pages {}-{}) generation failed: HTTP {}, requestId={}",
+                    section.index, section.firstPage, section.lastPage, response.getCode(), response.getRequestId());
+            return null;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(body);
+            long inputTokens = root.path("usage").path("input_tokens").asLong(0);
+            long outputTokens = root.path("usage").path("output_tokens").asLong(0);
+            inputTokenCounter.increment(inputTokens);
+            outputTokenCounter.increment(outputTokens);
+
+            List<GeneratedQuestion> questions = new ArrayList<>();
+            String text = outputText(root);
+            if (text != null) {
+                for (JsonNode node : objectMapper.readTree(text).path("questions")) {
+                    questions.add(objectMapper.treeToValue(node, GeneratedQuestion.class));
+                }
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("Section {} (pages {}-{}, {} chars): questions={}, inputTokens={}, outputTokens={}, ms={}",
+                    section.index, section.firstPage, section.lastPage, section.text.length(),
+                    questions.size(), inputTokens, outputTokens, millis);
+            return questions;
+        } catch (IOException e) {
+            log.warn("Section {} (pages {}-{}) returned unparseable output: {}", section.index, section.firstPage, section.lastPage, e.getMessage());
+            return null;
+        }
+    }
+
+    private ObjectNode buildRequest(Course course, AgentProcessRequest request, Section section, int questionCount) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("model", openaiModel);
+        ObjectNode format = root.putObject("text").putObject("format");
+        format.put("type", "json_schema");
+        format.put("name", "SectionQuestions");
+        format.put("strict", true);
+        ObjectNode schema = format.putObject("schema");
+        schema.put("type", "object");
+        schema.put("additionalProperties", false);
+        schema.putArray("required").add("questions");
+        ObjectNode questionsProp = schema.putObject("properties").putObject("questions");
+        questionsProp.put("type", "array");
+        questionsProp.put("minItems", questionCount);
+        questionsProp.put("maxItems", questionCount);
+        ObjectNode item = questionsProp.putObject("items");
+        item.put("type", "object");
+        item.put("additionalProperties", false);
+        item.putArray("required").add("text").add("type").add("options").add("explanation").add("points");
+        ObjectNode props = item.putObject("properties");
+        props.putObject("text").put("type", "string");
+        ObjectNode typeProp = props.putObject("type");
+        typeProp.put("type", "string");
+        typeProp.putArray("enum").add("SINGLE_CHOICE");
+        ObjectNode optionsProp = props.putObject("options");
+        optionsProp.put("type", "array");
+        optionsProp.put("minItems", 4);
+        optionsProp.put("maxItems", 4);
+        ObjectNode optionItem = optionsProp.putObject("items");
+        optionItem.put("type", "object");
+        optionItem.put("additionalProperties", false);
+        optionItem.putArray("required").add("text").add("isCorrect");
+        ObjectNode optionProps = optionItem.putObject("properties");
+        optionProps.putObject("text").put("type", "string");
+        optionProps.putObject("isCorrect").put("type", "boolean");
+        props.putObject("explanation").put("type", "string");
+        props.putObject("points").put("type", "integer");
+
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("课程：").append(course.getTitle()).append("\n");
+        prompt.append("以下是手册第 ").append(section.firstPage).append("-").append(section.lastPage).append(" 页的内容：\n");
+        prompt.append(section.text).append("\n\n");
+        prompt.append("请只根据这部分内容生成 ").append(questionCount).append(" 道单选题，每题 4 个选项且只有一个正确答案，");
+        prompt.append("难度：").append(request.getDifficulty()).append("。题目之间不要重复考查同一知识点。\n");
+        if (request.getAdditionalInstructions() != null) {
+            prompt.append("额外要求：").append(request.getAdditionalInstructions()).append("\n");
+        }
+
+        ArrayNode input = root.putArray("input");
+        ObjectNode system = input.addObject();
+        system.put("role", "system");
+        system.putArray("content").addObject().put("type", "input_text")
+                .put("text", "你是一个专业的教育内容分析师和测验生成专家。只返回严格符合 Schema 的纯 JSON。");
+        ObjectNode user = input.addObject();
+        user.put("role", "user");
+        user.putArray("content").addObject().put("type", "input_text").put("text", prompt.toString());
+        return root;
+    }
+
+    private String outputText(JsonNode root) {
+        if (root.hasNonNull("output_text")) {
+            return root.get("output_text").asText();
+        }
+        for (JsonNode output : root.path("output")) {
+            for (JsonNode part : output.path("content")) {
+                if ("output_text".equals(part.path("type").asText()) && part.has("text")) {
+                    return part.get("text").asText();
+                }
+            }
+        }
+        return null;
+    }
+
+    /* * * 相邻页合并为不超过 sectionMaxChars 的 section；页数过多时放大 section 以满足 maxSections */
+    private List<Section> buildSections(List<String> pages) {
+        long totalChars = pages.stream().mapToLong(String::length).sum();
+        long target = Math.max(sectionMaxChars, (long) Math.ceil((double) totalChars / maxSections));
+        List<Section> sections = new ArrayList<>();
+        Section current = null;
+        for (int i = 0; i < pages.size(); i++) {
+            String page = pages.get(i);
+            if (page.isBlank()) {
+                continue;
+            }
+            if (current == null || current.text.length() + page.length() > target) {
+                current = new Section(sections.size() + 1, i + 1);
+                sections.add(current);
+            } else {
+                current.text.append("\n\n");
+            }
+            current.text.append(page);
+            current.lastPage = i + 1;
+        }
+        return sections;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        text.toLowerCase(Locale.ROOT).codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(sb::appendCodePoint);
+        return sb.toString();
+    }
+
+    /* * * 字符 bigram 对中英文都适用，不依赖分词 */
+    private static Set<String> bigrams(String normalized) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 2 <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    private static boolean isNearDuplicate(Set<String> candidate, List<Set<String>> seen) {
+        for (Set<String> other : seen) {
+            int intersection = 0;
+            for (String gram : candidate) {
+                if (other.contains(gram)) {
+                    intersection++;
+                }
+            }
+            int union = candidate.size() + other.size() - intersection;
+            if (union > 0 && (double) intersection / union >= 0.8) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Section {
+        final int index;
+        final int firstPage;
+        int lastPage;
+        final StringBuilder text = new StringBuilder();
+        volatile List<GeneratedQuestion> questions = List.of();
+        volatile boolean failed;
+
+        Section(int index, int firstPage) {
+            this.index = index;
+            this.firstPage = firstPage;
+            this.lastPage = firstPage;
+        }
+    }
+
+    /** Assembled quizzes plus what is needed to tell a complete run from a partial one. */
+    public static class Result {
+        private final List<GeneratedQuiz> quizzes;
+        private final int failedSections;
+        private final int uniqueQuestions;
+        private final int neededQuestions;
+
+        Result(List<GeneratedQuiz> quizzes, int failedSections, int uniqueQuestions, int neededQuestions) {
+            this.quizzes = quizzes;
+            this.failedSections = failedSections;
+            this.uniqueQuestions = uniqueQuestions;
+            this.neededQuestions = neededQuestions;
+        }
+
+        public List<GeneratedQuiz> getQuizzes() {
+            return quizzes;
+        }
+
+        public int getFailedSections() {
+            return failedSections;
+        }
+
+        public int getUniqueQuestions() {
+            return uniqueQuestions;
+        }
+
+        /** Every section answered and there are enough unique questions to fill every quiz. */
+        public boolean isComplete() {
+            return failedSections == 0 && uniqueQuestions >= neededQuestions;
+        }
+    }
+}
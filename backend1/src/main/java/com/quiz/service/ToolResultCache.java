@@ -0,0 +1,205 @@
+package com.quiz.service;
+
+import com.quiz.event.CourseChangedEvent;
+import com.quiz.event.QuizSubmittedEvent;
+import com.quiz.event.UserChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/* * * Chatbot Tool结果缓存
+ * 两级：同一轮对话（ChatInvocation）内相同Tool+Parameter只执行一次；组织级数据额外跨轮短 TTL 共享。
+ * 共享条目按 LRU 限量并定期清理过期项；Course变更清空全部共享条目，测验Commit清空报表类条目；按Tool统计命中/未命中 */
+@Service
+@Slf4j
+public class ToolResultCache {
+
+    /** Org-wide report tools; their results change with every quiz submission. */
+    static final Set<String> REPORT_TOOLS = Set.of(
+            "getComplianceReport",
+            "getDepartmentComplianceStats",
+            "getEmployeeComplianceReports",
+            "getComplianceCategoriesOverview");
+
+    /**
+     * Tools whose results do not depend on the caller and may be shared across turns.
+     * searchCourseHandbook is keyed on the raw question, which rarely repeats, so it is only
+     * memoized within a turn rather than pushing reusable entries out of the shared map.
+     */
+    static final Set<String> SHARED_TOOLS = Set.of(
+            "getAllCoursesSummary",
+            "getQuizSummariesByCourse",
+            "getQuizQuestionsWithAnswers",
+            "getComplianceReport",
+            "getDepartmentComplianceStats",
+            "getEmployeeComplianceReports",
+            "getComplianceCategoriesOverview");
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final MeterRegistry meterRegistry;
+
+    // Access-ordered, capped like ChatResponseCache: keys embed free-text tool arguments
+    private final LinkedHashMap<String, Entry> shared = new LinkedHashMap<>(256, 0.75f, true);
+    // Bumped on every invalidation so a load that raced with it is not stored
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public ToolResultCache(@Value("${chatbot.tool-cache.enabled:true}") boolean enabled,
+                           @Value("${chatbot.tool-cache.ttl-seconds:60}") long ttlSeconds,
+                           @Value("${chatbot.tool-cache.max-entries:1000}") int maxEntries,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlMillis = Duration.ofSeconds(ttlSeconds).toMillis();
+        this.maxEntries = maxEntries;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Result of {@code tool(argument)}: memoized for the rest of the invocation and, for
+     * shared tools, reused across invocations until the TTL or an invalidation.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ChatInvocation invocation, String tool, Object argument, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        String key = tool + ":" + argument;
+        Object memo = invocation.getToolResult(key);
+        if (memo != null) {
+            count(tool, "turn_hit");
+            return (T) memo;
+        }
+
+        boolean sharable = SHARED_TOOLS.contains(tool);
+        long now = System.currentTimeMillis();
+        if (sharable) {
+            Entry entry;
+            synchronized (this) {
+                entry = shared.get(key);
+                if (entry != null && entry.expiresAt <= now) {
+                    shared.remove(key);
+                    entry = null;
+                }
+            }
+            if (entry != null) {
+                count(tool, "hit");
+                invocation.putToolResult(key, entry.value);
+                return (T) entry.value;
+            }
+        }
+
+        count(tool, "miss");
+        long loadGeneration = generation.get();
+        T value = loader.get();
+        if (isCacheable(value)) {
+            invocation.putToolResult(key, value);
+            if (sharable) {
+                synchronized (this) {
+                    // Checked under the lock so an invalidation cannot slip in between
+                    if (generation.get() == loadGeneration) {
+                        shared.put(key, new Entry(value, now + ttlMillis));
+                        Iterator<String> eldest = shared.keySet().iterator();
+                        while (shared.size() > maxEntries && eldest.hasNext()) {
+                            eldest.next();
+                            eldest.remove();
+                        }
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        synchronized (this) {
+            generation.incrementAndGet();
+            shared.clear();
+        }
+        log.debug("Cleared shared tool results after {}", event);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuizSubmitted(QuizSubmittedEvent event) {
+        evictReportTools();
+    }
+
+    // New, moved or deleted users change head counts and department membership in every report
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        evictReportTools();
+    }
+
+    private void evictReportTools() {
+        synchronized (this) {
+            generation.incrementAndGet();
+            shared.keySet().removeIf(key -> REPORT_TOOLS.contains(key.substring(0, key.indexOf(':'))));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chatbot.tool-cache.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            shared.values().removeIf(entry -> entry.expiresAt <= now);
+        }
+    }
+
+    /** Per-tool lookup counts, e.g. {"getAllCoursesSummary": {"hit": 12, "miss": 3}}. */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new TreeMap<>();
+        counters.forEach((key, counter) -> {
+            int sep = key.indexOf('|');
+            stats.computeIfAbsent(key.substring(0, sep), k -> new TreeMap<>())
+                    .put(key.substring(sep + 1), (long) counter.count());
+        });
+        return stats;
+    }
+
+    private void count(String tool, String result) {
+        counters.computeIfAbsent(tool + "|" + result,
+                k -> meterRegistry.counter("chatbot.tool-cache.lookups", "tool", tool, "result", result))
+                .increment();
+    }
+
+    // Tools answer failures with empty collections or error maps; never keep those
+    private static boolean isCacheable(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Collection<?> collection) {
+            return !collection.isEmpty();
+        }
+        if (value instanceof Map<?, ?> map) {
+            return !map.isEmpty() && !map.containsKey("error");
+        }
+        return true;
+    }
+
+    private static class Entry {
+        final Object value;
+        final long expiresAt;
+
+        Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -4,13 +4,16 @@ import com.quiz.entity.User;
 import com.quiz.entity.Course;
 import com.quiz.entity.Quiz;
 import com.quiz.entity.QuizAttempt;
+import com.quiz.event.UserChangedEvent;
 import com.quiz.repository.UserRepository;
 import com.quiz.repository.CourseRepository;
 import com.quiz.repository.QuizRepository;
 import com.quiz.repository.QuizAttemptRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -25,6 +28,8 @@ public class UserService {
     private final CourseRepository courseRepository;
     private final QuizRepository quizRepository;
     private final QuizAttemptRepository quizAttemptRepository;
+    private final ComplianceFactService complianceFactService;
+    private final ApplicationEventPublisher eventPublisher;
     private static final Set<String> ALLOWED_DEPARTMENTS = Set.of(
             "Engineering",
             "Human Resources",
@@ -61,9 +66,12 @@ public class UserService {
         user.setCreatedAt(LocalDateTime.now());
         user.setUpdatedAt(LocalDateTime.now());
         
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        eventPublisher.publishEvent(new UserChangedEvent(savedUser.getId(), UserChangedEvent.Type.CREATED));
+        return savedUser;
     }
 
+    @Transactional
     public User updateUser(Long id, User userDetails) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -78,6 +86,10 @@ public class UserService {
             if (!ALLOWED_DEPARTMENTS.contains(userDetails.getDepartment())) {
                 throw new RuntimeException("Invalid department. Must be one of: " + String.join(", ", ALLOWED_DEPARTMENTS));
             }
+            if (!userDetails.getDepartment().equals(user.getDepartment())) {
+                complianceFactService.moveUser(user.getId(), userDetails.getDepartment());
+                eventPublisher.publishEvent(new UserChangedEvent(user.getId(), UserChangedEvent.Type.DEPARTMENT_CHANGED));
+            }
             user.setDepartment(userDetails.getDepartment());
         }
         
@@ -90,6 +102,7 @@ public class UserService {
             throw new RuntimeException("User not found");
         }
         userRepository.deleteById(id);
+        eventPublisher.publishEvent(new UserChangedEvent(id, UserChangedEvent.Type.DELETED));
     }
 
     public User authenticateUser(String username, String password) {
@@ -0,0 +1,35 @@
+package com.quiz.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/* * * Course handbook 的内容寻址Storage
+ * Blob 以 SHA-256 十六进制摘要为 Key，Course 表只保存 hash/size/contentType */
+public interface HandbookBlobStore {
+
+    /**
+     * Store the stream content and return its hash and size.
+     * Writing identical content twice is idempotent.
+     */
+    StoredBlob put(InputStream content) throws IOException;
+
+    /** Open a stream over the blob; caller must close it. */
+    InputStream openStream(String hash) throws IOException;
+
+    /**
+     * Re-readable resource over the blob with a known content length, so HTTP
+     * Range requests can be served by seeking instead of buffering.
+     */
+    Resource openResource(String hash) throws IOException;
+
+    /** Read at most maxBytes from the beginning of the blob. */
+    byte[] readPrefix(String hash, int maxBytes) throws IOException;
+
+    boolean exists(String hash);
+
+    long size(String hash) throws IOException;
+
+    void delete(String hash) throws IOException;
+}
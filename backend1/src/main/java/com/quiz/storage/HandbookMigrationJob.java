@@ -0,0 +1,99 @@
+package com.quiz.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.List;
+
+/* * * 将旧版 courses.handbook_file_path 中的 PDF 字节迁移到 HandbookBlobStore
+ * 按批次Process，每条Record迁移后立即清空旧列，重启后可从断点继续 */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HandbookMigrationJob {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HandbookBlobStore handbookBlobStore;
+
+    @Value("${handbook.storage.migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${handbook.storage.migration.batch-size:20}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyHandbooks() {
+        if (!enabled) {
+            log.info("Handbook blob migration disabled");
+            return;
+        }
+
+        int migrated = 0;
+        int failed = 0;
+        long lastId = 0;
+        try {
+            while (true) {
+                // Keyset over ids so a row that keeps failing cannot stall the loop
+                List<Long> ids = jdbcTemplate.queryForList(
+                        "SELECT id FROM courses WHERE handbook_file_path IS NOT NULL AND handbook_hash IS NULL AND id > ? ORDER BY id LIMIT ?",
+                        Long.class, lastId, batchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Long id : ids) {
+                    lastId = id;
+                    if (migrateOne(id)) {
+                        migrated++;
+                    } else {
+                        failed++;
+                    }
+                }
+                log.info("Handbook migration batch done: migrated={}, failed={}, lastId={}", migrated, failed, lastId);
+            }
+        } catch (DataAccessException e) {
+            // Fresh schemas never had the legacy column
+            log.info("Legacy handbook column not available, skipping migration: {}", e.getMessage());
+            return;
+        }
+
+        if (migrated > 0 || failed > 0) {
+            log.info("Handbook blob migration finished: migrated={}, failed={}", migrated, failed);
+        }
+    }
+
+    private boolean migrateOne(Long courseId) {
+        try {
+            StoredBlob blob = jdbcTemplate.query(
+                    "SELECT handbook_file_path FROM courses WHERE id = ?",
+                    rs -> {
+                        if (!rs.next()) {
+                            return null;
+                        }
+                        try (InputStream in = rs.getBinaryStream(1)) {
+                            return in != null ? handbookBlobStore.put(in) : null;
+                        } catch (java.io.IOException e) {
+                            throw new IllegalStateException("Failed to write handbook blob for course " + courseId, e);
+                        }
+                    },
+                    courseId);
+            if (blob == null) {
+                return false;
+            }
+            jdbcTemplate.update(
+                    "UPDATE courses SET handbook_hash = ?, handbook_file_size = ?, handbook_file_path = NULL WHERE id = ?",
+                    blob.getHash(), blob.getSize(), courseId);
+            log.info("Migrated handbook for course {} to blob {}", courseId, blob.getHash());
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to migrate handbook for course {}: {}", courseId, e.getMessage(), e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.quiz.storage;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+
+/* * * 从 HandbookBlobStore 流式Read的 OkHttp RequestBody
+ * Upload到 OpenAI 时不再把整个 PDF 读入堆内存 */
+public class HandbookUploadBody extends RequestBody {
+
+    private static final MediaType PDF = MediaType.parse("application/pdf");
+
+    private final HandbookBlobStore store;
+    private final String hash;
+    private final long size;
+
+    public HandbookUploadBody(HandbookBlobStore store, String hash) throws IOException {
+        this.store = store;
+        this.hash = hash;
+        this.size = store.size(hash);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return PDF;
+    }
+
+    @Override
+    public long contentLength() {
+        return size;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        try (Source source = Okio.source(store.openStream(hash))) {
+            sink.writeAll(source);
+        }
+    }
+}
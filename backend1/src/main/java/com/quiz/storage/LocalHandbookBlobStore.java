@@ -0,0 +1,130 @@
+package com.quiz.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/* * * 本地File系统 handbook Storage
+ * 目录布局: {baseDir}/ab/cd/abcd...ef.pdf，先写临时File再原子移动，避免读到半写入的 blob */
+@Component
+@ConditionalOnProperty(name = "handbook.storage.type", havingValue = "local", matchIfMissing = true)
+@Slf4j
+public class LocalHandbookBlobStore implements HandbookBlobStore {
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path baseDir;
+
+    public LocalHandbookBlobStore(@Value("${handbook.storage.local.dir:./data/handbooks}") String baseDir) throws IOException {
+        this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+        Files.createDirectories(this.baseDir.resolve("tmp"));
+        log.info("Local handbook blob store initialized at {}", this.baseDir);
+    }
+
+    @Override
+    public StoredBlob put(InputStream content) throws IOException {
+        MessageDigest digest = newDigest();
+        Path tmp = Files.createTempFile(baseDir.resolve("tmp"), "upload-", ".part");
+        long size;
+        try {
+            try (DigestInputStream in = new DigestInputStream(content, digest);
+                 OutputStream out = Files.newOutputStream(tmp)) {
+                size = in.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(hash);
+            if (Files.exists(target)) {
+                log.debug("Handbook blob {} already stored, skipping write", hash);
+                return new StoredBlob(hash, size);
+            }
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target);
+            } catch (FileAlreadyExistsException e) {
+                // Concurrent upload of identical content; the existing blob is equivalent
+                log.debug("Handbook blob {} written concurrently", hash);
+            }
+            log.info("Stored handbook blob {} ({} bytes)", hash, size);
+            return new StoredBlob(hash, size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public InputStream openStream(String hash) throws IOException {
+        Path path = resolve(hash);
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException("Handbook blob not found: " + hash);
+        }
+        return Files.newInputStream(path);
+    }
+
+    @Override
+    public Resource openResource(String hash) throws IOException {
+        Path path = resolve(hash);
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException("Handbook blob not found: " + hash);
+        }
+        return new FileSystemResource(path);
+    }
+
+    @Override
+    public byte[] readPrefix(String hash, int maxBytes) throws IOException {
+        try (InputStream in = openStream(hash)) {
+            return in.readNBytes(maxBytes);
+        }
+    }
+
+    @Override
+    public boolean exists(String hash) {
+        return hash != null && HASH_PATTERN.matcher(hash).matches() && Files.exists(resolve(hash));
+    }
+
+    @Override
+    public long size(String hash) throws IOException {
+        return Files.size(resolve(hash));
+    }
+
+    @Override
+    public void delete(String hash) throws IOException {
+        Files.deleteIfExists(resolve(hash));
+    }
+
+    /** Path of the blob on disk; only valid for this implementation. */
+    public Path resolve(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Invalid handbook hash: " + hash);
+        }
+        return baseDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + ".pdf");
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
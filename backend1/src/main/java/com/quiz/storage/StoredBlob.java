@@ -0,0 +1,13 @@
+package com.quiz.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/* * * Blob 写入Result */
+@Data
+@AllArgsConstructor
+public class StoredBlob {
+    /** SHA-256 hex digest */
+    private String hash;
+    private long size;
+}
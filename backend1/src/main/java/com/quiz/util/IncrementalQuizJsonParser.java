@@ -0,0 +1,123 @@
+package com.quiz.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/* * * 增量Parse {"quizzes":[{...},{...}]} 形式的流式 JSON
+ * 基于 Jackson 非阻塞Parser，文本片段到达即喂入；quizzes 数组中每个对象闭合时立即回调，
+ * 只缓冲当前正在Parse的那一个 quiz，而不是整段响应 */
+public class IncrementalQuizJsonParser implements AutoCloseable {
+
+    private final ObjectMapper objectMapper;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final Consumer<JsonNode> onQuiz;
+
+    private int depth;
+    private boolean quizzesFieldPending;
+    private boolean inQuizzesArray;
+    private boolean started;
+    private TokenBuffer current;
+    private int emitted;
+
+    public IncrementalQuizJsonParser(ObjectMapper objectMapper, Consumer<JsonNode> onQuiz) throws IOException {
+        this.objectMapper = objectMapper;
+        this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.onQuiz = onQuiz;
+    }
+
+    /**
+     * Feed the next text fragment. Anything before the first '{' (e.g. a stray
+     * code fence) is ignored.
+     */
+    public void feed(String fragment) throws IOException {
+        if (fragment == null || fragment.isEmpty()) {
+            return;
+        }
+        if (!started) {
+            int brace = fragment.indexOf('{');
+            if (brace < 0) {
+                return;
+            }
+            fragment = fragment.substring(brace);
+            started = true;
+        }
+        byte[] bytes = fragment.getBytes(StandardCharsets.UTF_8);
+        feeder.feedInput(bytes, 0, bytes.length);
+        drain();
+    }
+
+    /** Number of quizzes for which the callback returned normally. */
+    public int getEmittedCount() {
+        return emitted;
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (current != null) {
+                current.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd()) {
+                    depth--;
+                    if (depth == 2) {
+                        emit();
+                    }
+                }
+                continue;
+            }
+
+            if (token == JsonToken.FIELD_NAME) {
+                if (depth == 1) {
+                    quizzesFieldPending = "quizzes".equals(parser.currentName());
+                }
+                continue;
+            }
+            if (token == JsonToken.START_OBJECT && depth == 2 && inQuizzesArray) {
+                current = new TokenBuffer(parser, null);
+                current.copyCurrentEvent(parser);
+                depth++;
+                continue;
+            }
+            if (depth == 1) {
+                inQuizzesArray = quizzesFieldPending && token == JsonToken.START_ARRAY;
+                quizzesFieldPending = false;
+            }
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+                if (depth == 1) {
+                    inQuizzesArray = false;
+                }
+            }
+        }
+    }
+
+    private void emit() throws IOException {
+        TokenBuffer buffer = current;
+        current = null;
+        JsonNode node;
+        try (JsonParser quizParser = buffer.asParser(objectMapper)) {
+            node = objectMapper.readTree(quizParser);
+        }
+        onQuiz.accept(node);
+        emitted++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        feeder.endOfInput();
+        parser.close();
+    }
+}
@@ -0,0 +1,159 @@
+package com.quiz.service;
+
+import com.quiz.dto.ChatbotRequest;
+import com.quiz.dto.ChatbotResponse;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+
+/* * * Chatbot会话隔离的并发Test
+ * 500 个会话同时经由 processMessage 与真实的 ChatAssistant（仅模型为桩）调用Tool，验证每个回复只记录自己的Tool调用、
+ * Tool只看到自己的 userId，会话记忆也互不串扰 */
+@ExtendWith(MockitoExtension.class)
+class ChatbotServiceConcurrencyTest {
+
+    private static final int SESSIONS = 500;
+
+    @Spy
+    private ChatMemoryStore chatMemoryStore = new InMemoryChatMemoryStore();
+
+    @Mock
+    private ChatResponseCache responseCache;
+
+    @Spy
+    @InjectMocks
+    private ChatbotService chatbotService;
+
+    @BeforeEach
+    void useStubModel() {
+        ReflectionTestUtils.setField(chatbotService, "openaiApiKey", "test");
+        ReflectionTestUtils.setField(chatbotService, "memoryMaxMessages", 20);
+        doReturn(new ToolCallingModel()).when(chatbotService).createChatModel();
+        doReturn(null).when(chatbotService).createStreamingModel();
+    }
+
+    /**
+     * Asks for "calls" getCurrentUserId requests in its first reply, then answers with the
+     * tool results it was given. The short pause keeps many sessions in flight at once.
+     */
+    private static class ToolCallingModel implements ChatLanguageModel {
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            return generate(messages, Collections.emptyList());
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+            pause();
+            ChatMessage last = messages.get(messages.size() - 1);
+            if (last instanceof UserMessage user) {
+                String text = textOf(user);
+                int calls = Integer.parseInt(text.substring(text.lastIndexOf(' ') + 1));
+                List<ToolExecutionRequest> requests = new ArrayList<>();
+                for (int i = 0; i < calls; i++) {
+                    requests.add(ToolExecutionRequest.builder()
+                            .id("call-" + i)
+                            .name("getCurrentUserId")
+                            .arguments("{}")
+                            .build());
+                }
+                return Response.from(AiMessage.from(requests), new TokenUsage(1, 1));
+            }
+            List<String> results = new ArrayList<>();
+            for (ChatMessage message : messages) {
+                if (message instanceof UserMessage) {
+                    results.clear();
+                } else if (message instanceof ToolExecutionResultMessage result) {
+                    results.add(result.text());
+                }
+            }
+            return Response.from(AiMessage.from(String.join(",", results)), new TokenUsage(1, 1));
+        }
+
+        private static void pause() {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String textOf(UserMessage message) {
+        return ((TextContent) message.contents().get(0)).text();
+    }
+
+    @Test
+    void concurrentSessionsOnlySeeTheirOwnToolCallsAndUser() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(SESSIONS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ChatbotResponse>> responses = new ArrayList<>();
+        try {
+            for (int i = 0; i < SESSIONS; i++) {
+                ChatbotRequest request = new ChatbotRequest();
+                request.setSessionId("session-" + i);
+                request.setUserId(1000L + i);
+                request.setMessage("user " + (1000L + i) + " calls " + (i % 3 + 1));
+                responses.add(pool.submit(() -> {
+                    start.await();
+                    return chatbotService.processMessage(request);
+                }));
+            }
+            start.countDown();
+
+            for (int i = 0; i < SESSIONS; i++) {
+                long userId = 1000L + i;
+                int calls = i % 3 + 1;
+                String sessionKey = "session-" + i;
+                ChatbotResponse response = responses.get(i).get(60, TimeUnit.SECONDS);
+
+                assertTrue(response.isSuccess(), "success of " + sessionKey);
+                assertEquals(sessionKey, response.getSessionId());
+                assertEquals(Collections.nCopies(calls, "getCurrentUserId"), response.getToolsUsed(),
+                        "tool calls of " + sessionKey);
+                assertEquals(String.join(",", Collections.nCopies(calls, String.valueOf(userId))), response.getMessage(),
+                        "tool results of " + sessionKey);
+
+                List<String> remembered = chatMemoryStore.getMessages(sessionKey).stream()
+                        .filter(UserMessage.class::isInstance)
+                        .map(message -> textOf((UserMessage) message))
+                        .toList();
+                assertEquals(List.of("user " + userId + " calls " + calls), remembered,
+                        "memory of " + sessionKey);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.quiz.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/* * * ChatbotService 依赖的 langchain4j 内部结构（0.27.1）
+ * 升级 langchain4j 后若字段改名或行为变化，这里先失败，而不是上线后静默泄漏会话记忆或限制并发流 */
+class ChatbotServiceLangChain4jHooksTest {
+
+    private static final ChatLanguageModel ECHO_MODEL = messages -> Response.from(
+            AiMessage.from("ok " + messages.size()), new TokenUsage(1, 1));
+
+    @Test
+    void widenStreamingDispatcherRaisesTheModelsOkHttpLimits() throws Exception {
+        OpenAiStreamingChatModel model = OpenAiStreamingChatModel.builder().apiKey("test").build();
+
+        ChatbotService.widenStreamingDispatcher(model, 64);
+
+        Dispatcher dispatcher = dispatcherOf(model);
+        assertEquals(64, dispatcher.getMaxRequestsPerHost());
+        assertEquals(64, dispatcher.getMaxRequests());
+    }
+
+    @Test
+    void disableMemoryRetentionMakesEveryCallAskTheProviderAgain() {
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        AtomicInteger provided = new AtomicInteger();
+        AiServices<ChatbotService.ChatAssistant> builder = AiServices.builder(ChatbotService.ChatAssistant.class)
+                .chatLanguageModel(ECHO_MODEL)
+                .chatMemoryProvider(memoryId -> {
+                    provided.incrementAndGet();
+                    return MessageWindowChatMemory.builder()
+                            .id(((ChatInvocation) memoryId).getSessionKey())
+                            .maxMessages(10)
+                            .chatMemoryStore(store)
+                            .build();
+                });
+        ChatbotService.disableMemoryRetention(builder);
+        ChatbotService.ChatAssistant assistant = builder.build();
+
+        for (int i = 0; i < 3; i++) {
+            assistant.chat(new ChatInvocation("session", 1L), "hello " + i);
+        }
+
+        // A retaining AiServices asks exactly once and keeps the memory for the life of the proxy
+        assertTrue(provided.get() >= 3, "provider calls: " + provided.get());
+        // The window itself still lives in the store: system prompt plus three user/AI turns
+        List<ChatMessage> window = store.getMessages("session");
+        assertEquals(7, window.size());
+    }
+
+    private static Dispatcher dispatcherOf(OpenAiStreamingChatModel model) throws Exception {
+        Field clientField = OpenAiStreamingChatModel.class.getDeclaredField("client");
+        clientField.setAccessible(true);
+        Object client = clientField.get(model);
+        Field httpField = client.getClass().getDeclaredField("okHttpClient");
+        httpField.setAccessible(true);
+        return ((OkHttpClient) httpField.get(client)).dispatcher();
+    }
+}
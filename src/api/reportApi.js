@@ -28,17 +28,21 @@ export const getDepartmentStats = async () => {
   }
 };
 
-// Get employee report details
-export const getEmployeeReports = async (department = null) => {
+// Get one page of employee report details; pass the previous page's nextCursor to continue
+export const getEmployeeReports = async (department = null, cursor = null, limit = 100) => {
   try {
-    const url = department 
-      ? `${API_BASE_URL}/reports/employees?department=${encodeURIComponent(department)}`
-      : `${API_BASE_URL}/reports/employees`;
-    
-    const response = await fetch(url);
+    const params = new URLSearchParams({ limit: String(limit) });
+    if (department) {
+      params.set('department', department);
+    }
+    if (cursor) {
+      params.set('cursor', cursor);
+    }
+    const response = await fetch(`${API_BASE_URL}/reports/employees?${params.toString()}`);
     if (!response.ok) {
       throw new Error('Failed to fetch employee reports');
     }
+    // { employeeReports, hasMore, nextCursor, limit }
     return await response.json();
   } catch (error) {
     console.error('Error fetching employee reports:', error);
@@ -46,6 +50,15 @@ export const getEmployeeReports = async (department = null) => {
   }
 };
 
+// Download URL for the full employee report, streamed by the server (csv or ndjson)
+export const getEmployeeReportsExportUrl = (department = null, format = 'csv') => {
+  const params = new URLSearchParams({ format });
+  if (department) {
+    params.set('department', department);
+  }
+  return `${API_BASE_URL}/reports/employees/export?${params.toString()}`;
+};
+
 // Get compliance category completion status
 export const getComplianceCategories = async () => {
   try {
@@ -6,6 +6,7 @@ import {
   getOrganizationReport, 
   getDepartmentStats, 
   getEmployeeReports, 
+  getEmployeeReportsExportUrl,
   getComplianceCategories
 } from '../api/reportApi';
 
@@ -27,6 +28,10 @@ const ReportPage = () => {
   const [organizationData, setOrganizationData] = useState(null);
   const [departmentStats, setDepartmentStats] = useState([]);
   const [employeeReports, setEmployeeReports] = useState([]);
+  // Keyset paging: rows are loaded one page at a time, nextCursor continues after the last row
+  const [employeeCursor, setEmployeeCursor] = useState(null);
+  const [hasMoreEmployees, setHasMoreEmployees] = useState(false);
+  const [loadingMoreEmployees, setLoadingMoreEmployees] = useState(false);
   const [complianceCategories, setComplianceCategories] = useState([]);
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState(null);
@@ -515,6 +520,14 @@ const ReportPage = () => {
     document.body.removeChild(link);
     URL.revokeObjectURL(link.href);
   };
+  // Store a page of employee reports, replacing the list or appending to it
+  const applyEmployeePage = (page, append) => {
+    const rows = Array.isArray(page?.employeeReports) ? page.employeeReports : [];
+    setEmployeeReports(prev => (append ? [...prev, ...rows] : rows));
+    setHasMoreEmployees(Boolean(page?.hasMore));
+    setEmployeeCursor(page?.hasMore ? page.nextCursor : null);
+  };
+
   useEffect(() => {
     const fetchData = async () => {
       try {
@@ -535,7 +548,7 @@ const ReportPage = () => {
 
         setOrganizationData(orgData);
         setDepartmentStats(Array.isArray(deptStats?.departmentStats) ? deptStats.departmentStats : []);
-        setEmployeeReports(Array.isArray(empReports?.employeeReports) ? empReports.employeeReports : []);
+        applyEmployeePage(empReports, false);
         setComplianceCategories(Array.isArray(compCategories?.complianceCategories) ? compCategories.complianceCategories : []);
         
       } catch (err) {
@@ -555,10 +568,10 @@ const ReportPage = () => {
       try {
         const department = selectedDepartment === 'all' ? null : selectedDepartment;
         const empReports = await getEmployeeReports(department);
-        setEmployeeReports(Array.isArray(empReports?.employeeReports) ? empReports.employeeReports : []);
+        applyEmployeePage(empReports, false);
       } catch (err) {
         console.error('Error fetching employee reports:', err);
-        setEmployeeReports([]); // Set to empty array on error
+        applyEmployeePage(null, false); // Reset to empty list on error
       }
     };
 
@@ -567,6 +580,23 @@ const ReportPage = () => {
     }
   }, [selectedDepartment, loading, organizationData]);
 
+  // Load the next page of employee reports and append it
+  const loadMoreEmployeeReports = async () => {
+    if (!employeeCursor || loadingMoreEmployees) {
+      return;
+    }
+    try {
+      setLoadingMoreEmployees(true);
+      const department = selectedDepartment === 'all' ? null : selectedDepartment;
+      const empReports = await getEmployeeReports(department, employeeCursor);
+      applyEmployeePage(empReports, true);
+    } catch (err) {
+      console.error('Error fetching more employee reports:', err);
+    } finally {
+      setLoadingMoreEmployees(false);
+    }
+  };
+
   // Filter employee report data
   const filteredEmployeeReports = Array.isArray(employeeReports) ? employeeReports.filter(report => {
     if (selectedDepartment !== 'all' && report.department !== selectedDepartment) {
@@ -801,6 +831,13 @@ const ReportPage = () => {
                   <option key={dept.value} value={dept.value}>{dept.label}</option>
                 ))}
               </select>
+              <a
+                href={getEmployeeReportsExportUrl(selectedDepartment === 'all' ? null : selectedDepartment)}
+                className="flex items-center space-x-1 border border-gray-300 rounded-md px-3 py-1 text-sm text-gray-700 hover:bg-gray-50"
+              >
+                <Download className="w-4 h-4" />
+                <span>CSV</span>
+              </a>
             </div>
           </div>
         </CardHeader>
@@ -833,6 +870,17 @@ const ReportPage = () => {
               </tbody>
             </table>
           </div>
+          {hasMoreEmployees && (
+            <div className="flex justify-center mt-4">
+              <button
+                onClick={loadMoreEmployeeReports}
+                disabled={loadingMoreEmployees}
+                className="border border-gray-300 rounded-md px-4 py-2 text-sm text-gray-700 hover:bg-gray-50 disabled:opacity-50"
+              >
+                {loadingMoreEmployees ? 'Loading...' : `Load more (${filteredEmployeeReports.length} shown)`}
+              </button>
+            </div>
+          )}
         </CardContent>
       </Card>
 